@@ -0,0 +1,44 @@
+package benchmarks;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Запуск бенчмарков без графической среды:
+ * <pre>
+ * mvn -B package -DskipTests
+ * java -jar benchmarks/target/benchmarks.jar                      # все бенчмарки
+ * java -jar benchmarks/target/benchmarks.jar Duplicate -p size=1000
+ * </pre>
+ * Принимает обычные параметры JMH. Если формат и файл результатов не заданы (-rf, -rff),
+ * результаты пишутся в JSON-файл jmh-result-&lt;дата&gt;.json для сравнения прогонов
+ * (например, на jmh.morethan.io).
+ */
+public final class BenchmarkRunner {
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions command = new CommandLineOptions(args);
+        if (command.shouldHelp()) {
+            command.showHelp();
+            return;
+        }
+        if (command.shouldList()) {
+            new Runner(command).list();
+            return;
+        }
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        Options options = new OptionsBuilder()
+                .parent(command)
+                .resultFormat(command.getResultFormat().orElse(ResultFormatType.JSON))
+                .result(command.getResult().orElse("jmh-result-" + timestamp + ".json"))
+                .build();
+        new Runner(options).run();
+    }
+}
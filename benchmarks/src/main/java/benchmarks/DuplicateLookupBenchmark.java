@@ -0,0 +1,54 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Проверка дубликата перед добавлением контакта: линейный поиск personData.contains
+ * и хэш-индекс PersonIndex. Половина проверяемых контактов есть в списке, половины нет.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class DuplicateLookupBenchmark {
+    private static final int PROBES = 1024;
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private ObservableList<Object> personData;
+    private Object personIndex;
+    private final List<Object> probes = new ArrayList<>(PROBES);
+    private final List<Object> probeKeys = new ArrayList<>(PROBES);
+    private int next;
+
+    @Setup
+    public void setup() {
+        personData = FXCollections.observableArrayList(Model.generate(size, 42));
+        personIndex = Model.personIndex(personData);
+        for (int i = 0; i < PROBES / 2; i++) {
+            probes.add(Model.copy(personData.get((int) ((long) i * size / (PROBES / 2)))));
+            probes.add(Model.person("Absent", "Person", "Street " + i, "City", "000000", "1.1.2000"));
+        }
+        for (Object probe : probes) {
+            probeKeys.add(Model.key(probe));
+        }
+    }
+
+    @Benchmark
+    public boolean listContains() {
+        return personData.contains(probes.get(next++ & (PROBES - 1)));
+    }
+
+    @Benchmark
+    public boolean indexContains() {
+        return Model.indexContains(personIndex, probeKeys.get(next++ & (PROBES - 1)));
+    }
+}
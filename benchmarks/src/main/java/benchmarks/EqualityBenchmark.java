@@ -0,0 +1,49 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Person.equals и Person.hashCode по всему списку.
+ * Сравниваются равные, но разные объекты, поэтому equals проверяет все шесть полей.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class EqualityBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private List<Object> persons;
+    private List<Object> copies;
+
+    @Setup
+    public void setup() {
+        persons = Model.generate(size, 42);
+        copies = Model.copy(persons);
+    }
+
+    @Benchmark
+    public int hashCodeAll() {
+        int hash = 0;
+        for (Object person : persons) {
+            hash += person.hashCode();
+        }
+        return hash;
+    }
+
+    @Benchmark
+    public int equalsAll() {
+        int equal = 0;
+        for (int i = 0; i < persons.size(); i++) {
+            if (persons.get(i).equals(copies.get(i))) {
+                equal++;
+            }
+        }
+        return equal;
+    }
+}
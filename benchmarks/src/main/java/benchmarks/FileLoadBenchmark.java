@@ -0,0 +1,63 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Загрузка и сохранение файла адресной книги: старый формат (SerializablePersonList)
+ * и двоичный формат AddressBookFormat
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class FileLoadBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private List<Object> persons;
+    private Path legacyFile;
+    private Path binaryFile;
+    private Path saveFile;
+
+    @Setup
+    public void setup() throws IOException {
+        persons = Model.generate(size, 42);
+        legacyFile = Files.createTempFile("bench-legacy", ".addr");
+        try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(legacyFile))) {
+            out.writeObject(Model.serializableList(persons));
+        }
+        binaryFile = Files.createTempFile("bench-binary", ".addr");
+        Model.write(binaryFile, persons);
+        saveFile = Files.createTempFile("bench-save", ".addr");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(legacyFile);
+        Files.deleteIfExists(binaryFile);
+        Files.deleteIfExists(saveFile);
+    }
+
+    @Benchmark
+    public List<Object> loadSerializablePersonList() {
+        return Model.read(legacyFile);
+    }
+
+    @Benchmark
+    public List<Object> loadBinary() {
+        return Model.read(binaryFile);
+    }
+
+    @Benchmark
+    public void saveBinary() {
+        Model.write(saveFile, persons);
+    }
+}
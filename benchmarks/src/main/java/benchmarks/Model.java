@@ -0,0 +1,208 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Доступ к классам приложения и генератор синтетических данных.
+ * <p>
+ * Классы приложения лежат в пакете по умолчанию, а JMH требует, чтобы бенчмарки были
+ * в именованном пакете; из именованного пакета к пакету по умолчанию можно обратиться
+ * только по имени класса. Поэтому конструкторы и методы берутся один раз через
+ * {@link MethodHandle} (static final, JIT встраивает вызов), а контакты передаются как Object.
+ */
+public final class Model {
+    private static final MethodHandle NEW_PERSON;
+    private static final MethodHandle PERSON_KEY;
+    private static final MethodHandle NEW_PERSON_INDEX;
+    private static final MethodHandle INDEX_CONTAINS;
+    private static final MethodHandle NEW_CONTACT_VIEW;
+    private static final MethodHandle NEW_SERIALIZABLE_LIST;
+    private static final MethodHandle READ;
+    private static final MethodHandle WRITE;
+    private static final Object NO_PROGRESS;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            Class<?> person = Class.forName("Person");
+            Class<?> key = Class.forName("Person$Key");
+            Class<?> personIndex = Class.forName("PersonIndex");
+            Class<?> contactView = Class.forName("ContactView");
+            Class<?> format = Class.forName("AddressBookFormat");
+            Class<?> progress = Class.forName("AddressBookFormat$Progress");
+            Class<?> observableList = Class.forName("javafx.collections.ObservableList");
+
+            NEW_PERSON = lookup.findConstructor(person, MethodType.methodType(void.class,
+                    String.class, String.class, String.class, String.class, String.class, String.class));
+            PERSON_KEY = lookup.findVirtual(person, "key", MethodType.methodType(key));
+            NEW_PERSON_INDEX = lookup.findConstructor(personIndex,
+                    MethodType.methodType(void.class, observableList));
+            INDEX_CONTAINS = lookup.findVirtual(personIndex, "contains", MethodType.methodType(boolean.class, key));
+            NEW_CONTACT_VIEW = lookup.findConstructor(contactView,
+                    MethodType.methodType(void.class, observableList));
+            READ = lookup.findStatic(format, "read", MethodType.methodType(List.class, Path.class, progress));
+            WRITE = lookup.findStatic(format, "write",
+                    MethodType.methodType(void.class, Path.class, List.class, progress));
+            NO_PROGRESS = progress.getField("NONE").get(null);
+
+            // Класс старого формата файлов закрыт внутри AddressApp
+            var constructor = Class.forName("AddressApp$SerializablePersonList").getDeclaredConstructor(List.class);
+            constructor.setAccessible(true);
+            NEW_SERIALIZABLE_LIST = lookup.unreflectConstructor(constructor);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final String[] FIRST_NAMES = {
+            "Александр", "Мария", "Иван", "Анна", "Дмитрий", "Елена", "Сергей", "Ольга", "Андрей", "Наталья",
+            "John", "Mary", "James", "Patricia", "Robert", "Jennifer", "Michael", "Linda", "William", "Elizabeth"
+    };
+    private static final String[] LAST_NAMES = {
+            "Иванов", "Смирнов", "Кузнецов", "Попов", "Васильев", "Петров", "Соколов", "Михайлов", "Новиков",
+            "Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis", "Wilson", "Taylor"
+    };
+    private static final String[] STREETS = {
+            "Ленина", "Мира", "Садовая", "Лесная", "Школьная", "Main St", "Oak Ave", "Pine Rd", "Maple Dr", "Elm St"
+    };
+
+    private Model() {
+    }
+
+    /**
+     * Синтетические контакты; одинаковый seed дает одинаковые данные.
+     * Все контакты различны (номер дома и квартиры уникальны), города и индексы повторяются.
+     */
+    public static List<Object> generate(int count, long seed) {
+        Random random = new Random(seed);
+        List<Object> persons = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int city = random.nextInt(500);
+            persons.add(person(
+                    FIRST_NAMES[random.nextInt(FIRST_NAMES.length)],
+                    LAST_NAMES[random.nextInt(LAST_NAMES.length)],
+                    STREETS[random.nextInt(STREETS.length)] + " " + (i / 100 + 1) + ", кв. " + (i % 100 + 1),
+                    "City " + city,
+                    String.valueOf(100_000 + city * 10 + random.nextInt(10)),
+                    (1 + random.nextInt(28)) + "." + (1 + random.nextInt(12)) + "." + (1940 + random.nextInt(70))));
+        }
+        return persons;
+    }
+
+    /**
+     * Копии контактов: равные по equals, но другие объекты
+     */
+    public static List<Object> copy(List<Object> persons) {
+        List<Object> copies = new ArrayList<>(persons.size());
+        for (Object person : persons) {
+            copies.add(copy(person));
+        }
+        return copies;
+    }
+
+    public static Object copy(Object person) {
+        Object key = key(person);
+        try {
+            Object[] values = new Object[6];
+            int i = 0;
+            for (var component : key.getClass().getRecordComponents()) {
+                values[i++] = component.getAccessor().invoke(key);
+            }
+            return person((String) values[0], (String) values[1], (String) values[2],
+                    (String) values[3], (String) values[4], (String) values[5]);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static Object person(String firstName, String lastName, String street,
+                                String city, String postalCode, String birthday) {
+        try {
+            return NEW_PERSON.invoke(firstName, lastName, street, city, postalCode, birthday);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    public static Object key(Object person) {
+        try {
+            return PERSON_KEY.invoke(person);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Хэш-индекс дубликатов (PersonIndex), подписанный на список
+     */
+    public static Object personIndex(Object observableList) {
+        try {
+            return NEW_PERSON_INDEX.invoke(observableList);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    public static boolean indexContains(Object index, Object key) {
+        try {
+            return (boolean) INDEX_CONTAINS.invoke(index, key);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Представление таблицы (ContactView) с поиском и сортировкой, подписанное на список
+     */
+    public static Object contactView(Object observableList) {
+        try {
+            return NEW_CONTACT_VIEW.invoke(observableList);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Объект старого формата файла (AddressApp.SerializablePersonList)
+     */
+    public static Object serializableList(List<Object> persons) {
+        try {
+            return NEW_SERIALIZABLE_LIST.invoke(persons);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static List<Object> read(Path path) {
+        try {
+            return (List<Object>) READ.invoke(path, NO_PROGRESS);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    public static void write(Path path, List<Object> persons) {
+        try {
+            WRITE.invoke(path, persons, NO_PROGRESS);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException runtime) {
+            throw runtime;
+        }
+        if (e instanceof Error error) {
+            throw error;
+        }
+        return new IllegalStateException(e);
+    }
+}
@@ -0,0 +1,53 @@
+package benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Сериализация Java: Person.writeObject/readObject в составе SerializablePersonList,
+ * как в старом формате файлов .addr
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class PersonSerializationBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private Object list;
+    private byte[] bytes;
+
+    @Setup
+    public void setup() throws IOException {
+        list = Model.serializableList(Model.generate(size, 42));
+        bytes = serialize(list);
+    }
+
+    @Benchmark
+    public byte[] writeObject() throws IOException {
+        return serialize(list);
+    }
+
+    @Benchmark
+    public Object readObject() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+
+    private byte[] serialize(Object value) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(bytes == null ? 1024 : bytes.length);
+        try (ObjectOutputStream out = new ObjectOutputStream(buffer)) {
+            out.writeObject(value);
+        }
+        return buffer.toByteArray();
+    }
+}
@@ -0,0 +1,47 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Замена всего списка одним вызовом ObservableList.setAll, как после загрузки файла:
+ * без слушателей и со слушателями приложения (PersonIndex и ContactView)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class SetAllBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private List<Object> persons;
+    private ObservableList<Object> plainList;
+    private ObservableList<Object> appList;
+
+    @Setup
+    public void setup() {
+        persons = Model.generate(size, 42);
+        plainList = FXCollections.observableArrayList();
+        appList = FXCollections.observableArrayList();
+        Model.personIndex(appList);
+        Model.contactView(appList);
+    }
+
+    @Benchmark
+    public ObservableList<Object> setAllPlain() {
+        plainList.setAll(persons);
+        return plainList;
+    }
+
+    @Benchmark
+    public ObservableList<Object> setAllWithIndexes() {
+        appList.setAll(persons);
+        return appList;
+    }
+}
@@ -1,5 +1,18 @@
+import javafx.animation.Animation;
+import javafx.animation.AnimationTimer;
+import javafx.animation.KeyFrame;
+import javafx.animation.PauseTransition;
+import javafx.animation.Timeline;
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.beans.binding.Bindings;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.concurrent.Task;
+import javafx.concurrent.Worker;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
@@ -12,8 +25,27 @@ import javafx.scene.layout.*;
 import javafx.stage.Stage;
 import javafx.stage.Modality;
 import javafx.stage.FileChooser;
+import javafx.util.Duration;
+import javafx.util.StringConverter;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -21,15 +53,83 @@ public class AddressApp extends Application {
     // Логгер для записи ошибок
     private static final Logger LOGGER = Logger.getLogger(AddressApp.class.getName());
 
+    // Пауза после последнего изменения, после которой срабатывает автосохранение
+    private static final Duration AUTOSAVE_DELAY = Duration.seconds(3);
+
+    // Начало отсчета для замеров времени запуска
+    private static final Instant JVM_START = ProcessHandle.current().info().startInstant().orElseGet(Instant::now);
+
+    // Обучающий запуск для архива CDS (профиль cds в app/pom.xml): выход после восстановления сеанса
+    private static final boolean EXIT_AFTER_STARTUP = Boolean.getBoolean("addressapp.exitAfterStartup");
+
+    // Сколько контактов с конфликтующими изменениями перечислять в сообщении
+    private static final int MAX_LISTED_CONFLICTS = 10;
+
+    // Порт локального HTTP-интерфейса; -Daddressapp.api=true включает его при запуске
+    private static final int API_PORT = Integer.getInteger("addressapp.api.port", 8765);
+
     // Основные данные приложения - список контактов
-    private final ObservableList<Person> personData = FXCollections.observableArrayList();
+    private final PersonList personData = new PersonList();
+
+    // История для отмены и повтора; редактирование отменяется через updatePersons
+    private final UndoHistory history = new UndoHistory(personData, this::updatePersons);
+
+    // Хэш-индекс для проверки дубликатов
+    private final PersonIndex personIndex = new PersonIndex(personData);
+
+    // Индекс по дню рождения для запросов по датам
+    private final BirthdayIndex birthdayIndex = new BirthdayIndex(personData);
+
+    // Число контактов по городам и по началу почтового индекса для панели групп
+    private final GroupCounts cityCounts = new GroupCounts(personData, GroupCounts.Grouping.CITY);
+    private final GroupCounts postalCounts = new GroupCounts(personData, GroupCounts.Grouping.POSTAL_PREFIX);
+    private final ListView<GroupCounts.Group> groupList = new ListView<>();
+
+    // Отфильтрованный по запросу и отсортированный список, который показывает таблица
+    private final ContactView contactView = new ContactView(personData);
+
+    // Хранилище, которое показывает таблица: список в памяти или большой файл только для чтения
+    private final InMemoryRepository memoryRepository = new InMemoryRepository(personData, contactView);
+    private AddressBookRepository repository = memoryRepository;
+    private final BooleanProperty browsing = new SimpleBooleanProperty(this, "browsing");
+
+    // Журнал изменений для инкрементального сохранения
+    private final AddressBookJournal journal = new AddressBookJournal(personData);
+    private final CheckMenuItem journalItem = new CheckMenuItem("Incremental Save (Journal)");
+
+    // Запись файлов сжатыми блоками; при открытии отражает формат открытого файла
+    private final CheckMenuItem compressItem = new CheckMenuItem("Compress Files");
+
+    // Отслеживание несохраненных изменений и отложенное автосохранение
+    private final PauseTransition autosaveDelay = new PauseTransition(AUTOSAVE_DELAY);
+    private final CheckMenuItem autosaveItem = new CheckMenuItem("Autosave");
+    private final ChangeTracker changes = new ChangeTracker(personData, this::scheduleAutosave);
+
+    // Ключи сортировки для колонок таблицы
+    private final Map<TableColumn<Person, ?>, Function<Person, Comparable<?>>> sortKeys = new HashMap<>();
+
+    // Строка поиска над таблицей
+    private final TextField searchField = new TextField();
 
     // Таблица для отображения контактов
     private final TableView<Person> tableView = new TableView<>();
 
-    // Текущий открытый файл
+    // Текущий открытый файл; при объединении нескольких книг — первая из них
     private File currentFile = null;
 
+    // Объединенные книги (номер в списке — бит в Person.getSources()) и маска тех,
+    // в которых есть несохраненные изменения; пусто, если открыт один файл
+    private final List<File> sourceFiles = new ArrayList<>();
+    private int changedSources;
+
+    // Наблюдение за открытым файлом: изменения из других программ перечитываются в фоне;
+    // null, если открыт не один файл
+    private FileWatcher fileWatcher;
+    // Файл изменился, пока шла другая фоновая операция, — перечитываем после нее
+    private boolean reloadPending;
+    // Сохранение не состоялось из-за изменения файла — повторяем после перечитывания
+    private boolean saveAfterReload;
+
     // Элементы для отображения деталей контакта
     private final Label firstNameValue = new Label();
     private final Label lastNameValue = new Label();
@@ -37,6 +137,26 @@ public class AddressApp extends Application {
     private final Label cityValue = new Label();
     private final Label postalCodeValue = new Label();
     private final Label birthdayValue = new Label();
+    private final Label sourceValue = new Label();
+
+    // Элементы строки состояния для фоновых операций
+    private final Label statusLabel = new Label("Ready");
+    private final ProgressBar statusProgress = new ProgressBar();
+    private final Button statusCancelButton = new Button("Cancel");
+
+    // Фоновый поток для операций с файлами (одна операция за раз)
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "address-app-io");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Текущая фоновая операция
+    private Task<?> currentTask = null;
+
+    // Локальный HTTP-интерфейс к контактам; null, пока выключен
+    private final CheckMenuItem apiItem = new CheckMenuItem("Local HTTP API");
+    private ContactServer contactServer;
 
     public static void main(String[] args) {
         launch(args);
@@ -44,7 +164,20 @@ public class AddressApp extends Application {
 
     @Override
     public void start(Stage primaryStage) {
-        primaryStage.setTitle("Address App");
+        primaryStage.titleProperty().bind(Bindings.when(changes.dirtyProperty())
+                .then("Address App *").otherwise("Address App"));
+        primaryStage.setOnCloseRequest(e -> {
+            e.consume();
+            exitApplication(primaryStage);
+        });
+
+        personData.addListener((ListChangeListener<Person>) this::markSourcesChanged);
+        autosaveDelay.setOnFinished(e -> autosave());
+        autosaveItem.selectedProperty().addListener((obs, oldVal, newVal) -> {
+            if (newVal && changes.isDirty()) {
+                scheduleAutosave();
+            }
+        });
 
         // Основной контейнер с разметкой BorderPane
         BorderPane borderPane = new BorderPane();
@@ -59,26 +192,94 @@ public class AddressApp extends Application {
 
         // Настраиваем таблицу и панель деталей
         setupTableView();
+        setupSearchField();
+        VBox tableBox = new VBox(5, searchField, tableView);
+        VBox.setVgrow(tableView, Priority.ALWAYS);
         VBox detailsPane = createDetailsPane();
-        contentBox.getChildren().addAll(tableView, detailsPane);
+        contentBox.getChildren().addAll(tableBox, detailsPane);
         borderPane.setCenter(contentBox);
+        borderPane.setBottom(createStatusBar());
 
         // Настройка размеров
-        tableView.setPrefWidth(300);
+        tableView.setPrefWidth(500);
         detailsPane.setPrefWidth(300);
 
         // Обработчик выбора элемента в таблице
         tableView.getSelectionModel().selectedItemProperty().addListener((obs, oldVal, newVal) -> {
             if (newVal != null) {
-                updateDetails(newVal);
+                showDetails(newVal);
             }
         });
 
         // Создаем сцену и настраиваем горячие клавиши
-        Scene scene = new Scene(borderPane, 650, 400);
+        Scene scene = new Scene(borderPane, 850, 600);
         setupKeyboardShortcuts(scene, primaryStage);
         primaryStage.setScene(scene);
+        recordStartup(Metrics.STARTUP_FIRST_FRAME, 0, () -> { });
         primaryStage.show();
+
+        // Файл прошлого сеанса загружается в фоне, когда окно уже на экране
+        restoreSession();
+        apiItem.setSelected(Boolean.getBoolean("addressapp.api"));
+    }
+
+    @Override
+    public void stop() {
+        // Поток приема соединений HttpServer не фоновый и не дал бы JVM завершиться
+        stopApi();
+        unwatchFile();
+    }
+
+    /**
+     * Восстановление файла, открытого в прошлом сеансе
+     */
+    private void restoreSession() {
+        File file = SessionCache.isRestoreEnabled() ? SessionCache.lastFile() : null;
+        if (file == null || !file.isFile()) {
+            tablePopulated();
+            return;
+        }
+        LoadTask task = new LoadTask(file);
+        task.setOnSucceeded(e -> {
+            showLoaded(task);
+            tablePopulated();
+        });
+        task.setOnFailed(e -> {
+            LOGGER.log(Level.WARNING, "Could not restore last session", task.getException());
+            SessionCache.forget();
+            if (EXIT_AFTER_STARTUP) {
+                Platform.exit();
+            }
+        });
+        task.setOnCancelled(e -> {
+            if (EXIT_AFTER_STARTUP) {
+                Platform.exit();
+            }
+        });
+        runTask(task);
+    }
+
+    private void tablePopulated() {
+        // Обучающий запуск завершается после кадра с таблицей, чтобы в архив попали и классы ее отрисовки
+        Runnable then = EXIT_AFTER_STARTUP ? Platform::exit : () -> { };
+        recordStartup(Metrics.STARTUP_TABLE_POPULATED, personData.size(), then);
+    }
+
+    /**
+     * Замер времени от запуска JVM до ближайшего кадра
+     */
+    private void recordStartup(String name, long records, Runnable then) {
+        new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                stop();
+                long nanos = ChronoUnit.NANOS.between(JVM_START, Instant.now());
+                Metrics.record(name, nanos, records, 0);
+                LOGGER.info(String.format("%s: %,d ms after JVM start, %,d records",
+                        name, nanos / 1_000_000, records));
+                then.run();
+            }
+        }.start();
     }
 
     /**
@@ -92,12 +293,22 @@ public class AddressApp extends Application {
             } else if (new KeyCodeCombination(KeyCode.O, KeyCombination.CONTROL_DOWN).match(event)) {
                 openFile(primaryStage);
                 event.consume();
+            } else if (browsing.get() && event.isShortcutDown() && event.getCode() == KeyCode.S) {
+                // Просматриваемый файл только для чтения
+                event.consume();
             } else if (new KeyCodeCombination(KeyCode.S, KeyCombination.CONTROL_DOWN).match(event)) {
                 saveFile(primaryStage);
                 event.consume();
             } else if (new KeyCodeCombination(KeyCode.S, KeyCombination.CONTROL_DOWN, KeyCombination.SHIFT_DOWN).match(event)) {
                 saveFileAs(primaryStage);
                 event.consume();
+            } else if (new KeyCodeCombination(KeyCode.Z, KeyCombination.CONTROL_DOWN).match(event)) {
+                undo();
+                event.consume();
+            } else if (new KeyCodeCombination(KeyCode.Y, KeyCombination.CONTROL_DOWN).match(event)
+                    || new KeyCodeCombination(KeyCode.Z, KeyCombination.CONTROL_DOWN, KeyCombination.SHIFT_DOWN).match(event)) {
+                redo();
+                event.consume();
             } else if (new KeyCodeCombination(KeyCode.Q, KeyCombination.CONTROL_DOWN).match(event)) {
                 exitApplication(primaryStage);
                 event.consume();
@@ -119,24 +330,76 @@ public class AddressApp extends Application {
         MenuItem openItem = new MenuItem("Open...");
         openItem.setOnAction(e -> openFile(primaryStage));
 
+        MenuItem browseItem = new MenuItem("Browse Large File...");
+        browseItem.setOnAction(e -> browseFile(primaryStage));
+
+        MenuItem importItem = new MenuItem("Import...");
+        importItem.setOnAction(e -> importFile(primaryStage));
+
+        MenuItem exportItem = new MenuItem("Export...");
+        exportItem.setOnAction(e -> exportFile(primaryStage));
+
         MenuItem saveItem = new MenuItem("Save");
         saveItem.setOnAction(e -> saveFile(primaryStage));
 
         MenuItem saveAsItem = new MenuItem("Save As...");
         saveAsItem.setOnAction(e -> saveFileAs(primaryStage));
 
-        fileMenu.getItems().addAll(newItem, openItem, saveItem, saveAsItem, new SeparatorMenuItem(),
+        // При просмотре большого файла доступно только чтение
+        for (MenuItem item : List.of(importItem, exportItem, saveItem, saveAsItem)) {
+            item.disableProperty().bind(browsing);
+        }
+
+        CheckMenuItem restoreItem = new CheckMenuItem("Restore Last File on Startup");
+        restoreItem.setSelected(SessionCache.isRestoreEnabled());
+        restoreItem.selectedProperty().addListener((obs, oldVal, newVal) -> SessionCache.setRestoreEnabled(newVal));
+
+        fileMenu.getItems().addAll(newItem, openItem, browseItem, importItem, exportItem, saveItem, saveAsItem,
+                journalItem, compressItem, autosaveItem, restoreItem,
+                new SeparatorMenuItem(),
                 new MenuItem("Exit") {{
                     setOnAction(e -> exitApplication(primaryStage));
                 }});
 
+        // Меню "Edit"; названия пунктов показывают, что именно будет отменено
+        MenuItem undoItem = new MenuItem("Undo");
+        undoItem.disableProperty().bind(history.canUndoProperty().not());
+        undoItem.setOnAction(e -> undo());
+        MenuItem redoItem = new MenuItem("Redo");
+        redoItem.disableProperty().bind(history.canRedoProperty().not());
+        redoItem.setOnAction(e -> redo());
+        Menu editMenu = new Menu("Edit");
+        editMenu.getItems().addAll(undoItem, redoItem);
+        editMenu.setOnShowing(e -> {
+            undoItem.setText(history.undoName() == null ? "Undo" : "Undo " + history.undoName());
+            redoItem.setText(history.redoName() == null ? "Redo" : "Redo " + history.redoName());
+        });
+
+        // Меню "Tools"
+        Menu toolsMenu = new Menu("Tools");
+        toolsMenu.disableProperty().bind(browsing);
+        toolsMenu.getItems().addAll(new MenuItem("Find Duplicates...") {{
+            setOnAction(e -> findDuplicates());
+        }}, new MenuItem("Birthdays...") {{
+            setOnAction(e -> showBirthdaysDialog());
+        }}, new SeparatorMenuItem(), apiItem);
+        apiItem.selectedProperty().addListener((obs, oldVal, newVal) -> {
+            if (newVal) {
+                startApi();
+            } else {
+                stopApi();
+            }
+        });
+
         // Меню "Help"
         Menu helpMenu = new Menu("Help");
-        helpMenu.getItems().add(new MenuItem("Keyboard Shortcuts") {{
+        helpMenu.getItems().addAll(new MenuItem("Keyboard Shortcuts") {{
             setOnAction(e -> showShortcutsDialog());
+        }}, new MenuItem("Diagnostics") {{
+            setOnAction(e -> showDiagnosticsDialog());
         }});
 
-        menuBar.getMenus().addAll(fileMenu, helpMenu);
+        menuBar.getMenus().addAll(fileMenu, editMenu, toolsMenu, helpMenu);
         return menuBar;
     }
 
@@ -144,7 +407,7 @@ public class AddressApp extends Application {
      * Создание нового файла
      */
     private void newFile() {
-        if (!personData.isEmpty()) {
+        if (changes.isDirty()) {
             // Запрашиваем подтверждение, если есть несохраненные изменения
             Alert alert = new Alert(Alert.AlertType.CONFIRMATION,
                     "Are you sure you want to create a new file?",
@@ -152,34 +415,215 @@ public class AddressApp extends Application {
             alert.setTitle("New File");
             alert.setHeaderText("Unsaved changes will be lost");
 
-            if (alert.showAndWait().orElse(ButtonType.CANCEL) == ButtonType.OK) {
-                personData.clear();
-                currentFile = null;
-                clearDetails();
+            if (alert.showAndWait().orElse(ButtonType.CANCEL) != ButtonType.OK) {
+                return;
             }
-        } else {
-            currentFile = null;
-            clearDetails();
         }
+        personData.clear();
+        history.clear();
+        currentFile = null;
+        sourceFiles.clear();
+        unwatchFile();
+        changes.markClean();
+        useRepository(memoryRepository);
+        clearDetails();
+        SessionCache.forget();
     }
 
     /**
      * Сохранение файла
      */
     private void saveFile(Stage primaryStage) {
-        if (currentFile != null) {
-            try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(currentFile))) {
-                // Сериализуем список контактов
-                oos.writeObject(new SerializablePersonList(personData));
-            } catch (Exception e) {
-                LOGGER.log(Level.SEVERE, "Could not save file", e);
-                showAlert("Error", "Could not save file: " + e.getMessage());
-            }
+        if (!sourceFiles.isEmpty()) {
+            saveSources();
+        } else if (currentFile != null) {
+            saveTo(currentFile);
         } else {
             saveFileAs(primaryStage);
         }
     }
 
+    /**
+     * Запуск фонового сохранения в указанный файл
+     */
+    private void saveTo(File file) {
+        if (currentTask != null) {
+            showAlert("Warning", "Another operation is in progress");
+            return;
+        }
+        FileWatcher watcher = watcherFor(file);
+        if (watcher != null && watcher.isChanged()) {
+            // Файл изменили извне: сначала перечитываем, иначе сохранение затрет эти изменения
+            saveAfterReload = true;
+            reloadFromDisk();
+            return;
+        }
+        if (journalItem.isSelected() && journal.canAppend(file) && file.exists()) {
+            appendJournal(file, watcher);
+            return;
+        }
+
+        // Снимок значений контактов SaveTask делает здесь, в потоке JavaFX, дальше работает
+        // только с ним; изменения, сделанные после этого момента, попадут уже в журнал
+        long revision = changes.revision();
+        SaveTask task = new SaveTask(file, personData, compressItem.isSelected(), watcher);
+        // Несохраненные изменения возвращаются в журнал, если файл все же изменили извне
+        List<AddressBookJournal.Entry> unsaved = journal.canAppend(file) ? journal.pending() : null;
+        journal.markSaved(file);
+        task.setOnSucceeded(e -> {
+            // Сохранение объединенных книг в один файл делает его единственным источником
+            currentFile = file;
+            sourceFiles.clear();
+            changes.markSaved(revision);
+            SessionCache.remember(file);
+            if (watcher == null) {
+                watchFile(file, task.getSavedState());
+            }
+        });
+        task.setOnCancelled(e -> journal.invalidate());
+        task.setOnFailed(e -> {
+            if (task.getException() instanceof FileWatcher.ChangedOnDiskException) {
+                if (unsaved != null) {
+                    journal.restore(file, unsaved);
+                } else {
+                    journal.invalidate();
+                }
+                saveChangedOnDisk();
+                return;
+            }
+            journal.invalidate();
+            LOGGER.log(Level.SEVERE, "Could not save file", task.getException());
+            showAlert("Error", "Could not save file: " + task.getException().getMessage());
+        });
+        runTask(task);
+    }
+
+    /**
+     * Сохранение объединенных книг: каждый измененный файл получает свои контакты
+     */
+    private void saveSources() {
+        if (currentTask != null) {
+            showAlert("Warning", "Another operation is in progress");
+            return;
+        }
+        long revision = changes.revision();
+        int changed = changedSources;
+        if (changed == 0) {
+            changes.markSaved(revision);
+            showStatus("No changes to save");
+            return;
+        }
+        MergedSaveTask task = new MergedSaveTask(sourceFiles, personData, changed);
+        changedSources = 0;
+        task.setOnSucceeded(e -> changes.markSaved(revision));
+        task.setOnCancelled(e -> changedSources |= changed);
+        task.setOnFailed(e -> {
+            changedSources |= changed;
+            LOGGER.log(Level.SEVERE, "Could not save files", task.getException());
+            showAlert("Error", "Could not save files: " + task.getException().getMessage());
+        });
+        runTask(task);
+    }
+
+    /**
+     * Отметка файлов, которых касаются добавленные и удаленные контакты
+     */
+    private void markSourcesChanged(ListChangeListener.Change<? extends Person> change) {
+        if (sourceFiles.isEmpty()) {
+            return;
+        }
+        while (change.next()) {
+            for (Person person : change.getRemoved()) {
+                changedSources |= MergedSaveTask.sourcesOf(person);
+            }
+            for (Person person : change.getAddedSubList()) {
+                changedSources |= MergedSaveTask.sourcesOf(person);
+            }
+        }
+    }
+
+    /**
+     * Инкрементальное сохранение: дописываем в журнал только новые изменения
+     */
+    private void appendJournal(File file, FileWatcher watcher) {
+        long revision = changes.revision();
+        if (!journal.hasPending()) {
+            changes.markSaved(revision);
+            showStatus("No changes to save");
+            return;
+        }
+        JournalSaveTask task = new JournalSaveTask(file, journal.takePending(), watcher);
+        task.setOnSucceeded(e -> {
+            currentFile = file;
+            changes.markSaved(revision);
+            compactJournalIfNeeded(file.toPath(), task.getValue());
+        });
+        task.setOnCancelled(e -> journal.invalidate());
+        task.setOnFailed(e -> {
+            if (task.getException() instanceof FileWatcher.ChangedOnDiskException) {
+                journal.restore(file, task.getEntries());
+                saveChangedOnDisk();
+                return;
+            }
+            // Записи журнала потеряны, следующее сохранение будет полным
+            journal.invalidate();
+            LOGGER.log(Level.SEVERE, "Could not save file", task.getException());
+            showAlert("Error", "Could not save file: " + task.getException().getMessage());
+        });
+        runTask(task);
+    }
+
+    /**
+     * Фоновое уплотнение журнала в новый снимок, если журнал стал слишком большим
+     */
+    private void compactJournalIfNeeded(Path file, long journalSize) {
+        // Уплотнять можно, только если данные в памяти в точности равны снимку с журналом
+        if (journal.hasPending()) {
+            return;
+        }
+        try {
+            if (AddressBookJournal.needsCompaction(file, journalSize)) {
+                // Тот же поток, что и у сохранений, чтобы уплотнение не обогнало полное сохранение;
+                // значения контактов снимаем здесь, пока их нельзя изменить
+                ioExecutor.execute(AddressBookJournal.compaction(file, Person.keys(personData), journalSize,
+                        watcherFor(file.toFile())));
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not check journal size", e);
+        }
+    }
+
+    /**
+     * Перезапуск отсчета автосохранения после изменения данных
+     */
+    private void scheduleAutosave() {
+        if (autosaveItem.isSelected() && currentFile != null) {
+            autosaveDelay.playFromStart();
+        }
+    }
+
+    /**
+     * Автосохранение в текущий файл после паузы в изменениях.
+     * Редактирование во время сохранения не блокируется: все пути сохранения
+     * ({@link SaveTask}, {@link MergedSaveTask}, {@link JournalSaveTask}) пишут значения,
+     * снятые здесь, в потоке JavaFX, и не читают сами контакты в фоне.
+     */
+    private void autosave() {
+        if (!autosaveItem.isSelected() || currentFile == null || !changes.isDirty()) {
+            return;
+        }
+        if (currentTask != null) {
+            // Идет другая операция — пробуем еще раз после следующей паузы
+            autosaveDelay.playFromStart();
+            return;
+        }
+        if (!sourceFiles.isEmpty()) {
+            saveSources();
+        } else {
+            saveTo(currentFile);
+        }
+    }
+
     /**
      * Открытие файла
      */
@@ -189,17 +633,406 @@ public class AddressApp extends Application {
         fileChooser.getExtensionFilters().add(
                 new FileChooser.ExtensionFilter("Address Book Files", "*.addr"));
 
+        List<File> files = fileChooser.showOpenMultipleDialog(primaryStage);
+        if (files == null || files.isEmpty()) {
+            return;
+        }
+        if (files.size() > 1) {
+            openFiles(files);
+            return;
+        }
+        File file = files.get(0);
+        LoadTask task = new LoadTask(file);
+        task.setOnSucceeded(e -> showLoaded(task));
+        task.setOnFailed(e -> {
+            LOGGER.log(Level.SEVERE, "Could not load file", task.getException());
+            showAlert("Error", "Could not load file: " + task.getException().getMessage());
+        });
+        runTask(task);
+    }
+
+    /**
+     * Публикация загруженного файла одним пакетом
+     */
+    private void showLoaded(LoadTask task) {
+        File file = task.getFile();
+        personData.setAll(task.getValue());
+        history.clear();
+        currentFile = file;
+        sourceFiles.clear();
+        journal.markSaved(file);
+        changes.markClean();
+        watchFile(file, task.getSourceState());
+        useRepository(memoryRepository);
+        clearDetails();
+        compressItem.setSelected(task.isCompressed());
+        SessionCache.remember(file);
+        if (task.getLostRecords() > 0) {
+            showAlert("Warning", String.format("%,d contacts in damaged parts of %s could not be read. "
+                    + "Saving will write the file without them.", task.getLostRecords(), file.getName()));
+        }
+        // Файл читался медленно (старый формат или журнал) — в следующий раз прочитаем снимок.
+        // Пишутся значения, снятые при чтении: контакты к этому моменту уже можно редактировать
+        if (task.needsSnapshot()) {
+            ioExecutor.execute(SessionCache.storing(task.getSourceState(), task.getSnapshotKeys()));
+        }
+    }
+
+    /**
+     * Начало наблюдения за открытым файлом
+     *
+     * @param state состояние файла, с которым совпадают данные в памяти
+     */
+    private void watchFile(File file, String state) {
+        unwatchFile();
+        try {
+            fileWatcher = new FileWatcher(file.toPath(), state, () -> Platform.runLater(this::fileChangedOnDisk));
+        } catch (IOException e) {
+            // Например, файловая система не поддерживает уведомления
+            LOGGER.log(Level.WARNING, "Could not watch " + file, e);
+        }
+    }
+
+    private void unwatchFile() {
+        reloadPending = false;
+        saveAfterReload = false;
+        if (fileWatcher != null) {
+            try {
+                fileWatcher.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not stop watching file", e);
+            }
+            fileWatcher = null;
+        }
+    }
+
+    /**
+     * Наблюдение за файлом, если это открытый файл, иначе null
+     */
+    private FileWatcher watcherFor(File file) {
+        return fileWatcher != null && fileWatcher.watches(file.toPath()) ? fileWatcher : null;
+    }
+
+    /**
+     * Сохранение не состоялось, потому что файл изменили извне: перечитываем и сохраняем снова
+     */
+    private void saveChangedOnDisk() {
+        saveAfterReload = true;
+        fileChangedOnDisk();
+    }
+
+    /**
+     * Открытый файл изменила другая программа
+     */
+    private void fileChangedOnDisk() {
+        if (fileWatcher == null || !fileWatcher.isChanged()) {
+            return;
+        }
+        if (currentTask != null) {
+            reloadPending = true;
+            return;
+        }
+        reloadFromDisk();
+    }
+
+    /**
+     * Фоновое перечитывание файла, измененного извне. Несохраненные изменения
+     * накладываются поверх нового содержимого, если они известны по журналу;
+     * иначе пользователь выбирает между своей версией и версией с диска.
+     */
+    private void reloadFromDisk() {
+        File file = currentFile;
+        if (!file.exists()) {
+            // Файл удалили или переместили: следующее сохранение запишет его заново целиком
+            journal.invalidate();
+            fileWatcher.markSynced(null);
+            changes.updated();
+            if (saveAfterReload) {
+                saveAfterReload = false;
+                saveTo(file);
+            } else {
+                showAlert("Warning", file.getName() + " was deleted or moved by another program. "
+                        + "Save to write it again.");
+            }
+            return;
+        }
+
+        List<AddressBookJournal.Entry> unsaved;
+        if (journal.canAppend(file)) {
+            unsaved = journal.pending();
+        } else if (!changes.isDirty()) {
+            unsaved = List.of();
+        } else {
+            // Изменения не записаны по отдельности — их можно только отбросить или оставить целиком
+            ButtonType reload = new ButtonType("Reload", ButtonBar.ButtonData.OK_DONE);
+            ButtonType keep = new ButtonType("Keep Mine", ButtonBar.ButtonData.CANCEL_CLOSE);
+            Alert alert = new Alert(Alert.AlertType.CONFIRMATION,
+                    "Reload the file and discard your unsaved changes, or keep your version? "
+                            + "Saving your version will overwrite the changes made on disk.",
+                    reload, keep);
+            alert.setTitle("File Changed on Disk");
+            alert.setHeaderText(file.getName() + " was changed by another program");
+            if (alert.showAndWait().orElse(keep) != reload) {
+                try {
+                    fileWatcher.markSynced(fileWatcher.state());
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Could not check " + file, e);
+                }
+                if (saveAfterReload) {
+                    saveAfterReload = false;
+                    saveTo(file);
+                }
+                return;
+            }
+            unsaved = List.of();
+        }
+
+        // Значения полей снимаем здесь: в фоне контакты читать нельзя, их могут менять
+        List<Person> current = List.copyOf(personData);
+        List<Person.Key> keys = new ArrayList<>(current.size());
+        for (Person person : current) {
+            keys.add(person.key());
+        }
+        ReloadTask task = new ReloadTask(file, current, keys, unsaved, changes.revision());
+        task.setOnSucceeded(e -> applyReload(task));
+        task.setOnCancelled(e -> saveAfterReload = false);
+        task.setOnFailed(e -> {
+            saveAfterReload = false;
+            LOGGER.log(Level.SEVERE, "Could not reload file", task.getException());
+            showAlert("Error", "Could not reload " + file.getName() + ": " + task.getException().getMessage());
+        });
+        runTask(task);
+    }
+
+    /**
+     * Применение разницы с перечитанным файлом: меняются только отличающиеся контакты,
+     * все изменения отменяются одним шагом
+     */
+    private void applyReload(ReloadTask task) {
+        File file = task.getFile();
+        if (fileWatcher == null || !file.equals(currentFile)) {
+            // Пока файл читался, создали новую книгу
+            return;
+        }
+        if (task.getRevision() != changes.revision()) {
+            // Пока файл читался, книгу изменили здесь — сравниваем заново
+            reloadFromDisk();
+            return;
+        }
+        AddressBookDiff diff = task.getDiff();
+        Metrics.Operation operation = Metrics.begin(Metrics.RELOAD);
+        if (!diff.isEmpty()) {
+            history.beginGroup("Reload " + file.getName());
+            Set<Person> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+            removed.addAll(diff.removed());
+            personData.removeAll(removed);
+            updatePersons(diff.edited(), diff.values());
+            personData.addAll(diff.added());
+            history.endGroup();
+        }
+        // Журнал теперь ведется от нового содержимого файла
+        journal.markSaved(file);
+        journal.restore(file, diff.unsaved());
+        if (diff.unsaved().isEmpty()) {
+            changes.markClean();
+        }
+        fileWatcher.markSynced(task.getSourceState());
+        operation.end(diff.removed().size() + diff.edited().size() + diff.added().size(), 0);
+
+        if (!diff.conflicts().isEmpty()) {
+            saveAfterReload = false;
+            showConflicts(file, diff.conflicts());
+            return;
+        }
+        showStatus(String.format("Reloaded %s after it changed on disk: %,d added, %,d removed, %,d changed",
+                file.getName(), diff.added().size(), diff.removed().size(), diff.edited().size()));
+        if (saveAfterReload) {
+            saveAfterReload = false;
+            saveTo(file);
+        }
+    }
+
+    /**
+     * Сообщение о контактах, измененных и здесь, и в файле
+     */
+    private void showConflicts(File file, List<Person.Key> conflicts) {
+        StringJoiner names = new StringJoiner("\n");
+        for (Person.Key key : conflicts.subList(0, Math.min(conflicts.size(), MAX_LISTED_CONFLICTS))) {
+            names.add("    " + (key.firstName() == null ? "" : key.firstName())
+                    + " " + (key.lastName() == null ? "" : key.lastName()));
+        }
+        if (conflicts.size() > MAX_LISTED_CONFLICTS) {
+            names.add(String.format("    and %,d more", conflicts.size() - MAX_LISTED_CONFLICTS));
+        }
+        showAlert("Conflicting Changes", String.format("%,d contacts were changed here and by another program "
+                + "in %s. Your versions were kept; the versions from the file, if any, were added next to them. "
+                + "Nothing is saved until you save.%n%n%s", conflicts.size(), file.getName(), names));
+    }
+
+    /**
+     * Открытие нескольких книг с объединением; сохранение пишет изменения обратно в них
+     */
+    private void openFiles(List<File> files) {
+        if (files.size() > MergedLoadTask.MAX_FILES) {
+            showAlert("Warning", "Cannot open more than " + MergedLoadTask.MAX_FILES + " files at once");
+            return;
+        }
+        MergedLoadTask task = new MergedLoadTask(files);
+        task.setOnSucceeded(e -> {
+            personData.setAll(task.getValue());
+            history.clear();
+            currentFile = files.get(0);
+            sourceFiles.clear();
+            sourceFiles.addAll(files);
+            changedSources = 0;
+            // Журнал и наблюдение ведутся для одного файла
+            journal.invalidate();
+            unwatchFile();
+            changes.markClean();
+            useRepository(memoryRepository);
+            clearDetails();
+            SessionCache.forget();
+        });
+        task.setOnFailed(e -> {
+            LOGGER.log(Level.SEVERE, "Could not load files", task.getException());
+            showAlert("Error", "Could not load files: " + task.getException().getMessage());
+        });
+        runTask(task);
+    }
+
+    /**
+     * Просмотр большого файла без загрузки в память: таблица читает страницы по мере прокрутки
+     */
+    private void browseFile(Stage primaryStage) {
+        if (currentTask != null) {
+            showAlert("Warning", "Another operation is in progress");
+            return;
+        }
+        if (changes.isDirty()) {
+            Alert alert = new Alert(Alert.AlertType.CONFIRMATION,
+                    "Are you sure you want to browse another file?",
+                    ButtonType.OK, ButtonType.CANCEL);
+            alert.setTitle("Browse File");
+            alert.setHeaderText("Unsaved changes will be lost");
+
+            if (alert.showAndWait().orElse(ButtonType.CANCEL) != ButtonType.OK) {
+                return;
+            }
+        }
+
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Browse Address Book");
+        fileChooser.getExtensionFilters().add(
+                new FileChooser.ExtensionFilter("Address Book Files", "*.addr"));
+        File file = fileChooser.showOpenDialog(primaryStage);
+        if (file == null) {
+            return;
+        }
+
+        // Открытие читает только заголовок и словарь, поэтому выполняется сразу
+        PagedFileRepository paged;
+        try {
+            paged = PagedFileRepository.open(file.toPath());
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Could not browse file", e);
+            showAlert("Error", "Could not browse file: " + e.getMessage());
+            return;
+        }
+        // Список в памяти освобождаем, чтобы куча не зависела от размера книги
+        personData.clear();
+        history.clear();
+        currentFile = null;
+        sourceFiles.clear();
+        journal.invalidate();
+        unwatchFile();
+        changes.markClean();
+        useRepository(paged);
+        clearDetails();
+        SessionCache.forget();
+        showStatus(String.format("Browsing %s: %,d contacts (read-only)", file.getName(), paged.size()));
+    }
+
+    /**
+     * Переключение таблицы на другое хранилище; предыдущее файловое хранилище закрывается
+     */
+    private void useRepository(AddressBookRepository next) {
+        if (repository == next) {
+            return;
+        }
+        try {
+            repository.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not close repository", e);
+        }
+        repository = next;
+        tableView.getSortOrder().clear();
+        tableView.getSelectionModel().clearSelection();
+        tableView.setItems(repository.view());
+        browsing.set(!repository.isEditable());
+    }
+
+    /**
+     * Импорт контактов из CSV или vCard с добавлением к текущему списку
+     */
+    private void importFile(Stage primaryStage) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Import Contacts");
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("CSV and vCard Files", "*.csv", "*.txt", "*.vcf", "*.vcard"),
+                new FileChooser.ExtensionFilter("All Files", "*.*"));
+
         File file = fileChooser.showOpenDialog(primaryStage);
         if (file != null) {
-            try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
-                // Десериализуем список контактов
-                SerializablePersonList data = (SerializablePersonList) ois.readObject();
-                personData.setAll(data.getPersons());
-                currentFile = file;
-            } catch (Exception e) {
-                LOGGER.log(Level.SEVERE, "Could not load file", e);
-                showAlert("Error", "Could not load file: " + e.getMessage());
+            if (currentTask != null) {
+                showAlert("Warning", "Another operation is in progress");
+                return;
+            }
+            ImportTask task = new ImportTask(file, personData, personIndex, history);
+            // Порции импорта отменяются одним шагом; правки, сделанные во время импорта, в него не попадают
+            history.beginBatches("Import " + file.getName());
+            task.stateProperty().addListener((obs, oldState, newState) -> {
+                if (task.isDone()) {
+                    history.endBatches();
+                }
+            });
+            task.setOnSucceeded(e -> statusLabel.setText(task.summary()));
+            task.setOnCancelled(e -> statusLabel.setText(task.summary()));
+            task.setOnFailed(e -> {
+                LOGGER.log(Level.SEVERE, "Could not import file", task.getException());
+                showAlert("Error", "Could not import file: " + task.getException().getMessage());
+            });
+            runTask(task);
+        }
+    }
+
+    /**
+     * Экспорт видимых в таблице контактов (с учетом поиска и сортировки) в CSV или JSON
+     */
+    private void exportFile(Stage primaryStage) {
+        if (currentTask != null) {
+            showAlert("Warning", "Another operation is in progress");
+            return;
+        }
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Export Contacts");
+        FileChooser.ExtensionFilter csvFilter = new FileChooser.ExtensionFilter("CSV Files", "*.csv");
+        FileChooser.ExtensionFilter jsonFilter = new FileChooser.ExtensionFilter("JSON Files", "*.json");
+        fileChooser.getExtensionFilters().addAll(csvFilter, jsonFilter);
+
+        File file = fileChooser.showSaveDialog(primaryStage);
+        if (file != null) {
+            // Добавляем расширение выбранного формата, если его нет
+            String name = file.getName().toLowerCase();
+            if (!name.endsWith(".csv") && !name.endsWith(".json")) {
+                String extension = fileChooser.getSelectedExtensionFilter() == jsonFilter ? ".json" : ".csv";
+                file = new File(file.getAbsolutePath() + extension);
             }
+            ExportTask task = new ExportTask(file, contactView);
+            task.setOnFailed(e -> {
+                LOGGER.log(Level.SEVERE, "Could not export file", task.getException());
+                showAlert("Error", "Could not export file: " + task.getException().getMessage());
+            });
+            runTask(task);
         }
     }
 
@@ -218,16 +1051,74 @@ public class AddressApp extends Application {
             if (!file.getName().endsWith(".addr")) {
                 file = new File(file.getAbsolutePath() + ".addr");
             }
-            currentFile = file;
-            saveFile(primaryStage);
+            saveTo(file);
         }
     }
 
+    /**
+     * Создание строки состояния с прогрессом фоновых операций
+     */
+    private HBox createStatusBar() {
+        statusProgress.setPrefWidth(150);
+        statusProgress.setVisible(false);
+        statusCancelButton.setVisible(false);
+        statusCancelButton.setOnAction(e -> {
+            if (currentTask != null) {
+                currentTask.cancel();
+            }
+        });
+
+        HBox statusBar = new HBox(10, statusLabel, statusProgress, statusCancelButton);
+        statusBar.setAlignment(Pos.CENTER_LEFT);
+        statusBar.setPadding(new Insets(2, 10, 2, 10));
+        HBox.setHgrow(statusLabel, Priority.ALWAYS);
+        statusLabel.setMaxWidth(Double.MAX_VALUE);
+        return statusBar;
+    }
+
+    /**
+     * Запуск фоновой операции с отображением прогресса в строке состояния
+     */
+    private void runTask(Task<?> task) {
+        if (currentTask != null) {
+            showAlert("Warning", "Another operation is in progress");
+            return;
+        }
+        currentTask = task;
+        statusLabel.textProperty().bind(task.messageProperty());
+        statusProgress.progressProperty().bind(task.progressProperty());
+        statusProgress.setVisible(true);
+        statusCancelButton.setVisible(true);
+
+        // По завершении возвращаем строку состояния в исходный вид
+        task.stateProperty().addListener((obs, oldState, newState) -> {
+            if (newState == Worker.State.SUCCEEDED || newState == Worker.State.FAILED
+                    || newState == Worker.State.CANCELLED) {
+                statusLabel.textProperty().unbind();
+                statusProgress.progressProperty().unbind();
+                statusProgress.setVisible(false);
+                statusCancelButton.setVisible(false);
+                if (newState == Worker.State.FAILED) {
+                    statusLabel.setText(task.getTitle() + " failed");
+                } else if (newState == Worker.State.CANCELLED) {
+                    statusLabel.setText(task.getTitle() + " cancelled");
+                }
+                currentTask = null;
+                if (reloadPending) {
+                    // Перечитываем после обработчиков завершения этой операции
+                    reloadPending = false;
+                    Platform.runLater(this::fileChangedOnDisk);
+                }
+            }
+        });
+        ioExecutor.execute(task);
+    }
+
     /**
      * Выход из приложения
      */
     private void exitApplication(Stage primaryStage) {
-        if (!personData.isEmpty()) {
+        if (changes.isDirty()) {
             // Запрашиваем подтверждение, если есть несохраненные изменения
             Alert alert = new Alert(Alert.AlertType.CONFIRMATION,
                     "Are you sure you want to exit?",
@@ -252,7 +1143,11 @@ public class AddressApp extends Application {
             Ctrl+O - Open file
             Ctrl+S - Save file
             Ctrl+Shift+S - Save As
-            Ctrl+Q - Exit""";
+            Ctrl+Q - Exit
+            Ctrl+Z - Undo
+            Ctrl+Y, Ctrl+Shift+Z - Redo
+            Ctrl+A - Select all contacts
+            Delete - Delete selected contacts""";
 
         Alert alert = new Alert(Alert.AlertType.INFORMATION, shortcuts);
         alert.setTitle("Keyboard Shortcuts");
@@ -260,6 +1155,268 @@ public class AddressApp extends Application {
         alert.showAndWait();
     }
 
+    /**
+     * Фоновый поиск похожих контактов с показом найденных групп
+     */
+    private void findDuplicates() {
+        if (currentTask != null) {
+            showAlert("Warning", "Another operation is in progress");
+            return;
+        }
+        DuplicateSearchTask task = new DuplicateSearchTask(personData);
+        task.setOnSucceeded(e -> {
+            if (task.getValue().isEmpty()) {
+                showAlert("Find Duplicates", "No similar contacts found");
+            } else {
+                showDuplicatesDialog(task.getPersons(), task.getKeys(), task.getValue());
+            }
+        });
+        task.setOnFailed(e -> {
+            LOGGER.log(Level.SEVERE, "Could not find duplicates", task.getException());
+            showAlert("Error", "Could not find duplicates: " + task.getException().getMessage());
+        });
+        runTask(task);
+    }
+
+    /**
+     * Окно с группами похожих контактов. При объединении группы остается выбранный
+     * в ней контакт (или первый), остальные удаляются одним изменением списка.
+     *
+     * @param persons  снимок контактов, на который указывают номера в группах
+     * @param keys     значения полей контактов на момент снимка
+     */
+    private void showDuplicatesDialog(List<Person> persons, List<Person.Key> keys,
+                                      List<DuplicateFinder.Cluster> clusters) {
+        Stage dialog = new Stage();
+        dialog.initModality(Modality.APPLICATION_MODAL);
+        dialog.setTitle("Duplicates");
+
+        // Группы — узлы верхнего уровня, контакты — их дочерние узлы
+        TreeItem<String> root = new TreeItem<>();
+        Map<TreeItem<String>, DuplicateFinder.Cluster> clusterItems = new HashMap<>();
+        Map<TreeItem<String>, Integer> memberItems = new HashMap<>();
+        for (DuplicateFinder.Cluster cluster : clusters) {
+            TreeItem<String> clusterItem = new TreeItem<>(String.format("%d contacts, similarity %.2f",
+                    cluster.members().length, cluster.score()));
+            for (int member : cluster.members()) {
+                Person.Key key = keys.get(member);
+                TreeItem<String> memberItem = new TreeItem<>(String.format("%s %s, %s, %s %s, %s",
+                        key.firstName(), key.lastName(), key.street(), key.postalCode(), key.city(),
+                        key.birthday()));
+                memberItems.put(memberItem, member);
+                clusterItem.getChildren().add(memberItem);
+            }
+            clusterItem.setExpanded(true);
+            clusterItems.put(clusterItem, cluster);
+            root.getChildren().add(clusterItem);
+        }
+        TreeView<String> tree = new TreeView<>(root);
+        tree.setShowRoot(false);
+
+        Label summary = new Label();
+        Runnable updateSummary = () -> summary.setText(String.format("%,d groups", root.getChildren().size()));
+        updateSummary.run();
+
+        Button mergeSelected = new Button("Merge Selected");
+        mergeSelected.disableProperty().bind(tree.getSelectionModel().selectedItemProperty().isNull());
+        mergeSelected.setOnAction(e -> {
+            TreeItem<String> selected = tree.getSelectionModel().getSelectedItem();
+            Integer keep = memberItems.get(selected);
+            TreeItem<String> clusterItem = keep != null ? selected.getParent() : selected;
+            mergeDuplicates(persons, keys, List.of(clusterItems.get(clusterItem)), keep);
+            root.getChildren().remove(clusterItem);
+            updateSummary.run();
+        });
+
+        Button mergeAll = new Button("Merge All");
+        mergeAll.setOnAction(e -> {
+            List<DuplicateFinder.Cluster> remaining = new ArrayList<>();
+            for (TreeItem<String> clusterItem : root.getChildren()) {
+                remaining.add(clusterItems.get(clusterItem));
+            }
+            mergeDuplicates(persons, keys, remaining, null);
+            root.getChildren().clear();
+            updateSummary.run();
+        });
+
+        Button closeButton = new Button("Close");
+        closeButton.setOnAction(e -> dialog.close());
+
+        HBox buttonBox = new HBox(10, summary, new Region() {{
+            HBox.setHgrow(this, Priority.ALWAYS);
+        }}, mergeSelected, mergeAll, closeButton);
+        buttonBox.setAlignment(Pos.CENTER_RIGHT);
+        VBox content = new VBox(10, tree, buttonBox);
+        content.setPadding(new Insets(10));
+        VBox.setVgrow(tree, Priority.ALWAYS);
+
+        dialog.setScene(new Scene(content, 700, 450));
+        dialog.showAndWait();
+    }
+
+    /**
+     * Объединение групп похожих контактов: в каждой группе остается один контакт.
+     * Контакты, которые после поиска удалили или изменили, не трогаем.
+     *
+     * @param keep номер контакта, который нужно оставить, или null — первый в группе
+     */
+    private void mergeDuplicates(List<Person> persons, List<Person.Key> keys,
+                                 List<DuplicateFinder.Cluster> clusters, Integer keep) {
+        // Удаление по идентичности: точные дубликаты равны по equals оставляемому контакту
+        Set<Person> remove = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (DuplicateFinder.Cluster cluster : clusters) {
+            int kept = keep != null ? keep : cluster.members()[0];
+            for (int member : cluster.members()) {
+                Person person = persons.get(member);
+                if (member != kept && person.key().equals(keys.get(member))) {
+                    remove.add(person);
+                }
+            }
+        }
+        int before = personData.size();
+        personData.removeAll(remove);
+        clearDetails();
+        showStatus(String.format("Merged %,d groups, removed %,d contacts",
+                clusters.size(), before - personData.size()));
+    }
+
+    /**
+     * Окно диагностики: задержки последних операций (p50/p99) и память на контакт.
+     * Обновляется раз в секунду, пока открыто.
+     */
+    private void showDiagnosticsDialog() {
+        Stage dialog = new Stage();
+        dialog.setTitle("Diagnostics");
+
+        TableView<Metrics.Summary> table = new TableView<>();
+        table.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_FLEX_LAST_COLUMN);
+        table.setPlaceholder(new Label("No operations yet"));
+        table.getColumns().addAll(List.of(
+                metricsColumn("Operation", Metrics.Summary::operation),
+                metricsColumn("Count", summary -> String.format("%,d", summary.count())),
+                metricsColumn("p50, ms", summary -> String.format("%.2f", summary.p50Millis())),
+                metricsColumn("p99, ms", summary -> String.format("%.2f", summary.p99Millis())),
+                metricsColumn("Max, ms", summary -> String.format("%.2f", summary.maxMillis())),
+                metricsColumn("Last Records", summary -> String.format("%,d", summary.lastRecords())),
+                metricsColumn("Last KB", summary -> String.format("%,d", summary.lastBytes() / 1024))));
+
+        Label heapLabel = new Label();
+        Runnable update = () -> {
+            table.getItems().setAll(Metrics.summaries());
+            Runtime runtime = Runtime.getRuntime();
+            long used = runtime.totalMemory() - runtime.freeMemory();
+            heapLabel.setText(personData.isEmpty()
+                    ? String.format("Heap used: %,d KB", used / 1024)
+                    : String.format("Heap used: %,d KB, %,d contacts, %,d bytes per contact",
+                    used / 1024, personData.size(), used / personData.size()));
+        };
+        update.run();
+
+        // Сборка мусора перед замером, чтобы в расчет на контакт не попал мусор
+        Button gcButton = new Button("Collect Garbage");
+        gcButton.setOnAction(e -> {
+            System.gc();
+            update.run();
+        });
+
+        Timeline timeline = new Timeline(new KeyFrame(Duration.seconds(1), e -> update.run()));
+        timeline.setCycleCount(Animation.INDEFINITE);
+        timeline.play();
+        dialog.setOnHidden(e -> timeline.stop());
+
+        HBox heapBox = new HBox(10, heapLabel, gcButton);
+        heapBox.setAlignment(Pos.CENTER_LEFT);
+        VBox root = new VBox(10, table, heapBox);
+        root.setPadding(new Insets(10));
+        VBox.setVgrow(table, Priority.ALWAYS);
+
+        dialog.setScene(new Scene(root, 650, 300));
+        dialog.show();
+    }
+
+    /**
+     * Окно с днями рождения: ближайшие N дней или выбранный месяц
+     */
+    private void showBirthdaysDialog() {
+        Stage dialog = new Stage();
+        dialog.setTitle("Birthdays");
+
+        TableView<Person> table = new TableView<>();
+        table.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_FLEX_LAST_COLUMN);
+        table.setPlaceholder(new Label("No birthdays"));
+        LocalDate today = LocalDate.now();
+        table.getColumns().addAll(List.of(
+                birthdayColumn("Name", Person::toString),
+                birthdayColumn("Birthday", Person::getBirthday),
+                birthdayColumn("Turns", person -> {
+                    LocalDate next = nextBirthday(person.getBirthdayDate(), today);
+                    return Integer.toString(next.getYear() - person.getBirthdayDate().getYear());
+                }),
+                birthdayColumn("In Days", person -> Long.toString(
+                        ChronoUnit.DAYS.between(today, nextBirthday(person.getBirthdayDate(), today))))));
+
+        Spinner<Integer> daysSpinner = new Spinner<>(1, 366, 30);
+        daysSpinner.setEditable(true);
+        daysSpinner.setPrefWidth(80);
+        ComboBox<Month> monthBox = new ComboBox<>(FXCollections.observableArrayList(Month.values()));
+        monthBox.setPromptText("Month");
+        Label countLabel = new Label();
+
+        Runnable showUpcoming = () -> {
+            table.getItems().setAll(birthdayIndex.upcoming(today, daysSpinner.getValue()));
+            countLabel.setText(String.format("%,d contacts", table.getItems().size()));
+        };
+        daysSpinner.valueProperty().addListener((obs, oldVal, newVal) -> {
+            monthBox.getSelectionModel().clearSelection();
+            showUpcoming.run();
+        });
+        monthBox.valueProperty().addListener((obs, oldVal, newVal) -> {
+            if (newVal != null) {
+                table.getItems().setAll(birthdayIndex.bornIn(newVal));
+                countLabel.setText(String.format("%,d contacts", table.getItems().size()));
+            }
+        });
+        showUpcoming.run();
+
+        // Переход к контакту в основной таблице
+        table.setOnMouseClicked(e -> {
+            Person person = table.getSelectionModel().getSelectedItem();
+            if (e.getClickCount() == 2 && person != null) {
+                tableView.getSelectionModel().select(person);
+                tableView.scrollTo(person);
+            }
+        });
+
+        HBox filterBox = new HBox(10, new Label("Next"), daysSpinner, new Label("days, or born in"),
+                monthBox, countLabel);
+        filterBox.setAlignment(Pos.CENTER_LEFT);
+        VBox root = new VBox(10, filterBox, table);
+        root.setPadding(new Insets(10));
+        VBox.setVgrow(table, Priority.ALWAYS);
+
+        dialog.setScene(new Scene(root, 600, 400));
+        dialog.show();
+    }
+
+    // Ближайший день рождения не раньше today; 29 февраля в невисокосный год — 28 февраля
+    private static LocalDate nextBirthday(LocalDate birthday, LocalDate today) {
+        LocalDate next = birthday.withYear(today.getYear());
+        return next.isBefore(today) ? birthday.withYear(today.getYear() + 1) : next;
+    }
+
+    private static TableColumn<Person, String> birthdayColumn(String title, Function<Person, String> value) {
+        TableColumn<Person, String> column = new TableColumn<>(title);
+        column.setCellValueFactory(cell -> new ReadOnlyStringWrapper(value.apply(cell.getValue())));
+        return column;
+    }
+
+    private static TableColumn<Metrics.Summary, String> metricsColumn(
+            String title, Function<Metrics.Summary, String> value) {
+        TableColumn<Metrics.Summary, String> column = new TableColumn<>(title);
+        column.setCellValueFactory(cell -> new ReadOnlyStringWrapper(value.apply(cell.getValue())));
+        return column;
+    }
+
     /**
      * Настройка таблицы контактов
      */
@@ -267,23 +1424,70 @@ public class AddressApp extends Application {
         // Политика изменения размеров колонок
         tableView.setColumnResizePolicy(TableView.UNCONSTRAINED_RESIZE_POLICY);
 
+        // Выделение нескольких строк для группового удаления и изменения
+        tableView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        tableView.setOnKeyPressed(event -> {
+            if (event.getCode() == KeyCode.DELETE && !browsing.get()) {
+                deleteSelected();
+                event.consume();
+            }
+        });
+
         // Колонка "Имя"
         TableColumn<Person, String> firstNameCol = new TableColumn<>("First Name");
         firstNameCol.setCellValueFactory(cellData -> cellData.getValue().firstNameProperty());
-        firstNameCol.setSortable(false);
         firstNameCol.setPrefWidth(150);
+        sortKeys.put(firstNameCol, ContactView.textKey(Person::getFirstName));
 
         // Колонка "Фамилия"
         TableColumn<Person, String> lastNameCol = new TableColumn<>("Last Name");
         lastNameCol.setCellValueFactory(cellData -> cellData.getValue().lastNameProperty());
-        lastNameCol.setSortable(false);
         lastNameCol.setPrefWidth(150);
+        sortKeys.put(lastNameCol, ContactView.textKey(Person::getLastName));
+
+        // Колонка "Город"
+        TableColumn<Person, String> cityCol = new TableColumn<>("City");
+        cityCol.setCellValueFactory(cellData -> cellData.getValue().cityProperty());
+        cityCol.setPrefWidth(150);
+        sortKeys.put(cityCol, ContactView.textKey(Person::getCity));
+
+        // Колонка "Индекс"
+        TableColumn<Person, String> postalCodeCol = new TableColumn<>("Postal Code");
+        postalCodeCol.setCellValueFactory(cellData -> cellData.getValue().postalCodeProperty());
+        postalCodeCol.setPrefWidth(150);
+        sortKeys.put(postalCodeCol, ContactView.textKey(Person::getPostalCode));
+
+        // Колонка "День рождения"
+        TableColumn<Person, String> birthdayCol = new TableColumn<>("Birthday");
+        birthdayCol.setCellValueFactory(cellData -> cellData.getValue().birthdayProperty());
+        birthdayCol.setPrefWidth(150);
+        sortKeys.put(birthdayCol, Person::getBirthdayDate);
 
         // Добавляем колонки в таблицу
         tableView.getColumns().add(firstNameCol);
         tableView.getColumns().add(lastNameCol);
+        tableView.getColumns().add(cityCol);
+        tableView.getColumns().add(postalCodeCol);
+        tableView.getColumns().add(birthdayCol);
         tableView.setPlaceholder(new Label("No content in table"));
-        tableView.setItems(personData);
+        tableView.setItems(repository.view());
+
+        // Большой файл показывается в порядке хранения: для сортировки и поиска нужен весь список
+        for (TableColumn<Person, ?> column : tableView.getColumns()) {
+            column.sortableProperty().bind(browsing.not());
+        }
+        searchField.disableProperty().bind(browsing);
+
+        // Сортировку выполняет ContactView по заранее вычисленным ключам
+        tableView.setSortPolicy(table -> {
+            List<ContactView.SortColumn> columns = new ArrayList<>();
+            for (TableColumn<Person, ?> column : table.getSortOrder()) {
+                columns.add(new ContactView.SortColumn(sortKeys.get(column),
+                        column.getSortType() == TableColumn.SortType.ASCENDING));
+            }
+            contactView.sort(columns);
+            return true;
+        });
 
         // Обработчик изменения размера таблицы
         tableView.widthProperty().addListener((obs, oldVal, newVal) -> {
@@ -292,6 +1496,44 @@ public class AddressApp extends Application {
         });
     }
 
+    /**
+     * Настройка строки поиска: фильтрация таблицы по мере ввода
+     */
+    private void setupSearchField() {
+        searchField.setPromptText("Search by name, street, city or postal code");
+        searchField.textProperty().addListener((obs, oldVal, newVal) -> applySearch());
+    }
+
+    /**
+     * Применение текущего поискового запроса к таблице
+     */
+    private void applySearch() {
+        Metrics.Operation operation = Metrics.begin(Metrics.SEARCH);
+        contactView.search(searchField.getText());
+        operation.end(contactView.size(), 0);
+        tableView.setPlaceholder(new Label(contactView.isSearching()
+                ? "No matching contacts" : "No content in table"));
+    }
+
+    /**
+     * Отбор контактов выбранной группы вместе с поисковым запросом; null — все группы
+     */
+    private void applyGroupFilter(GroupCounts counts, GroupCounts.Group group) {
+        Metrics.Operation operation = Metrics.begin(Metrics.SEARCH);
+        contactView.filter(group == null ? null : counts.filter(group));
+        operation.end(contactView.size(), 0);
+        tableView.setPlaceholder(new Label(contactView.isSearching()
+                ? "No matching contacts" : "No content in table"));
+        if (group != null) {
+            showStatus(String.format("%,d contacts with %s %s", contactView.size(),
+                    counts.grouping(), groupName(group)));
+        }
+    }
+
+    private static String groupName(GroupCounts.Group group) {
+        return group.getName().isEmpty() ? "(none)" : group.getName();
+    }
+
     /**
      * Создание панели с деталями контакта
      */
@@ -301,13 +1543,14 @@ public class AddressApp extends Application {
         detailsGrid.setVgap(5);
 
         // Добавляем метки полей
-        String[] labels = {"First Name", "Last Name", "Street", "City", "Postal Code", "Birthday"};
+        String[] labels = {"First Name", "Last Name", "Street", "City", "Postal Code", "Birthday", "Source"};
         for (int i = 0; i < labels.length; i++) {
             detailsGrid.add(new Label(labels[i] + ":"), 0, i);
         }
 
         // Настраиваем стиль для значений
-        Label[] valueLabels = {firstNameValue, lastNameValue, streetValue, cityValue, postalCodeValue, birthdayValue};
+        Label[] valueLabels = {firstNameValue, lastNameValue, streetValue, cityValue, postalCodeValue, birthdayValue,
+                sourceValue};
         String valueStyle = "-fx-padding: 2 5; -fx-border-color: #e0e0e0; -fx-border-width: 0 0 1 0;";
         for (int i = 0; i < valueLabels.length; i++) {
             valueLabels[i].setStyle(valueStyle);
@@ -318,12 +1561,14 @@ public class AddressApp extends Application {
         Button newButton = new Button("New address");
         newButton.setOnAction(event -> showEditDialog(null));
 
-        // Кнопка "Редактировать"
+        // Кнопка "Редактировать"; при выделении нескольких строк — групповое изменение поля
         Button editButton = new Button("Edit address");
         editButton.setOnAction(event -> {
-            Person selected = tableView.getSelectionModel().getSelectedItem();
-            if (selected != null) {
-                showEditDialog(selected);
+            List<Person> selected = new ArrayList<>(tableView.getSelectionModel().getSelectedItems());
+            if (selected.size() > 1) {
+                showBulkEditDialog(selected);
+            } else if (!selected.isEmpty()) {
+                showEditDialog(selected.get(0));
             } else {
                 showAlert("Warning", "Please select a person to edit");
             }
@@ -331,29 +1576,25 @@ public class AddressApp extends Application {
 
         // Кнопка "Удалить"
         Button deleteButton = new Button("Delete address");
-        deleteButton.setOnAction(event -> {
-            Person selected = tableView.getSelectionModel().getSelectedItem();
-            if (selected != null) {
-                personData.remove(selected);
-                clearDetails();
-            } else {
-                showAlert("Warning", "Please select a person to delete");
-            }
-        });
+        deleteButton.setOnAction(event -> deleteSelected());
 
         // Контейнер для кнопок
         HBox buttonBox = new HBox(10);
         buttonBox.getChildren().addAll(newButton, editButton, deleteButton);
+        buttonBox.disableProperty().bind(browsing);
         buttonBox.setPadding(new Insets(10, 0, 0, 0));
 
         // Собираем панель деталей
+        VBox groupsPane = createGroupsPane();
         VBox detailsPane = new VBox(10,
                 new Label("Person Details:") {{
                     setStyle("-fx-font-weight: bold;");
                 }},
                 detailsGrid,
-                buttonBox
+                buttonBox,
+                groupsPane
         );
+        VBox.setVgrow(groupsPane, Priority.ALWAYS);
         detailsPane.setPadding(new Insets(5));
         detailsPane.setStyle("-fx-border-color: gray; -fx-border-width: 1;");
 
@@ -361,27 +1602,352 @@ public class AddressApp extends Application {
     }
 
     /**
-     * Обновление деталей выбранного контакта
+     * Панель групп: число контактов по городу или по началу почтового индекса.
+     * Выбор группы оставляет в таблице только ее контакты
+     */
+    private VBox createGroupsPane() {
+        ChoiceBox<GroupCounts> groupingBox = new ChoiceBox<>(FXCollections.observableArrayList(cityCounts, postalCounts));
+        groupingBox.setConverter(new StringConverter<>() {
+            @Override
+            public String toString(GroupCounts counts) {
+                return counts == null ? "" : counts.grouping().toString();
+            }
+
+            @Override
+            public GroupCounts fromString(String text) {
+                return null;
+            }
+        });
+        groupingBox.valueProperty().addListener((obs, oldVal, newVal) -> groupList.setItems(newVal.groups()));
+        groupingBox.setValue(cityCounts);
+
+        // Счетчик в строке привязан к группе и меняется без перестроения списка
+        groupList.setCellFactory(list -> new ListCell<>() {
+            @Override
+            protected void updateItem(GroupCounts.Group group, boolean empty) {
+                super.updateItem(group, empty);
+                textProperty().unbind();
+                if (empty || group == null) {
+                    setText(null);
+                } else {
+                    textProperty().bind(Bindings.format("%s: %,d", groupName(group), group.countProperty()));
+                }
+            }
+        });
+        groupList.setPlaceholder(new Label("No contacts"));
+        groupList.getSelectionModel().selectedItemProperty().addListener((obs, oldVal, newVal) ->
+                applyGroupFilter(groupingBox.getValue(), newVal));
+
+        Button allButton = new Button("Show All");
+        allButton.setOnAction(e -> groupList.getSelectionModel().clearSelection());
+
+        HBox header = new HBox(10, new Label("Group by:"), groupingBox, allButton);
+        header.setAlignment(Pos.CENTER_LEFT);
+        VBox.setVgrow(groupList, Priority.ALWAYS);
+        VBox groupsPane = new VBox(5, new Label("Groups:") {{
+            setStyle("-fx-font-weight: bold;");
+        }}, header, groupList);
+        groupsPane.disableProperty().bind(browsing);
+        return groupsPane;
+    }
+
+    /**
+     * Отмена последнего изменения
+     */
+    private void undo() {
+        String name;
+        try {
+            name = history.undo();
+        } catch (IllegalStateException e) {
+            historyFailed("undo", e);
+            return;
+        }
+        if (name != null) {
+            afterHistoryStep("Undone: " + name);
+        }
+    }
+
+    /**
+     * Повтор отмененного изменения
+     */
+    private void redo() {
+        String name;
+        try {
+            name = history.redo();
+        } catch (IllegalStateException e) {
+            historyFailed("redo", e);
+            return;
+        }
+        if (name != null) {
+            afterHistoryStep("Redone: " + name);
+        }
+    }
+
+    // Шаг истории не совпал со списком: список не изменился, а история уже очищена
+    private void historyFailed(String action, IllegalStateException e) {
+        LOGGER.log(Level.WARNING, "Could not " + action, e);
+        showAlert("Error", "Could not " + action + ": the contacts no longer match the change. "
+                + "Undo history has been cleared.");
+    }
+
+    private void afterHistoryStep(String message) {
+        tableView.getSelectionModel().clearSelection();
+        clearDetails();
+        showStatus(message);
+    }
+
+    /**
+     * Удаление выделенных контактов одним изменением списка
+     */
+    private void deleteSelected() {
+        List<Person> selected = tableView.getSelectionModel().getSelectedItems();
+        if (selected.isEmpty()) {
+            showAlert("Warning", "Please select a person to delete");
+            return;
+        }
+        if (selected.size() > 1) {
+            Alert alert = new Alert(Alert.AlertType.CONFIRMATION,
+                    String.format("Delete %,d selected contacts?", selected.size()),
+                    ButtonType.OK, ButtonType.CANCEL);
+            alert.setTitle("Delete Contacts");
+            alert.setHeaderText(null);
+            if (alert.showAndWait().orElse(ButtonType.CANCEL) != ButtonType.OK) {
+                return;
+            }
+        }
+        // Удаление по идентичности: равные по equals контакты вне выделения остаются
+        Set<Person> remove = Collections.newSetFromMap(new IdentityHashMap<>(selected.size() * 2));
+        remove.addAll(selected);
+        tableView.getSelectionModel().clearSelection();
+        personData.removeAll(remove);
+        clearDetails();
+        showStatus(String.format("Deleted %,d contacts", remove.size()));
+    }
+
+    /**
+     * Диалог группового изменения: одно поле получает одно значение у всех выделенных контактов
+     */
+    private void showBulkEditDialog(List<Person> persons) {
+        Stage dialog = new Stage();
+        dialog.initModality(Modality.APPLICATION_MODAL);
+        dialog.setTitle(String.format("Edit %,d Contacts", persons.size()));
+
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(10);
+        grid.setPadding(new Insets(20, 150, 10, 10));
+
+        ChoiceBox<String> fieldBox = new ChoiceBox<>(FXCollections.observableArrayList(
+                "First Name", "Last Name", "Street", "City", "Postal Code", "Birthday"));
+        fieldBox.setValue("City");
+        TextField valueField = new TextField();
+        grid.add(new Label("Field:"), 0, 0);
+        grid.add(fieldBox, 1, 0);
+        grid.add(new Label("New value:"), 0, 1);
+        grid.add(valueField, 1, 1);
+
+        // Метка для отображения ошибок
+        Label errorLabel = new Label();
+        errorLabel.setStyle("-fx-text-fill: red;");
+        grid.add(errorLabel, 0, 2, 2, 1);
+
+        Button okButton = new Button("OK");
+        okButton.setOnAction(event -> {
+            String value = valueField.getText();
+            if (value.isEmpty()) {
+                errorLabel.setText("Please enter a value!");
+                return;
+            }
+            if (fieldBox.getValue().equals("Birthday")) {
+                try {
+                    Person.parseBirthday(value);
+                } catch (IllegalArgumentException e) {
+                    errorLabel.setText("Birthday must be a date like 31.12.1990");
+                    return;
+                }
+                value = Person.normalizeBirthday(value);
+            }
+            bulkEdit(persons, fieldBox.getValue(), value);
+            dialog.close();
+        });
+
+        Button cancelButton = new Button("Cancel");
+        cancelButton.setOnAction(event -> dialog.close());
+
+        HBox buttonBox = new HBox(10, okButton, cancelButton);
+        buttonBox.setAlignment(Pos.CENTER_RIGHT);
+        grid.add(buttonBox, 1, 3);
+
+        dialog.setScene(new Scene(grid));
+        dialog.showAndWait();
+    }
+
+    /**
+     * Групповое изменение поля; контакты, которые совпали бы с существующими, пропускаются
+     */
+    private void bulkEdit(List<Person> persons, String field, String value) {
+        List<Person> edited = new ArrayList<>(persons.size());
+        List<Person.Key> values = new ArrayList<>(persons.size());
+        Set<Person.Key> planned = new HashSet<>();
+        int duplicates = 0;
+        for (Person person : persons) {
+            Person.Key key = person.key();
+            Person.Key changed = switch (field) {
+                case "First Name" -> new Person.Key(value, key.lastName(), key.street(),
+                        key.city(), key.postalCode(), key.birthday());
+                case "Last Name" -> new Person.Key(key.firstName(), value, key.street(),
+                        key.city(), key.postalCode(), key.birthday());
+                case "Street" -> new Person.Key(key.firstName(), key.lastName(), value,
+                        key.city(), key.postalCode(), key.birthday());
+                case "City" -> new Person.Key(key.firstName(), key.lastName(), key.street(),
+                        value, key.postalCode(), key.birthday());
+                case "Postal Code" -> new Person.Key(key.firstName(), key.lastName(), key.street(),
+                        key.city(), value, key.birthday());
+                default -> new Person.Key(key.firstName(), key.lastName(), key.street(),
+                        key.city(), key.postalCode(), value);
+            };
+            if (changed.equals(key)) {
+                continue;
+            }
+            if (personIndex.contains(changed) || !planned.add(changed)) {
+                duplicates++;
+                continue;
+            }
+            edited.add(person);
+            values.add(changed);
+        }
+
+        updatePersons(edited, values);
+        showStatus(duplicates == 0
+                ? String.format("Updated %,d contacts", edited.size())
+                : String.format("Updated %,d contacts, skipped %,d that would duplicate others",
+                edited.size(), duplicates));
+    }
+
+    /**
+     * Запуск локального HTTP-интерфейса на порту {@link #API_PORT}
+     */
+    private void startApi() {
+        if (contactServer != null) {
+            return;
+        }
+        ContactServer server = new ContactServer(apiModel(), Platform::runLater);
+        try {
+            server.start(API_PORT);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not start HTTP API", e);
+            apiItem.setSelected(false);
+            showAlert("Error", "Could not start the HTTP API on port " + API_PORT + ": " + e.getMessage());
+            return;
+        }
+        contactServer = server;
+        showStatus("HTTP API at " + server.uri());
+    }
+
+    private void stopApi() {
+        if (contactServer != null) {
+            contactServer.stop();
+            contactServer = null;
+            showStatus("HTTP API stopped");
+        }
+    }
+
+    /**
+     * Контакты для HTTP-интерфейса; изменения проходят те же проверки и индексы,
+     * что и изменения из диалогов, и отменяются через Undo
+     */
+    private ContactServer.Model apiModel() {
+        return new ContactServer.Model() {
+            @Override
+            public ObservableList<Person> persons() {
+                return personData;
+            }
+
+            @Override
+            public long revision() {
+                return changes.revision();
+            }
+
+            @Override
+            public boolean isEditable() {
+                return repository.isEditable();
+            }
+
+            @Override
+            public List<Person> search(String[] query) {
+                return contactView.find(query);
+            }
+
+            @Override
+            public boolean add(Person person) {
+                if (personIndex.contains(person.key())) {
+                    return false;
+                }
+                personData.add(person);
+                return true;
+            }
+
+            @Override
+            public boolean update(Person person, Person.Key values) {
+                if (!values.equals(person.key()) && personIndex.contains(values)) {
+                    return false;
+                }
+                updatePerson(person, values);
+                return true;
+            }
+
+            @Override
+            public void delete(Person person) {
+                Set<Person> remove = Collections.newSetFromMap(new IdentityHashMap<>());
+                remove.add(person);
+                if (tableView.getSelectionModel().getSelectedItem() == person) {
+                    clearDetails();
+                }
+                personData.removeAll(remove);
+            }
+        };
+    }
+
+    /**
+     * Показ выбранного контакта: поля панели деталей привязываются к его свойствам
+     * и следят за изменениями сами
      */
-    private void updateDetails(Person person) {
-        firstNameValue.setText(person.getFirstName());
-        lastNameValue.setText(person.getLastName());
-        streetValue.setText(person.getStreet());
-        cityValue.setText(person.getCity());
-        postalCodeValue.setText(person.getPostalCode());
-        birthdayValue.setText(person.getBirthday());
+    private void showDetails(Person person) {
+        firstNameValue.textProperty().bind(person.firstNameProperty());
+        lastNameValue.textProperty().bind(person.lastNameProperty());
+        streetValue.textProperty().bind(person.streetProperty());
+        cityValue.textProperty().bind(person.cityProperty());
+        postalCodeValue.textProperty().bind(person.postalCodeProperty());
+        birthdayValue.textProperty().bind(person.birthdayProperty());
+        sourceValue.setText(sourceNames(person));
+    }
+
+    /**
+     * Файлы, из которых загружен контакт
+     */
+    private String sourceNames(Person person) {
+        if (sourceFiles.isEmpty()) {
+            return currentFile == null ? "" : currentFile.getName();
+        }
+        StringJoiner names = new StringJoiner(", ");
+        int sources = MergedSaveTask.sourcesOf(person);
+        for (int i = 0; i < sourceFiles.size(); i++) {
+            if ((sources & 1 << i) != 0) {
+                names.add(sourceFiles.get(i).getName());
+            }
+        }
+        return names.toString();
     }
 
     /**
      * Очистка панели деталей
      */
     private void clearDetails() {
-        firstNameValue.setText("");
-        lastNameValue.setText("");
-        streetValue.setText("");
-        cityValue.setText("");
-        postalCodeValue.setText("");
-        birthdayValue.setText("");
+        for (Label label : List.of(firstNameValue, lastNameValue, streetValue, cityValue, postalCodeValue,
+                birthdayValue, sourceValue)) {
+            label.textProperty().unbind();
+            label.setText("");
+        }
     }
 
     /**
@@ -439,39 +2005,43 @@ public class AddressApp extends Application {
                     return;
                 }
             }
+            try {
+                Person.parseBirthday(birthdayField.getText());
+            } catch (IllegalArgumentException e) {
+                errorLabel.setText("Birthday must be a date like 31.12.1990");
+                return;
+            }
+
+            Person.Key values = new Person.Key(
+                    firstNameField.getText(),
+                    lastNameField.getText(),
+                    streetField.getText(),
+                    cityField.getText(),
+                    postalCodeField.getText(),
+                    Person.normalizeBirthday(birthdayField.getText())
+            );
+
+            // Проверка на дубликаты (при редактировании — если значения изменились)
+            Metrics.Operation duplicateCheck = Metrics.begin(Metrics.DUPLICATE_CHECK);
+            boolean duplicate = (person == null || !values.equals(person.key())) && personIndex.contains(values);
+            duplicateCheck.end(personData.size(), 0);
+            if (duplicate) {
+                errorLabel.setText("This address already exists!");
+                return;
+            }
 
             if (person == null) {
                 // Создаем новый контакт
-                Person newPerson = new Person(
-                        firstNameField.getText(),
-                        lastNameField.getText(),
-                        streetField.getText(),
-                        cityField.getText(),
-                        postalCodeField.getText(),
-                        birthdayField.getText()
-                );
-
-                // Проверка на дубликаты
-                if (personData.contains(newPerson)) {
-                    errorLabel.setText("This address already exists!");
-                    return;
-                }
+                Person newPerson = new Person(values.firstName(), values.lastName(), values.street(),
+                        values.city(), values.postalCode(), values.birthday());
 
                 personData.add(newPerson);
                 // Выделяем новый контакт в таблице
                 tableView.getSelectionModel().select(newPerson);
             } else {
-                // Обновляем существующий контакт
-                person.setFirstName(firstNameField.getText());
-                person.setLastName(lastNameField.getText());
-                person.setStreet(streetField.getText());
-                person.setCity(cityField.getText());
-                person.setPostalCode(postalCodeField.getText());
-                person.setBirthday(birthdayField.getText());
-
-                // Обновляем отображение
-                tableView.refresh();
-                updateDetails(person);
+                // Обновляем существующий контакт; строка таблицы и панель деталей
+                // привязаны к его свойствам и обновятся сами
+                updatePerson(person, values);
             }
 
             dialog.close();
@@ -491,6 +2061,56 @@ public class AddressApp extends Application {
         dialog.showAndWait();
     }
 
+    /**
+     * Изменение полей контакта с обновлением индексов
+     */
+    private void updatePerson(Person person, Person.Key values) {
+        updatePersons(List.of(person), List.of(values));
+    }
+
+    /**
+     * Изменение полей группы контактов; таблица получает одно событие изменения
+     */
+    private void updatePersons(List<Person> persons, List<Person.Key> values) {
+        if (persons.isEmpty()) {
+            return;
+        }
+        Metrics.Operation operation = Metrics.begin(Metrics.EDIT);
+        List<Person.Key> before = new ArrayList<>(persons.size());
+        for (int i = 0; i < persons.size(); i++) {
+            Person person = persons.get(i);
+            Person.Key key = values.get(i);
+            before.add(person.key());
+            person.setFirstName(key.firstName());
+            person.setLastName(key.lastName());
+            person.setStreet(key.street());
+            person.setCity(key.city());
+            person.setPostalCode(key.postalCode());
+            person.setBirthday(key.birthday());
+            personIndex.updated(person, before.get(i));
+            journal.updated(person, before.get(i));
+            if (!sourceFiles.isEmpty()) {
+                changedSources |= MergedSaveTask.sourcesOf(person);
+            }
+        }
+        history.edited(persons, before);
+        birthdayIndex.updated(persons, before);
+        cityCounts.updated(persons, before);
+        postalCounts.updated(persons, before);
+        contactView.updated(persons, before);
+        changes.updated();
+        operation.end(persons.size(), 0);
+    }
+
+    /**
+     * Сообщение в строке состояния; пока идет фоновая операция, там ее прогресс
+     */
+    private void showStatus(String message) {
+        if (!statusLabel.textProperty().isBound()) {
+            statusLabel.setText(message);
+        }
+    }
+
     /**
      * Показ предупреждающего сообщения
      */
@@ -504,12 +2124,12 @@ public class AddressApp extends Application {
     /**
      * Вспомогательный класс для сериализации списка контактов
      */
-    private static class SerializablePersonList implements Serializable {
+    static class SerializablePersonList implements Serializable {
         @Serial
         private static final long serialVersionUID = 1L;
         private final List<Person> persons;
 
-        public SerializablePersonList(ObservableList<Person> persons) {
+        public SerializablePersonList(List<Person> persons) {
             this.persons = List.copyOf(persons);
         }
 
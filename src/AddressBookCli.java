@@ -0,0 +1,453 @@
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Пакетная обработка файлов .addr из командной строки, без запуска JavaFX:
+ * <pre>
+ * java -cp addressapp.jar:javafx-base.jar AddressBookCli &lt;команда&gt; [параметры] файлы...
+ *
+ *   stats    файлы...                          сводка по каждому файлу
+ *   dedupe   [-o папка] файлы...               удаление дубликатов (без -o — на месте)
+ *   merge    -o файл.addr файлы...             объединение без дубликатов
+ *   convert  [--to binary|compressed|legacy] [-o папка] файлы...
+ *                                              перевод в двоичный, сжатый или старый формат
+ *   export   [--format csv|json] [-o папка] файлы...
+ *                                              экспорт в CSV или JSON
+ *
+ *   -j N     не больше N одновременных операций чтения/записи (по умолчанию 4)
+ * </pre>
+ * Каждый файл обрабатывается в своем потоке (виртуальном, если JVM их поддерживает),
+ * число одновременных операций ввода-вывода ограничено семафором.
+ * Файлы читаются так же, как в приложении: оба формата и с применением журнала.
+ * Код возврата 0 — все файлы обработаны, 1 — были ошибки, 2 — неверные параметры.
+ */
+public final class AddressBookCli {
+    private static final int DEFAULT_IO_LIMIT = 4;
+
+    private final PrintStream out;
+    private final Semaphore ioPermits;
+
+    /**
+     * Итог обработки одного файла
+     *
+     * @param summary строка для вывода
+     */
+    private record Result(Path file, long records, long bytes, String summary) {
+    }
+
+    private AddressBookCli(PrintStream out, int ioLimit) {
+        this.out = out;
+        this.ioPermits = new Semaphore(ioLimit);
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * Выполнение команды; возвращает код возврата
+     */
+    public static int run(String[] args, PrintStream out, PrintStream err) {
+        if (args.length == 0 || args[0].equals("-h") || args[0].equals("--help")) {
+            out.println(usage());
+            return args.length == 0 ? 2 : 0;
+        }
+
+        String command = args[0];
+        Path output = null;
+        String to = "binary";
+        String format = "csv";
+        int ioLimit = DEFAULT_IO_LIMIT;
+        List<Path> files = new ArrayList<>();
+        try {
+            for (int i = 1; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-o", "--output" -> output = Path.of(value(args, ++i));
+                    case "--to" -> to = value(args, ++i).toLowerCase(Locale.ROOT);
+                    case "--format" -> format = value(args, ++i).toLowerCase(Locale.ROOT);
+                    case "-j" -> ioLimit = Integer.parseInt(value(args, ++i));
+                    default -> files.add(Path.of(args[i]));
+                }
+            }
+            if (files.isEmpty()) {
+                throw new IllegalArgumentException("No input files");
+            }
+            if (ioLimit < 1) {
+                throw new IllegalArgumentException("-j must be positive");
+            }
+            if (!to.equals("binary") && !to.equals("compressed") && !to.equals("legacy")) {
+                throw new IllegalArgumentException("Unknown format for --to: " + to);
+            }
+            if (!format.equals("csv") && !format.equals("json")) {
+                throw new IllegalArgumentException("Unknown format for --format: " + format);
+            }
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println(usage());
+            return 2;
+        }
+
+        AddressBookCli cli = new AddressBookCli(out, ioLimit);
+        try {
+            if (output != null && !command.equals("merge")) {
+                Files.createDirectories(output);
+            }
+            long start = System.nanoTime();
+            List<Result> results;
+            switch (command) {
+                case "stats" -> results = cli.forEach(files, cli::stats);
+                case "dedupe" -> {
+                    Path dir = output;
+                    results = cli.forEach(files, file -> cli.dedupe(file, target(file, dir, null)));
+                }
+                case "convert" -> {
+                    Path dir = output;
+                    String targetFormat = to;
+                    results = cli.forEach(files, file -> cli.convert(file, target(file, dir, null), targetFormat));
+                }
+                case "export" -> {
+                    Path dir = output;
+                    String extension = "." + format;
+                    results = cli.forEach(files, file -> cli.export(file, target(file, dir, extension)));
+                }
+                case "merge" -> {
+                    if (output == null) {
+                        err.println("merge requires -o <file>");
+                        return 2;
+                    }
+                    results = cli.merge(files, output);
+                }
+                default -> {
+                    err.println("Unknown command: " + command);
+                    err.println(usage());
+                    return 2;
+                }
+            }
+            cli.report(results, System.nanoTime() - start);
+            return results.stream().anyMatch(result -> result.summary().startsWith("error")) ? 1 : 0;
+        } catch (IOException e) {
+            err.println(e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            err.println("Interrupted");
+            return 1;
+        }
+    }
+
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+        }
+        return args[index];
+    }
+
+    private static String usage() {
+        return """
+                Usage: AddressBookCli <command> [options] files...
+                  stats    files...                        summary of each file
+                  dedupe   [-o dir] files...               remove duplicates (in place without -o)
+                  merge    -o file.addr files...           merge files without duplicates
+                  convert  [--to binary|compressed|legacy] [-o dir] files...
+                  export   [--format csv|json] [-o dir] files...
+                Options:
+                  -j N     at most N concurrent file reads/writes (default 4)""";
+    }
+
+    /**
+     * Обработка файлов, по потоку на файл; результаты — в порядке файлов
+     */
+    private List<Result> forEach(List<Path> files, FileAction action) throws InterruptedException {
+        ExecutorService executor = newFileExecutor();
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (Path file : files) {
+                futures.add(executor.submit(() -> action.apply(file)));
+            }
+            List<Result> results = new ArrayList<>();
+            for (int i = 0; i < files.size(); i++) {
+                results.add(result(files.get(i), futures.get(i)));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @FunctionalInterface
+    private interface FileAction {
+        Result apply(Path file) throws IOException, InterruptedException;
+    }
+
+    private static Result result(Path file, Future<Result> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            return new Result(file, 0, 0, "error: " + describe(e.getCause()));
+        }
+    }
+
+    private static String describe(Throwable error) {
+        if (error instanceof NoSuchFileException) {
+            return "file not found";
+        }
+        return error.getMessage() != null ? error.getMessage() : error.toString();
+    }
+
+    /**
+     * Пул потоков для файлов: виртуальные потоки на Java 21+, обычные — на более старых JVM
+     */
+    private static ExecutorService newFileExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "address-cli-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private Result stats(Path file) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        String format = formatOf(file);
+        List<Person> persons = load(file);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        Set<Person.Key> keys = new HashSet<>();
+        Set<String> cities = new HashSet<>();
+        Set<String> postalCodes = new HashSet<>();
+        for (Person person : persons) {
+            keys.add(person.key());
+            cities.add(person.getCity());
+            postalCodes.add(person.getPostalCode());
+        }
+        long bytes = Files.size(file);
+        return new Result(file, persons.size(), bytes, String.format(
+                "%s format, %,d records, %,d duplicates, %,d cities, %,d postal codes, %,d KB, loaded in %,d ms",
+                format, persons.size(), persons.size() - keys.size(),
+                cities.size(), postalCodes.size(), bytes / 1024, millis));
+    }
+
+    private Result dedupe(Path file, Path target) throws IOException, InterruptedException {
+        List<Person> persons = load(file);
+        List<Person> unique = unique(persons);
+        long bytes = save(target, unique, formatOf(file));
+        return new Result(file, persons.size(), bytes, String.format("%,d records, %,d duplicates removed -> %s",
+                persons.size(), persons.size() - unique.size(), target));
+    }
+
+    private Result convert(Path file, Path target, String format) throws IOException, InterruptedException {
+        List<Person> persons = load(file);
+        long bytes = save(target, persons, format);
+        return new Result(file, persons.size(), bytes, String.format("%,d records -> %s (%s, %,d KB)",
+                persons.size(), target, format, bytes / 1024));
+    }
+
+    private Result export(Path file, Path target) throws IOException, InterruptedException {
+        List<Person> persons = load(file);
+        long bytes = io(() -> {
+            Path temp = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".tmp");
+            try {
+                long size;
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                    ContactExport.RecordWriter writer = new ContactExport.RecordWriter(channel, ContactExport.format(target));
+                    for (Person person : persons) {
+                        writer.write(person.key());
+                    }
+                    writer.finish();
+                    size = writer.position();
+                }
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return size;
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        });
+        return new Result(file, persons.size(), bytes, String.format("%,d records -> %s (%,d KB)",
+                persons.size(), target, bytes / 1024));
+    }
+
+    /**
+     * Объединение: файлы читаются параллельно, контакты добавляются в порядке файлов
+     */
+    private List<Result> merge(List<Path> files, Path target) throws InterruptedException {
+        ExecutorService executor = newFileExecutor();
+        try {
+            List<Future<List<Person>>> futures = new ArrayList<>();
+            for (Path file : files) {
+                futures.add(executor.submit(() -> load(file)));
+            }
+            List<Result> results = new ArrayList<>();
+            Set<Person.Key> keys = new HashSet<>();
+            List<Person> merged = new ArrayList<>();
+            boolean failed = false;
+            for (int i = 0; i < files.size(); i++) {
+                try {
+                    List<Person> persons = futures.get(i).get();
+                    int before = merged.size();
+                    for (Person person : persons) {
+                        if (keys.add(person.key())) {
+                            merged.add(person);
+                        }
+                    }
+                    results.add(new Result(files.get(i), persons.size(), 0, String.format(
+                            "%,d records, %,d added", persons.size(), merged.size() - before)));
+                } catch (ExecutionException e) {
+                    failed = true;
+                    results.add(new Result(files.get(i), 0, 0, "error: " + describe(e.getCause())));
+                }
+            }
+            if (failed) {
+                // Неполный результат не записываем
+                results.add(new Result(target, 0, 0, "error: not written because of errors above"));
+                return results;
+            }
+            try {
+                long bytes = save(target, merged, "binary");
+                // Записи уже учтены во входных файлах
+                results.add(new Result(target, 0, bytes,
+                        String.format("%,d records written (%,d KB)", merged.size(), bytes / 1024)));
+            } catch (IOException e) {
+                results.add(new Result(target, 0, 0, "error: " + e.getMessage()));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void report(List<Result> results, long nanos) {
+        long records = 0;
+        long bytes = 0;
+        for (Result result : results) {
+            out.println(result.file() + ": " + result.summary());
+            records += result.records();
+            bytes += result.bytes();
+        }
+        double seconds = nanos / 1e9;
+        out.printf("Total: %,d files, %,d records, %,d KB in %.2f s (%,.0f records/s, %.1f MB/s)%n",
+                results.size(), records, bytes / 1024, seconds,
+                records / seconds, bytes / seconds / (1024 * 1024));
+    }
+
+    /**
+     * Чтение файла, как в приложении: любой формат плюс журнал изменений
+     */
+    private List<Person> load(Path file) throws IOException, InterruptedException {
+        return io(() -> {
+            // Под блокировкой не прочитаем снимок, который приложение как раз заменяет
+            AddressBookLock lock = AddressBookLock.shared(file);
+            try {
+                List<Person> persons = AddressBookFormat.read(file, AddressBookFormat.Progress.NONE);
+                AddressBookJournal.replay(file, persons);
+                return persons;
+            } finally {
+                lock.close();
+            }
+        });
+    }
+
+    /**
+     * Формат файла: binary, compressed или legacy
+     */
+    private String formatOf(Path file) throws IOException, InterruptedException {
+        return io(() -> AddressBookFormat.isLegacy(file) ? "legacy"
+                : AddressBookFormat.isCompressed(file) ? "compressed" : "binary");
+    }
+
+    /**
+     * Атомарная запись через временный файл в формате binary, compressed или legacy;
+     * возвращает размер файла
+     */
+    private long save(Path target, List<Person> persons, String format) throws IOException, InterruptedException {
+        return io(() -> {
+            Path absolute = target.toAbsolutePath();
+            Path temp = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+            try {
+                if (format.equals("legacy")) {
+                    try (ObjectOutputStream stream = new ObjectOutputStream(Files.newOutputStream(temp))) {
+                        stream.writeObject(new AddressApp.SerializablePersonList(persons));
+                    }
+                } else {
+                    AddressBookFormat.write(temp, Person.keys(persons), AddressBookFormat.Progress.NONE,
+                            format.equals("compressed"));
+                }
+                long size = Files.size(temp);
+                // Приложение, в котором файл открыт, заметит замену и перечитает его
+                AddressBookLock lock = AddressBookLock.exclusive(absolute);
+                try {
+                    Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    // Новый снимок уже содержит все изменения из журнала
+                    AddressBookJournal.delete(absolute);
+                } finally {
+                    lock.close();
+                }
+                return size;
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        });
+    }
+
+    /**
+     * Операция ввода-вывода под семафором
+     */
+    private <T> T io(Callable<T> operation) throws IOException, InterruptedException {
+        ioPermits.acquire();
+        try {
+            return operation.call();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        } finally {
+            ioPermits.release();
+        }
+    }
+
+    private static List<Person> unique(List<Person> persons) {
+        Set<Person.Key> keys = new HashSet<>();
+        List<Person> unique = new ArrayList<>(persons.size());
+        for (Person person : persons) {
+            if (keys.add(person.key())) {
+                unique.add(person);
+            }
+        }
+        return unique;
+    }
+
+    /**
+     * Путь результата: в папке dir (или рядом с исходным файлом) с расширением extension
+     * (или тем же именем, если extension == null)
+     */
+    private static Path target(Path file, Path dir, String extension) {
+        String name = file.getFileName().toString();
+        if (extension != null) {
+            int dot = name.lastIndexOf('.');
+            name = (dot > 0 ? name.substring(0, dot) : name) + extension;
+        }
+        Path parent = dir != null ? dir : file.toAbsolutePath().getParent();
+        return parent.resolve(name);
+    }
+}
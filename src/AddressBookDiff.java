@@ -0,0 +1,203 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Разница между книгой в памяти и файлом, который изменила другая программа.
+ * <p>
+ * Контакты сопоставляются по значениям шести полей ({@link Person.Key}), как в журнале:
+ * совпадающие остаются теми же объектами, остальные удаляются или добавляются. Удаленный
+ * и добавленный контакты с одинаковыми именем и фамилией считаются одним отредактированным —
+ * такой контакт меняется на месте и не пропадает из выделения.
+ * <p>
+ * Несохраненные изменения (записи журнала с момента последнего чтения или записи файла)
+ * накладываются поверх нового содержимого файла. Конфликт — контакт, который изменили
+ * здесь, а в файле его прежней версии больше нет (его изменили или удалили там): остается
+ * версия отсюда, а версия из файла, если она есть, добавляется рядом.
+ *
+ * @param removed   контакты в памяти, которых нет в итоговой книге
+ * @param edited    контакты в памяти, которые нужно изменить
+ * @param values    новые значения полей для edited, в том же порядке
+ * @param added     контакты из файла, которых нет в памяти
+ * @param conflicts прежние значения контактов, измененных и здесь, и в файле
+ * @param unsaved   несохраненные изменения относительно нового содержимого файла
+ */
+public record AddressBookDiff(List<Person> removed, List<Person> edited, List<Person.Key> values,
+                              List<Person> added, List<Person.Key> conflicts,
+                              List<AddressBookJournal.Entry> unsaved) {
+
+    public boolean isEmpty() {
+        return removed.isEmpty() && edited.isEmpty() && added.isEmpty();
+    }
+
+    /**
+     * Вычисление разницы; вызывается в фоновом потоке со снимками, сделанными в потоке JavaFX
+     *
+     * @param current     контакты в памяти
+     * @param currentKeys значения их полей, в том же порядке
+     * @param unsaved     несохраненные изменения; пустой список, если их нет или они отбрасываются
+     * @param file        новое содержимое файла
+     */
+    public static AddressBookDiff compute(List<Person> current, List<Person.Key> currentKeys,
+                                          List<AddressBookJournal.Entry> unsaved, List<Person> file) {
+        // Итоговая книга — содержимое файла с наложенными несохраненными изменениями
+        List<Person.Key> fileKeys = new ArrayList<>(file.size());
+        Map<Person.Key, Integer> target = new HashMap<>(file.size() * 2);
+        for (Person person : file) {
+            Person.Key key = person.key();
+            fileKeys.add(key);
+            target.merge(key, 1, Integer::sum);
+        }
+        List<AddressBookJournal.Entry> stillUnsaved = new ArrayList<>();
+        List<Person.Key> conflicts = new ArrayList<>();
+        Local local = Local.of(unsaved);
+        for (int i = 0; i < local.after.size(); i++) {
+            Person.Key before = local.before.get(i);
+            Person.Key after = local.after.get(i);
+            if (before != null && take(target, before)) {
+                // Прежняя версия в файле не менялась — правка остается несохраненной
+                stillUnsaved.add(new AddressBookJournal.Entry(AddressBookJournal.EDIT, before, after));
+            } else if (target.containsKey(after)) {
+                // Тот же контакт уже есть в файле: его добавили или так же изменили там
+                continue;
+            } else {
+                if (before != null) {
+                    conflicts.add(before);
+                }
+                stillUnsaved.add(new AddressBookJournal.Entry(AddressBookJournal.ADD, after, after));
+            }
+            target.merge(after, 1, Integer::sum);
+        }
+        for (Person.Key deleted : local.deleted) {
+            // Если в файле контакта уже нет, удалять нечего
+            if (take(target, deleted)) {
+                stillUnsaved.add(new AddressBookJournal.Entry(AddressBookJournal.DELETE, deleted, deleted));
+            }
+        }
+
+        // Контакты в памяти, которых нет в итоговой книге, и недостающие контакты из файла
+        // Сами контакты в памяти здесь не читаются: их могут менять в потоке JavaFX
+        List<Integer> stale = new ArrayList<>();
+        for (int i = 0; i < current.size(); i++) {
+            if (!take(target, currentKeys.get(i))) {
+                stale.add(i);
+            }
+        }
+        List<Person> missing = new ArrayList<>();
+        for (int i = 0; i < file.size(); i++) {
+            if (take(target, fileKeys.get(i))) {
+                missing.add(file.get(i));
+            }
+        }
+
+        // Пары с одинаковым именем — это правка одного контакта
+        Map<List<String>, Deque<Person>> byName = new HashMap<>();
+        for (Person person : missing) {
+            byName.computeIfAbsent(name(person.getFirstName(), person.getLastName()),
+                    k -> new ArrayDeque<>(1)).add(person);
+        }
+        List<Person> removed = new ArrayList<>();
+        List<Person> edited = new ArrayList<>();
+        List<Person.Key> values = new ArrayList<>();
+        Set<Person> paired = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i : stale) {
+            Person.Key key = currentKeys.get(i);
+            Deque<Person> candidates = byName.get(name(key.firstName(), key.lastName()));
+            Person match = candidates == null ? null : candidates.poll();
+            if (match == null) {
+                removed.add(current.get(i));
+            } else {
+                edited.add(current.get(i));
+                values.add(match.key());
+                paired.add(match);
+            }
+        }
+        // Новые контакты — в порядке файла
+        List<Person> added = new ArrayList<>();
+        for (Person person : missing) {
+            if (!paired.contains(person)) {
+                added.add(person);
+            }
+        }
+        return new AddressBookDiff(removed, edited, values, added, conflicts, stillUnsaved);
+    }
+
+    private static List<String> name(String firstName, String lastName) {
+        return Arrays.asList(firstName, lastName);
+    }
+
+    // Уменьшение счетчика значения; false, если такого значения нет
+    private static boolean take(Map<Person.Key, Integer> counts, Person.Key key) {
+        Integer count = counts.get(key);
+        if (count == null) {
+            return false;
+        }
+        if (count == 1) {
+            counts.remove(key);
+        } else {
+            counts.put(key, count - 1);
+        }
+        return true;
+    }
+
+    /**
+     * Итог несохраненных изменений: цепочки правок одного контакта сведены в одну,
+     * добавленный и затем удаленный контакт не учитывается
+     */
+    private static final class Local {
+        // Текущие значения измененных и добавленных контактов и их значения в файле
+        // (null у добавленных)
+        final List<Person.Key> after = new ArrayList<>();
+        final List<Person.Key> before = new ArrayList<>();
+        // Значения удаленных контактов в файле
+        final List<Person.Key> deleted = new ArrayList<>();
+
+        static Local of(List<AddressBookJournal.Entry> entries) {
+            Local local = new Local();
+            // Позиция контакта в after по его текущим значениям и звенья, замененные следующими
+            Map<Person.Key, Deque<Integer>> positions = new HashMap<>();
+            BitSet replaced = new BitSet();
+            for (AddressBookJournal.Entry entry : entries) {
+                Person.Key origin = null;
+                if (entry.type() != AddressBookJournal.ADD) {
+                    Deque<Integer> known = positions.get(entry.before());
+                    Integer position = known == null ? null : known.pollLast();
+                    if (position == null) {
+                        origin = entry.before();
+                    } else {
+                        // Контакт уже менялся здесь: продолжаем ту же цепочку
+                        replaced.set(position);
+                        origin = local.before.get(position);
+                    }
+                    if (entry.type() == AddressBookJournal.DELETE) {
+                        // Добавленный здесь и удаленный контакт в файл не попадал
+                        if (origin != null) {
+                            local.deleted.add(origin);
+                        }
+                        continue;
+                    }
+                }
+                positions.computeIfAbsent(entry.after(), k -> new ArrayDeque<>(1)).add(local.after.size());
+                local.after.add(entry.after());
+                local.before.add(origin);
+            }
+            Local result = new Local();
+            result.deleted.addAll(local.deleted);
+            for (int i = 0; i < local.after.size(); i++) {
+                if (!replaced.get(i)) {
+                    result.after.add(local.after.get(i));
+                    result.before.add(local.before.get(i));
+                }
+            }
+            return result;
+        }
+    }
+}
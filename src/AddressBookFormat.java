@@ -0,0 +1,765 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Компактный версионируемый двоичный формат файлов .addr.
+ *
+ * <pre>
+ * заголовок:  magic "ADDR" (4 байта), версия (2), флаги (2), число записей (4)
+ * словарь:    число строк (varint), строки
+ * записи:     firstName, lastName, street, индекс city, индекс postalCode, birthday
+ * </pre>
+ *
+ * Строки хранятся как varint-длина (длина + 1, 0 означает null) и байты UTF-8.
+ * Повторяющиеся значения city и postalCode хранятся один раз в словаре.
+ * <p>
+ * Начиная с версии 2 birthday хранится как varint: 0 — даты нет, 1 — далее строка
+ * с текстом, который не является датой, иначе номер дня от 1970-01-01 в zigzag-кодировке + 2.
+ * В версии 1 birthday — строка; при чтении она разбирается в дату.
+ * Файлы в старом формате (сериализация Java) по-прежнему читаются.
+ * <p>
+ * Версия 3 — сжатый контейнер. После заголовка идут независимые блоки по {@value #BLOCK_RECORDS}
+ * записей:
+ *
+ * <pre>
+ * блок:   "BLK3", длина сжатых данных, длина несжатых, число записей, CRC32 несжатых (по 4 байта),
+ *         данные Deflate; несжатые данные — словарь и записи блока в кодировке версии 2
+ * индекс: для каждого блока смещение (8 байт) и его заголовок без "BLK3"
+ * хвост:  смещение индекса (8), число блоков (4), CRC32 индекса (4), "ADDX" (4)
+ * </pre>
+ *
+ * Блоки сжимаются и распаковываются параллельно в общем пуле ForkJoin. Поврежденный блок
+ * не мешает прочитать остальные (см. {@link Damage}); если поврежден индекс,
+ * блоки находятся по их заголовкам.
+ */
+public final class AddressBookFormat {
+    static final int MAGIC = 0x41444452; // "ADDR"
+    static final short VERSION = 2;
+
+    // Версия, в которой birthday хранился строкой
+    static final short VERSION_TEXT_BIRTHDAY = 1;
+
+    // Версия сжатого контейнера из блоков записей версии 2
+    static final short VERSION_BLOCKS = 3;
+
+    private static final int HEADER_SIZE = 12;
+    private static final int BLOCK_RECORDS = 4096;
+    private static final int BLOCK_MAGIC = 0x424C4B33; // "BLK3"
+    private static final int BLOCK_HEADER_SIZE = 20;
+    private static final int INDEX_ENTRY_SIZE = 24;
+    private static final int FOOTER_MAGIC = 0x41444458; // "ADDX"
+    private static final int FOOTER_SIZE = 20;
+
+    // Первые байты потока сериализации Java
+    static final short JAVA_SERIALIZATION_MAGIC = (short) 0xACED;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Как часто (в записях) сообщать о прогрессе
+    private static final int REPORT_INTERVAL = 1000;
+
+    /**
+     * Получатель сведений о прогрессе чтения/записи.
+     * Может прервать операцию, выбросив {@link InterruptedIOException}.
+     */
+    @FunctionalInterface
+    public interface Progress {
+        Progress NONE = (records, bytes) -> { };
+
+        void update(long records, long bytes) throws IOException;
+    }
+
+    /**
+     * Получатель сведений о поврежденных блоках сжатого файла: записи такого блока пропускаются,
+     * остальные читаются. Без получателя поврежденный блок прерывает чтение.
+     */
+    @FunctionalInterface
+    public interface Damage {
+        void skipped(int records, IOException cause);
+    }
+
+    private AddressBookFormat() {
+    }
+
+    /**
+     * Чтение адресной книги в новом или старом формате
+     */
+    public static List<Person> read(Path path, Progress progress) throws IOException {
+        return read(path, progress, null);
+    }
+
+    /**
+     * Чтение адресной книги; записи из поврежденных блоков сжатого файла пропускаются
+     * и сообщаются {@code damage}
+     */
+    public static List<Person> read(Path path, Progress progress, Damage damage) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(Integer.BYTES + Short.BYTES);
+            channel.read(head, 0);
+            if (head.position() >= 2 && head.getShort(0) == JAVA_SERIALIZATION_MAGIC) {
+                return readLegacy(channel, progress);
+            }
+            if (!head.hasRemaining() && head.getInt(0) == MAGIC && head.getShort(4) == VERSION_BLOCKS) {
+                return readBlocks(channel, progress, damage);
+            }
+            return read(new ChannelReader(channel), progress);
+        }
+    }
+
+    /**
+     * Записан ли файл сжатым контейнером
+     */
+    public static boolean isCompressed(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(Integer.BYTES + Short.BYTES);
+            channel.read(head, 0);
+            return !head.hasRemaining() && head.getInt(0) == MAGIC && head.getShort(4) == VERSION_BLOCKS;
+        }
+    }
+
+    /**
+     * Записан ли файл в старом формате (сериализация Java)
+     */
+    public static boolean isLegacy(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(2);
+            channel.read(head, 0);
+            return head.position() == 2 && head.getShort(0) == JAVA_SERIALIZATION_MAGIC;
+        }
+    }
+
+    /**
+     * Запись адресной книги в новом формате.
+     * Пишутся снимки значений ({@link Person#keys}): запись идет в фоне, а сами контакты
+     * тем временем могут редактировать в потоке JavaFX.
+     */
+    public static void write(Path path, List<Person.Key> persons, Progress progress) throws IOException {
+        write(path, persons, progress, false);
+    }
+
+    /**
+     * Запись адресной книги в новом формате, при {@code compressed} — сжатым контейнером
+     */
+    public static void write(Path path, List<Person.Key> persons, Progress progress, boolean compressed) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ChannelWriter out = new ChannelWriter(channel);
+            if (compressed) {
+                writeBlocks(out, persons, progress);
+            } else {
+                write(out, persons, progress);
+            }
+            out.flush();
+        }
+    }
+
+    private static List<Person> read(ChannelReader in, Progress progress) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new StreamCorruptedException("Not an address book file");
+        }
+        short version = in.readShort();
+        if (version != VERSION && version != VERSION_TEXT_BIRTHDAY) {
+            throw new StreamCorruptedException("Unsupported address book version: " + version);
+        }
+        in.readShort(); // флаги, пока не используются
+        int count = in.readInt();
+        if (count < 0) {
+            throw new StreamCorruptedException("Invalid record count: " + count);
+        }
+
+        String[] dictionary = readDictionary(in);
+        List<Person> persons = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            persons.add(readPerson(in, version, dictionary));
+            if ((i + 1) % REPORT_INTERVAL == 0) {
+                progress.update(i + 1, in.position());
+            }
+        }
+        progress.update(count, in.position());
+        return persons;
+    }
+
+    private static String[] readDictionary(ChannelReader in) throws IOException {
+        String[] dictionary = new String[in.readVarInt()];
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = in.readString();
+        }
+        return dictionary;
+    }
+
+    private static Person readPerson(ChannelReader in, short version, String[] dictionary) throws IOException {
+        String firstName = in.readString();
+        String lastName = in.readString();
+        String street = in.readString();
+        String city = dictionary[in.readVarInt()];
+        String postalCode = dictionary[in.readVarInt()];
+        return version == VERSION_TEXT_BIRTHDAY
+                ? new Person(firstName, lastName, street, city, postalCode, in.readString())
+                : readPerson(in, firstName, lastName, street, city, postalCode);
+    }
+
+    private static void write(ChannelWriter out, List<Person.Key> persons, Progress progress) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeShort((short) 0);
+        out.writeInt(persons.size());
+        writeRecords(out, persons, progress);
+    }
+
+    // Словарь и записи в кодировке версии 2
+    private static void writeRecords(ChannelWriter out, List<Person.Key> persons, Progress progress) throws IOException {
+        // Первый проход: собираем словарь повторяющихся значений
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> entries = new ArrayList<>();
+        for (Person.Key person : persons) {
+            for (String value : new String[]{person.city(), person.postalCode()}) {
+                if (!dictionary.containsKey(value)) {
+                    dictionary.put(value, entries.size());
+                    entries.add(value);
+                }
+            }
+        }
+
+        out.writeVarInt(entries.size());
+        for (String entry : entries) {
+            out.writeString(entry);
+        }
+
+        // Второй проход: записи
+        long records = 0;
+        for (Person.Key person : persons) {
+            out.writeString(person.firstName());
+            out.writeString(person.lastName());
+            out.writeString(person.street());
+            out.writeVarInt(dictionary.get(person.city()));
+            out.writeVarInt(dictionary.get(person.postalCode()));
+            writeBirthday(out, person);
+            if (++records % REPORT_INTERVAL == 0) {
+                progress.update(records, out.position());
+            }
+        }
+        progress.update(records, out.position());
+    }
+
+    private static Person readPerson(ChannelReader in, String firstName, String lastName, String street,
+                                     String city, String postalCode) throws IOException {
+        int birthday = in.readVarInt();
+        if (birthday == 1) {
+            return new Person(firstName, lastName, street, city, postalCode, in.readString());
+        }
+        return new Person(firstName, lastName, street, city, postalCode, epochDay(birthday));
+    }
+
+    /**
+     * Номер дня из закодированного birthday версии 2 (кроме 1 — текста, который не является датой)
+     */
+    static int epochDay(int birthday) {
+        return birthday == 0 ? Person.NO_BIRTHDAY : (birthday - 2 >>> 1) ^ -(birthday - 2 & 1);
+    }
+
+    private static void writeBirthday(ChannelWriter out, Person.Key person) throws IOException {
+        int epochDay = person.birthdayEpochDay();
+        if (epochDay != Person.NO_BIRTHDAY) {
+            out.writeVarInt(((epochDay << 1) ^ (epochDay >> 31)) + 2);
+        } else if (person.birthday() == null || person.birthday().isBlank()) {
+            out.writeVarInt(0);
+        } else {
+            out.writeVarInt(1);
+            out.writeString(person.birthday());
+        }
+    }
+
+    /**
+     * Блок сжатого контейнера
+     *
+     * @param offset смещение заголовка блока в файле
+     */
+    private record Block(long offset, int compressedSize, int size, int records, int crc) {
+    }
+
+    /**
+     * Сжатый блок, готовый к записи
+     */
+    private record EncodedBlock(byte[] data, int size, int records, int crc) {
+    }
+
+    private static List<Person> readBlocks(FileChannel channel, Progress progress, Damage damage) throws IOException {
+        ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+        int count = header.getInt(8);
+        if (count < 0) {
+            throw new StreamCorruptedException("Invalid record count: " + count);
+        }
+        List<Block> blocks = blocks(channel);
+
+        // Блоки распаковываются параллельно, собираются и сообщают о прогрессе по порядку
+        List<CompletableFuture<Person[]>> decoded = new ArrayList<>(blocks.size());
+        for (Block block : blocks) {
+            decoded.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return readBlock(channel, block);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, ForkJoinPool.commonPool()));
+        }
+        List<Person> persons = new ArrayList<>(count);
+        long bytes = HEADER_SIZE;
+        try {
+            for (int i = 0; i < blocks.size(); i++) {
+                Block block = blocks.get(i);
+                try {
+                    persons.addAll(Arrays.asList(decoded.get(i).join()));
+                } catch (CompletionException e) {
+                    if (!(e.getCause() instanceof UncheckedIOException io)) {
+                        throw e;
+                    }
+                    if (damage == null) {
+                        throw io.getCause();
+                    }
+                    damage.skipped(block.records(), io.getCause());
+                }
+                bytes += BLOCK_HEADER_SIZE + block.compressedSize();
+                progress.update(persons.size(), bytes);
+            }
+        } finally {
+            // При ошибке или отмене оставшиеся блоки не нужны
+            for (CompletableFuture<Person[]> future : decoded) {
+                future.cancel(false);
+            }
+        }
+
+        // Записи, не попавшие ни в один найденный блок (например, после поврежденного заголовка)
+        long found = 0;
+        for (Block block : blocks) {
+            found += block.records();
+        }
+        if (found != count) {
+            StreamCorruptedException e = new StreamCorruptedException(
+                    String.format("Found %,d of %,d records", found, count));
+            if (damage == null || found > count) {
+                throw e;
+            }
+            damage.skipped((int) (count - found), e);
+        }
+        return persons;
+    }
+
+    // Блоки по индексу в конце файла, а если индекс поврежден — по заголовкам блоков
+    private static List<Block> blocks(FileChannel channel) throws IOException {
+        long length = channel.size();
+        if (length >= HEADER_SIZE + FOOTER_SIZE) {
+            ByteBuffer footer = readFully(channel, length - FOOTER_SIZE, FOOTER_SIZE);
+            long indexOffset = footer.getLong();
+            int count = footer.getInt();
+            int crc = footer.getInt();
+            if (footer.getInt() == FOOTER_MAGIC && count >= 0 && indexOffset >= HEADER_SIZE
+                    && indexOffset + (long) count * INDEX_ENTRY_SIZE == length - FOOTER_SIZE) {
+                ByteBuffer index = readFully(channel, indexOffset, count * INDEX_ENTRY_SIZE);
+                CRC32 checksum = new CRC32();
+                checksum.update(index.array());
+                if ((int) checksum.getValue() == crc) {
+                    List<Block> blocks = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        blocks.add(new Block(index.getLong(), index.getInt(), index.getInt(), index.getInt(), index.getInt()));
+                    }
+                    return blocks;
+                }
+            }
+        }
+        List<Block> blocks = new ArrayList<>();
+        long position = HEADER_SIZE;
+        while (position + BLOCK_HEADER_SIZE <= length) {
+            ByteBuffer header = readFully(channel, position, BLOCK_HEADER_SIZE);
+            if (header.getInt() != BLOCK_MAGIC) {
+                break;
+            }
+            Block block = new Block(position, header.getInt(), header.getInt(), header.getInt(), header.getInt());
+            if (block.compressedSize() < 0 || block.size() < 0 || block.records() < 0
+                    || position + BLOCK_HEADER_SIZE + block.compressedSize() > length) {
+                break;
+            }
+            blocks.add(block);
+            position += BLOCK_HEADER_SIZE + block.compressedSize();
+        }
+        return blocks;
+    }
+
+    private static Person[] readBlock(FileChannel channel, Block block) throws IOException {
+        if (block.compressedSize() < 0 || block.size() < 0 || block.records() < 0) {
+            throw new StreamCorruptedException("Invalid block at " + block.offset());
+        }
+        ByteBuffer header = readFully(channel, block.offset(), BLOCK_HEADER_SIZE);
+        if (header.getInt() != BLOCK_MAGIC || header.getInt() != block.compressedSize()
+                || header.getInt() != block.size() || header.getInt() != block.records() || header.getInt() != block.crc()) {
+            throw new StreamCorruptedException("Invalid block header at " + block.offset());
+        }
+        byte[] compressed = readFully(channel, block.offset() + BLOCK_HEADER_SIZE, block.compressedSize()).array();
+        byte[] data = new byte[block.size()];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int inflated = 0;
+            while (!inflater.finished()) {
+                int n = inflater.inflate(data, inflated, data.length - inflated);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary() || inflated == data.length)) {
+                    throw new StreamCorruptedException("Truncated block at " + block.offset());
+                }
+                inflated += n;
+            }
+            if (inflated != data.length) {
+                throw new StreamCorruptedException("Block size mismatch at " + block.offset());
+            }
+        } catch (DataFormatException e) {
+            throw new StreamCorruptedException("Damaged block at " + block.offset() + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(data);
+        if ((int) checksum.getValue() != block.crc()) {
+            throw new StreamCorruptedException("Checksum mismatch in block at " + block.offset());
+        }
+
+        ChannelReader in = new ChannelReader(ByteBuffer.wrap(data));
+        try {
+            String[] dictionary = readDictionary(in);
+            Person[] persons = new Person[block.records()];
+            for (int i = 0; i < persons.length; i++) {
+                persons[i] = readPerson(in, VERSION, dictionary);
+            }
+            return persons;
+        } catch (RuntimeException e) {
+            // Неверный индекс словаря и т.п. при совпавшей контрольной сумме — ошибка записи
+            throw new StreamCorruptedException("Invalid records in block at " + block.offset() + ": " + e);
+        }
+    }
+
+    private static void writeBlocks(ChannelWriter out, List<Person.Key> persons, Progress progress) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION_BLOCKS);
+        out.writeShort((short) 0);
+        out.writeInt(persons.size());
+
+        // Блоки сжимаются параллельно и пишутся по порядку по мере готовности
+        List<CompletableFuture<EncodedBlock>> encoded = new ArrayList<>();
+        for (int from = 0; from < persons.size(); from += BLOCK_RECORDS) {
+            List<Person.Key> part = persons.subList(from, Math.min(from + BLOCK_RECORDS, persons.size()));
+            encoded.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return encodeBlock(part);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, ForkJoinPool.commonPool()));
+        }
+        ByteBuffer index = ByteBuffer.allocate(encoded.size() * INDEX_ENTRY_SIZE);
+        long records = 0;
+        try {
+            for (CompletableFuture<EncodedBlock> future : encoded) {
+                EncodedBlock block;
+                try {
+                    block = future.join();
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof UncheckedIOException io) {
+                        throw io.getCause();
+                    }
+                    throw e;
+                }
+                index.putLong(out.position()).putInt(block.data().length).putInt(block.size())
+                        .putInt(block.records()).putInt(block.crc());
+                out.writeInt(BLOCK_MAGIC);
+                out.writeInt(block.data().length);
+                out.writeInt(block.size());
+                out.writeInt(block.records());
+                out.writeInt(block.crc());
+                out.writeBytes(block.data());
+                records += block.records();
+                progress.update(records, out.position());
+            }
+        } finally {
+            for (CompletableFuture<EncodedBlock> future : encoded) {
+                future.cancel(false);
+            }
+        }
+
+        CRC32 checksum = new CRC32();
+        checksum.update(index.array());
+        long indexOffset = out.position();
+        out.writeBytes(index.array());
+        out.writeLong(indexOffset);
+        out.writeInt(encoded.size());
+        out.writeInt((int) checksum.getValue());
+        out.writeInt(FOOTER_MAGIC);
+        progress.update(records, out.position());
+    }
+
+    private static EncodedBlock encodeBlock(List<Person.Key> persons) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ChannelWriter out = new ChannelWriter(Channels.newChannel(bytes));
+        writeRecords(out, persons, Progress.NONE);
+        out.flush();
+        byte[] data = bytes.toByteArray();
+        CRC32 checksum = new CRC32();
+        checksum.update(data);
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 4 + 64);
+            byte[] chunk = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                compressed.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return new EncodedBlock(compressed.toByteArray(), data.length, persons.size(), (int) checksum.getValue());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Чтение файла, записанного сериализацией Java
+     */
+    private static List<Person> readLegacy(FileChannel channel, Progress progress) throws IOException {
+        channel.position(0);
+        try (ObjectInputStream ois = new LegacyInputStream(
+                new BufferedInputStream(Channels.newInputStream(channel)), channel, progress)) {
+            return ((AddressApp.SerializablePersonList) ois.readObject()).getPersons();
+        } catch (ClassNotFoundException e) {
+            throw new InvalidClassException(e.getMessage());
+        }
+    }
+
+    /**
+     * Поток объектов, считающий прочитанные контакты
+     */
+    private static final class LegacyInputStream extends ObjectInputStream {
+        private final FileChannel channel;
+        private final Progress progress;
+        private long records;
+
+        LegacyInputStream(InputStream in, FileChannel channel, Progress progress) throws IOException {
+            super(in);
+            this.channel = channel;
+            this.progress = progress;
+            enableResolveObject(true);
+        }
+
+        @Override
+        protected Object resolveObject(Object obj) throws IOException {
+            if (obj instanceof Person && ++records % REPORT_INTERVAL == 0) {
+                progress.update(records, channel.position());
+            }
+            return obj;
+        }
+    }
+
+    /**
+     * Буферизованное чтение примитивов из канала
+     */
+    static final class ChannelReader {
+        private final ReadableByteChannel channel;
+        private final ByteBuffer buffer;
+        private long consumed;
+
+        ChannelReader(ReadableByteChannel channel) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            buffer.flip();
+        }
+
+        /**
+         * Чтение из данных в памяти (распакованный блок)
+         */
+        ChannelReader(ByteBuffer data) {
+            this.channel = null;
+            this.buffer = data;
+        }
+
+        long position() {
+            return consumed + buffer.position();
+        }
+
+        private void require(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            if (channel == null) {
+                throw new EOFException();
+            }
+            consumed += buffer.position();
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException();
+                }
+            }
+            buffer.flip();
+        }
+
+        int readInt() throws IOException {
+            require(Integer.BYTES);
+            return buffer.getInt();
+        }
+
+        short readShort() throws IOException {
+            require(Short.BYTES);
+            return buffer.getShort();
+        }
+
+        int readVarInt() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                require(1);
+                byte b = buffer.get();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new StreamCorruptedException("Malformed varint");
+        }
+
+        String readString() throws IOException {
+            int length = readVarInt() - 1;
+            if (length < 0) {
+                return null;
+            }
+            if (length > buffer.capacity() && channel != null) {
+                // Длинная строка не помещается в буфер — читаем отдельно
+                byte[] bytes = new byte[length];
+                int copied = buffer.remaining();
+                buffer.get(bytes, 0, copied);
+                ByteBuffer rest = ByteBuffer.wrap(bytes, copied, length - copied);
+                while (rest.hasRemaining()) {
+                    if (channel.read(rest) < 0) {
+                        throw new EOFException();
+                    }
+                }
+                consumed += length - copied;
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+            require(length);
+            String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+    }
+
+    /**
+     * Буферизованная запись примитивов в канал
+     */
+    static final class ChannelWriter {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private long written;
+
+        ChannelWriter(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        long position() {
+            return written + buffer.position();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        void writeInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void writeShort(short value) throws IOException {
+            ensure(Short.BYTES);
+            buffer.putShort(value);
+        }
+
+        void writeLong(long value) throws IOException {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        void writeBytes(byte[] bytes) throws IOException {
+            if (bytes.length > buffer.remaining()) {
+                flush();
+            }
+            if (bytes.length > buffer.capacity()) {
+                ByteBuffer large = ByteBuffer.wrap(bytes);
+                while (large.hasRemaining()) {
+                    written += channel.write(large);
+                }
+                return;
+            }
+            buffer.put(bytes);
+        }
+
+        void writeVarInt(int value) throws IOException {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        void writeString(String value) throws IOException {
+            if (value == null) {
+                writeVarInt(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length + 1);
+            if (bytes.length > buffer.capacity()) {
+                flush();
+                ByteBuffer large = ByteBuffer.wrap(bytes);
+                while (large.hasRemaining()) {
+                    written += channel.write(large);
+                }
+                return;
+            }
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+}
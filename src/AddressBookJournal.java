@@ -0,0 +1,435 @@
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал изменений адресной книги для инкрементального сохранения.
+ * <p>
+ * Рядом со снимком (файлом .addr) хранится файл .addr.journal, в который дописываются
+ * добавления, удаления и изменения контактов. Сохранение дописывает только новые записи,
+ * открытие применяет журнал к снимку, а фоновое уплотнение переписывает снимок
+ * и оставляет в журнале только записи, сделанные после начала уплотнения.
+ * <p>
+ * Контакты в журнале определяются значениями шести полей ({@link Person.Key}).
+ * Каждая запись снабжена длиной и CRC32, поэтому недописанная при сбое последняя
+ * запись просто отбрасывается. В заголовке журнала хранятся размер и время изменения
+ * снимка, к которому он относится; журнал от другого снимка не применяется.
+ */
+public class AddressBookJournal implements ListChangeListener<Person> {
+    private static final Logger LOGGER = Logger.getLogger(AddressBookJournal.class.getName());
+
+    private static final int MAGIC = 0x4144444A; // "ADDJ"
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 2 + 8 + 8;
+
+    // Журнал уплотняется, когда становится больше этой доли снимка (но не меньше минимума)
+    private static final long MIN_COMPACTION_SIZE = 64 * 1024;
+    private static final int COMPACTION_RATIO = 4;
+
+    static final byte ADD = 1;
+    static final byte DELETE = 2;
+    static final byte EDIT = 3;
+
+    /**
+     * Запись журнала; для добавления и удаления before == after
+     */
+    public record Entry(byte type, Person.Key before, Person.Key after) {
+    }
+
+    // Изменения с момента последнего сохранения
+    private final List<Entry> pending = new ArrayList<>();
+
+    // Файл, которому соответствуют данные в памяти без учета pending;
+    // null, если дописать журнал нельзя и нужен полный снимок
+    private File base = null;
+
+    public AddressBookJournal(ObservableList<Person> persons) {
+        persons.addListener(this);
+    }
+
+    public static Path journalPath(Path snapshot) {
+        return snapshot.resolveSibling(snapshot.getFileName() + ".journal");
+    }
+
+    /**
+     * Данные в памяти совпадают с содержимым файла (после открытия или полного сохранения)
+     */
+    public void markSaved(File file) {
+        pending.clear();
+        base = file;
+    }
+
+    /**
+     * Изменения больше нельзя дописать в журнал, нужен полный снимок
+     */
+    public void invalidate() {
+        pending.clear();
+        base = null;
+    }
+
+    /**
+     * Можно ли сохранить изменения дописыванием в журнал этого файла
+     */
+    public boolean canAppend(File file) {
+        return base != null && base.equals(file);
+    }
+
+    public boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Забрать накопленные изменения для записи
+     */
+    public List<Entry> takePending() {
+        List<Entry> entries = List.copyOf(pending);
+        pending.clear();
+        return entries;
+    }
+
+    /**
+     * Накопленные изменения без изъятия
+     */
+    public List<Entry> pending() {
+        return List.copyOf(pending);
+    }
+
+    /**
+     * Возврат несохраненных изменений: запись не состоялась или файл перечитан.
+     * Записи ставятся перед изменениями, накопленными с тех пор.
+     *
+     * @param file файл, которому соответствуют данные в памяти без учета entries
+     */
+    public void restore(File file, List<Entry> entries) {
+        if (!file.equals(base)) {
+            pending.clear();
+            base = file;
+        }
+        pending.addAll(0, entries);
+    }
+
+    /**
+     * Запись изменения полей контакта
+     *
+     * @param before значения полей до изменения
+     */
+    public void updated(Person person, Person.Key before) {
+        if (base != null) {
+            pending.add(new Entry(EDIT, before, person.key()));
+        }
+    }
+
+    @Override
+    public void onChanged(Change<? extends Person> change) {
+        while (change.next()) {
+            if (base == null || change.wasPermutated() || change.wasUpdated()) {
+                continue;
+            }
+            if (change.getRemovedSize() > 0 && change.getList().size() == change.getAddedSize()) {
+                // Замена всего списка — журнал от прежних данных больше не подходит
+                invalidate();
+                continue;
+            }
+            for (Person person : change.getRemoved()) {
+                Person.Key key = person.key();
+                pending.add(new Entry(DELETE, key, key));
+            }
+            for (Person person : change.getAddedSubList()) {
+                Person.Key key = person.key();
+                pending.add(new Entry(ADD, key, key));
+            }
+        }
+    }
+
+    /**
+     * Дописывание записей в журнал снимка.
+     *
+     * @return размер журнала после записи
+     */
+    public static long append(Path snapshot, List<Entry> entries) throws IOException {
+        Path journal = journalPath(snapshot);
+        synchronized (AddressBookJournal.class) {
+            try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.READ)) {
+                if (channel.size() < HEADER_SIZE || !matches(channel, snapshot)) {
+                    // Новый журнал (или журнал от другого снимка) начинаем заново
+                    channel.truncate(0);
+                    channel.write(header(snapshot), 0);
+                }
+                channel.position(channel.size());
+                ByteBuffer buffer = encode(entries);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+                return channel.size();
+            }
+        }
+    }
+
+    /**
+     * Удаление журнала (после записи полного снимка)
+     */
+    public static void delete(Path snapshot) throws IOException {
+        synchronized (AddressBookJournal.class) {
+            Files.deleteIfExists(journalPath(snapshot));
+        }
+    }
+
+    /**
+     * Нужно ли уплотнить журнал такого размера
+     */
+    public static boolean needsCompaction(Path snapshot, long journalSize) throws IOException {
+        return journalSize > Math.max(MIN_COMPACTION_SIZE, Files.size(snapshot) / COMPACTION_RATIO);
+    }
+
+    /**
+     * Применение журнала к загруженному снимку.
+     *
+     * @return количество примененных записей
+     */
+    public static int replay(Path snapshot, List<Person> persons) throws IOException {
+        Path journal = journalPath(snapshot);
+        List<Entry> entries;
+        synchronized (AddressBookJournal.class) {
+            if (!Files.exists(journal)) {
+                return 0;
+            }
+            try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.READ)) {
+                if (channel.size() < HEADER_SIZE) {
+                    return 0;
+                }
+                if (!matches(channel, snapshot)) {
+                    LOGGER.warning("Ignoring journal that belongs to another snapshot: " + journal);
+                    return 0;
+                }
+                entries = decode(channel, HEADER_SIZE);
+            }
+        }
+        if (entries.isEmpty()) {
+            return 0;
+        }
+
+        // Контакты по значениям полей; при повторах берем любой из одинаковых
+        Map<Person.Key, Deque<Person>> byKey = new HashMap<>();
+        for (Person person : persons) {
+            byKey.computeIfAbsent(person.key(), k -> new ArrayDeque<>(1)).add(person);
+        }
+        Set<Person> deleted = Collections.newSetFromMap(new IdentityHashMap<>());
+        int applied = 0;
+        for (Entry entry : entries) {
+            if (entry.type() == ADD) {
+                Person.Key key = entry.after();
+                Person person = new Person(key.firstName(), key.lastName(), key.street(),
+                        key.city(), key.postalCode(), key.birthday());
+                persons.add(person);
+                byKey.computeIfAbsent(key, k -> new ArrayDeque<>(1)).add(person);
+                applied++;
+                continue;
+            }
+            Deque<Person> candidates = byKey.get(entry.before());
+            Person person = candidates == null ? null : candidates.poll();
+            if (person == null) {
+                LOGGER.warning("Journal entry does not match any contact: " + entry);
+                continue;
+            }
+            if (entry.type() == DELETE) {
+                deleted.add(person);
+            } else {
+                Person.Key key = entry.after();
+                person.setFirstName(key.firstName());
+                person.setLastName(key.lastName());
+                person.setStreet(key.street());
+                person.setCity(key.city());
+                person.setPostalCode(key.postalCode());
+                person.setBirthday(key.birthday());
+                byKey.computeIfAbsent(key, k -> new ArrayDeque<>(1)).add(person);
+            }
+            applied++;
+        }
+        if (!deleted.isEmpty()) {
+            persons.removeIf(deleted::contains);
+        }
+        return applied;
+    }
+
+    /**
+     * Уплотнение: запись нового снимка и перенос в новый журнал только тех записей,
+     * которые были дописаны после того, как был сделан снимок persons.
+     *
+     * @param persons     значения контактов книги, соответствующие снимку и журналу длиной
+     *                    journalSize; снимаются в потоке JavaFX ({@link Person#keys})
+     * @param journalSize размер журнала в момент, когда был сделан снимок persons
+     * @param watcher     наблюдение за файлом или null; если файл изменили извне, уплотнение
+     *                    отменяется с {@link FileWatcher.ChangedOnDiskException}
+     */
+    public static void compact(Path snapshot, List<Person.Key> persons, long journalSize, FileWatcher watcher)
+            throws IOException {
+        Path target = snapshot.toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        Path journal = journalPath(target);
+        Path tempJournal = journal.resolveSibling(journal.getFileName() + ".tmp");
+        try {
+            // Снимок сохраняет свой формат: сжатый остается сжатым
+            boolean compressed = AddressBookFormat.isCompressed(target);
+            AddressBookFormat.write(temp, persons, AddressBookFormat.Progress.NONE, compressed);
+            AddressBookLock lock = AddressBookLock.exclusive(target);
+            try {
+                if (watcher != null) {
+                    watcher.checkUnchanged();
+                }
+                synchronized (AddressBookJournal.class) {
+                    // Хвост журнала, дописанный во время уплотнения, переносим в новый журнал
+                    try (FileChannel source = FileChannel.open(journal, StandardOpenOption.READ);
+                         FileChannel copy = FileChannel.open(tempJournal, StandardOpenOption.CREATE,
+                                 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                        copy.write(header(temp));
+                        long position = journalSize;
+                        while (position < source.size()) {
+                            position += source.transferTo(position, source.size() - position, copy);
+                        }
+                        copy.force(false);
+                    }
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    Files.move(tempJournal, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+                if (watcher != null) {
+                    watcher.markSynced(SessionCache.state(target));
+                }
+            } finally {
+                lock.close();
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+            Files.deleteIfExists(tempJournal);
+        }
+    }
+
+    /**
+     * Запуск уплотнения с записью ошибок в журнал приложения
+     */
+    public static Runnable compaction(Path snapshot, List<Person.Key> persons, long journalSize,
+                                      FileWatcher watcher) {
+        return () -> {
+            try {
+                compact(snapshot, persons, journalSize, watcher);
+                LOGGER.info("Compacted journal of " + snapshot);
+            } catch (FileWatcher.ChangedOnDiskException e) {
+                // Файл перечитается по событию наблюдения, уплотнять будем уже новый
+                LOGGER.info("Skipped journal compaction: " + e.getMessage());
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not compact journal of " + snapshot, e);
+            }
+        };
+    }
+
+    private static ByteBuffer header(Path snapshot) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(snapshot, BasicFileAttributes.class);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putShort(VERSION);
+        header.putLong(attributes.size());
+        header.putLong(attributes.lastModifiedTime().toMillis());
+        return header.flip();
+    }
+
+    private static boolean matches(FileChannel channel, Path snapshot) throws IOException {
+        ByteBuffer actual = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(actual, 0);
+        return actual.flip().equals(header(snapshot));
+    }
+
+    private static ByteBuffer encode(List<Entry> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(payload);
+        CRC32 crc = new CRC32();
+        for (Entry entry : entries) {
+            payload.reset();
+            record.writeByte(entry.type());
+            writeKey(record, entry.before());
+            if (entry.type() == EDIT) {
+                writeKey(record, entry.after());
+            }
+            crc.reset();
+            crc.update(payload.toByteArray());
+            out.writeInt(payload.size());
+            out.writeInt((int) crc.getValue());
+            payload.writeTo(out);
+        }
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    private static List<Entry> decode(FileChannel channel, long offset) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        channel.position(offset);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        CRC32 crc = new CRC32();
+        while (true) {
+            byte[] payload;
+            int checksum;
+            try {
+                int length = in.readInt();
+                checksum = in.readInt();
+                if (length <= 0 || length > channel.size()) {
+                    throw new EOFException();
+                }
+                payload = new byte[length];
+                in.readFully(payload);
+            } catch (EOFException e) {
+                // Конец журнала или недописанная последняя запись
+                return entries;
+            }
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) {
+                LOGGER.warning("Journal entry is corrupted, ignoring the rest of the journal");
+                return entries;
+            }
+            DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+            byte type = record.readByte();
+            Person.Key before = readKey(record);
+            Person.Key after = type == EDIT ? readKey(record) : before;
+            entries.add(new Entry(type, before, after));
+        }
+    }
+
+    private static void writeKey(DataOutputStream out, Person.Key key) throws IOException {
+        for (String value : new String[]{key.firstName(), key.lastName(), key.street(),
+                key.city(), key.postalCode(), key.birthday()}) {
+            if (value == null) {
+                out.writeInt(-1);
+            } else {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+    }
+
+    private static Person.Key readKey(DataInputStream in) throws IOException {
+        String[] values = new String[6];
+        for (int i = 0; i < values.length; i++) {
+            int length = in.readInt();
+            if (length >= 0) {
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                values[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+        // Журналы до перехода на даты могли хранить дату в другом виде
+        return new Person.Key(values[0], values[1], values[2], values[3], values[4],
+                Person.normalizeBirthday(values[5]));
+    }
+}
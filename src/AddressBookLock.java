@@ -0,0 +1,147 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Блокировка адресной книги между процессами на время чтения или записи.
+ * <p>
+ * Сам файл .addr при сохранении заменяется новым, поэтому блокируется отдельный пустой
+ * файл .addr.lock рядом с ним. Запись (замена снимка, дописывание и уплотнение журнала)
+ * берет исключительную блокировку, чтение снимка вместе с журналом — разделяемую, так что
+ * другой экземпляр приложения не увидит снимок без журнала или журнал от чужого снимка.
+ * Блокировка рекомендательная: программы, которые о ней не знают, она не остановит.
+ * <p>
+ * Блокировку файла JVM дает только одну на файл: вторая, даже разделяемая, заканчивается
+ * {@link java.nio.channels.OverlappingFileLockException}. Поэтому перед ней потоки одной JVM
+ * согласуются через {@link ReentrantReadWriteLock} для этого файла, а разделяемую блокировку
+ * файла берет первый читатель и снимает последний. Снимать блокировку нужно в том же потоке,
+ * в котором она взята.
+ */
+public final class AddressBookLock implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(AddressBookLock.class.getName());
+
+    // Блокировки внутри JVM по пути файла блокировки; файлов книг немного, записи не удаляются
+    private static final ConcurrentHashMap<Path, State> LOCKS = new ConcurrentHashMap<>();
+
+    /**
+     * Состояние блокировки одного файла внутри JVM
+     */
+    private static final class State {
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        // Разделяемая блокировка файла и число читателей, которые ее используют;
+        // меняются под монитором этого объекта
+        FileChannel channel;
+        int readers;
+    }
+
+    private final State state;
+    private final Lock lock;
+    // Блокировка файла для записи; у читателей null — их общая блокировка хранится в state
+    private final FileChannel channel;
+
+    private AddressBookLock(State state, Lock lock, FileChannel channel) {
+        this.state = state;
+        this.lock = lock;
+        this.channel = channel;
+    }
+
+    public static Path lockPath(Path file) {
+        Path absolute = file.toAbsolutePath().normalize();
+        return absolute.resolveSibling(absolute.getFileName() + ".lock");
+    }
+
+    /**
+     * Исключительная блокировка для записи; ждет, пока другие потоки и процессы закончат
+     */
+    public static AddressBookLock exclusive(Path file) throws IOException {
+        Path path = lockPath(file);
+        State state = LOCKS.computeIfAbsent(path, p -> new State());
+        Lock lock = state.lock.writeLock();
+        lock.lock();
+        try {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.READ);
+            lock(channel, false);
+            return new AddressBookLock(state, lock, channel);
+        } catch (IOException | RuntimeException e) {
+            lock.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Разделяемая блокировка для чтения. Если файл блокировки создать нельзя
+     * (например, книга лежит в каталоге только для чтения), файл читается без блокировки
+     * между процессами.
+     */
+    public static AddressBookLock shared(Path file) throws IOException {
+        Path path = lockPath(file);
+        State state = LOCKS.computeIfAbsent(path, p -> new State());
+        Lock lock = state.lock.readLock();
+        lock.lock();
+        try {
+            synchronized (state) {
+                if (state.readers == 0) {
+                    state.channel = openShared(file, path);
+                }
+                state.readers++;
+            }
+            return new AddressBookLock(state, lock, null);
+        } catch (IOException | RuntimeException e) {
+            lock.unlock();
+            throw e;
+        }
+    }
+
+    // Разделяемая блокировка файла для первого читателя; null, если файл блокировки открыть нельзя
+    private static FileChannel openShared(Path file, Path path) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.READ);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Reading " + file + " without a lock", e);
+            return null;
+        }
+        lock(channel, true);
+        return channel;
+    }
+
+    private static void lock(FileChannel channel, boolean shared) throws IOException {
+        try {
+            channel.lock(0, Long.MAX_VALUE, shared);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            // Закрытие канала снимает и блокировку файла
+            if (channel != null) {
+                channel.close();
+            } else {
+                // Закрываем под монитором: иначе следующий читатель возьмет блокировку файла
+                // раньше, чем снимется эта, и получит OverlappingFileLockException
+                synchronized (state) {
+                    if (--state.readers == 0 && state.channel != null) {
+                        FileChannel last = state.channel;
+                        state.channel = null;
+                        last.close();
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+import javafx.collections.ObservableList;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Хранилище контактов, которое показывает таблица.
+ * <p>
+ * {@link InMemoryRepository} — весь список в памяти, с поиском, сортировкой и редактированием.
+ * {@link PagedFileRepository} — файл .addr, отображенный в память: контакты читаются
+ * страницами по мере прокрутки, поэтому размер кучи не зависит от размера книги.
+ */
+public interface AddressBookRepository extends Closeable {
+    /**
+     * Список для таблицы; таблица запрашивает только видимые строки
+     */
+    ObservableList<Person> view();
+
+    /**
+     * Число контактов в хранилище
+     */
+    int size();
+
+    /**
+     * Контакт по номеру в порядке хранения
+     */
+    Person get(int index);
+
+    /**
+     * Можно ли изменять контакты, искать и сортировать
+     */
+    boolean isEditable();
+
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,226 @@
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Индекс контактов по дню рождения (месяц и число без учета года).
+ * Коды дней хранятся отсортированным массивом int, контакты — параллельным массивом,
+ * поэтому запросы "дни рождения в ближайшие N дней" и "родившиеся в месяце" —
+ * двоичный поиск и проход только по найденному диапазону.
+ * Добавления и удаления отслеживаются через слушатель списка,
+ * о редактировании контакта сообщается вызовом {@link #updated}.
+ * Контакты без даты рождения в индекс не попадают.
+ */
+public class BirthdayIndex implements ListChangeListener<Person> {
+    // Начиная с этого размера изменения применяются перестроением индекса, а не по одному
+    private static final int BULK_CHANGE_THRESHOLD = 1_000;
+
+    // Код дня: месяц * 32 + число; 29 февраля попадает между 28 февраля и 1 марта
+    private int[] days = new int[16];
+    private Person[] persons = new Person[16];
+    private int size;
+
+    private final ObservableList<Person> source;
+
+    public BirthdayIndex(ObservableList<Person> persons) {
+        this.source = persons;
+        rebuild(persons);
+        persons.addListener(this);
+    }
+
+    /**
+     * Количество контактов с датой рождения
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Контакты, у которых день рождения в ближайшие {@code count} дней начиная с {@code from},
+     * в порядке наступления дня рождения
+     */
+    public List<Person> upcoming(LocalDate from, int count) {
+        List<Person> result = new ArrayList<>();
+        if (count <= 0) {
+            return result;
+        }
+        int first = code(from);
+        if (count >= 366) {
+            collect(first, Integer.MAX_VALUE, result);
+            collect(Integer.MIN_VALUE, first - 1, result);
+            return result;
+        }
+        LocalDate to = from.plusDays(count - 1);
+        int last = code(to);
+        if (to.getYear() == from.getYear()) {
+            collect(first, last, result);
+        } else {
+            collect(first, Integer.MAX_VALUE, result);
+            collect(Integer.MIN_VALUE, last, result);
+        }
+        return result;
+    }
+
+    /**
+     * Контакты, родившиеся в месяце {@code month}, по числу месяца
+     */
+    public List<Person> bornIn(Month month) {
+        List<Person> result = new ArrayList<>();
+        collect(month.getValue() * 32 + 1, month.getValue() * 32 + 31, result);
+        return result;
+    }
+
+    /**
+     * Переиндексация контакта после изменения его полей
+     *
+     * @param before значения полей до изменения
+     */
+    public void updated(Person person, Person.Key before) {
+        if (Objects.equals(before.birthday(), person.getBirthday())) {
+            return;
+        }
+        LocalDate birthday = parse(before.birthday());
+        if (birthday != null) {
+            remove(person, code(birthday));
+        }
+        add(person);
+    }
+
+    /**
+     * Переиндексация группы контактов после изменения их полей
+     *
+     * @param before значения полей до изменения, в том же порядке
+     */
+    public void updated(List<Person> persons, List<Person.Key> before) {
+        int changed = 0;
+        for (int i = 0; i < persons.size(); i++) {
+            if (!Objects.equals(before.get(i).birthday(), persons.get(i).getBirthday())) {
+                changed++;
+            }
+        }
+        if (changed > BULK_CHANGE_THRESHOLD) {
+            rebuild(source);
+            return;
+        }
+        for (int i = 0; i < persons.size(); i++) {
+            updated(persons.get(i), before.get(i));
+        }
+    }
+
+    @Override
+    public void onChanged(Change<? extends Person> change) {
+        // Групповое удаление приходит множеством мелких участков — считаем их вместе
+        int changed = 0;
+        while (change.next()) {
+            changed += change.getRemovedSize() + change.getAddedSize();
+        }
+        if (changed > BULK_CHANGE_THRESHOLD) {
+            rebuild(change.getList());
+            return;
+        }
+        change.reset();
+        while (change.next()) {
+            if (change.wasPermutated() || change.wasUpdated()) {
+                continue;
+            }
+            for (Person person : change.getRemoved()) {
+                LocalDate birthday = person.getBirthdayDate();
+                if (birthday != null) {
+                    remove(person, code(birthday));
+                }
+            }
+            for (Person person : change.getAddedSubList()) {
+                add(person);
+            }
+        }
+    }
+
+    private void rebuild(List<? extends Person> source) {
+        Person[] all = source.toArray(new Person[0]);
+        // Код дня в старших разрядах, номер контакта в младших — одна сортировка примитивов
+        long[] entries = new long[all.length];
+        int count = 0;
+        for (int i = 0; i < all.length; i++) {
+            int epochDay = all[i].getBirthdayEpochDay();
+            if (epochDay != Person.NO_BIRTHDAY) {
+                entries[count++] = (long) code(LocalDate.ofEpochDay(epochDay)) << 32 | i;
+            }
+        }
+        Arrays.sort(entries, 0, count);
+        days = new int[Math.max(16, count)];
+        persons = new Person[days.length];
+        for (int i = 0; i < count; i++) {
+            days[i] = (int) (entries[i] >>> 32);
+            persons[i] = all[(int) entries[i]];
+        }
+        size = count;
+    }
+
+    private void add(Person person) {
+        LocalDate birthday = person.getBirthdayDate();
+        if (birthday == null) {
+            return;
+        }
+        int code = code(birthday);
+        if (size == days.length) {
+            days = Arrays.copyOf(days, size * 2);
+            persons = Arrays.copyOf(persons, size * 2);
+        }
+        // После всех контактов с тем же днем, чтобы сохранялся порядок добавления
+        int at = lowerBound(code + 1);
+        System.arraycopy(days, at, days, at + 1, size - at);
+        System.arraycopy(persons, at, persons, at + 1, size - at);
+        days[at] = code;
+        persons[at] = person;
+        size++;
+    }
+
+    private void remove(Person person, int code) {
+        for (int i = lowerBound(code); i < size && days[i] == code; i++) {
+            if (persons[i] == person) {
+                System.arraycopy(days, i + 1, days, i, size - i - 1);
+                System.arraycopy(persons, i + 1, persons, i, size - i - 1);
+                persons[--size] = null;
+                return;
+            }
+        }
+    }
+
+    private void collect(int fromCode, int toCode, List<Person> result) {
+        for (int i = lowerBound(fromCode); i < size && days[i] <= toCode; i++) {
+            result.add(persons[i]);
+        }
+    }
+
+    // Первая позиция с кодом не меньше заданного
+    private int lowerBound(int code) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (days[mid] < code) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int code(LocalDate date) {
+        return date.getMonthValue() * 32 + date.getDayOfMonth();
+    }
+
+    private static LocalDate parse(String birthday) {
+        try {
+            return Person.parseBirthday(birthday);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+/**
+ * Отслеживание несохраненных изменений адресной книги.
+ * Каждое изменение списка (кроме перестановок) и каждое редактирование контакта,
+ * о котором сообщается вызовом {@link #updated}, увеличивает номер ревизии.
+ * Книга считается измененной, пока номер ревизии отличается от сохраненного.
+ * <p>
+ * Сохранение запоминает ревизию в момент снимка данных, поэтому изменения,
+ * сделанные во время фоновой записи, не теряются.
+ */
+public class ChangeTracker implements ListChangeListener<Person> {
+    private final ReadOnlyBooleanWrapper dirty = new ReadOnlyBooleanWrapper(this, "dirty");
+    private final Runnable onChange;
+    private long revision;
+    private long savedRevision;
+
+    /**
+     * @param onChange вызывается после каждого изменения данных
+     */
+    public ChangeTracker(ObservableList<Person> persons, Runnable onChange) {
+        this.onChange = onChange;
+        persons.addListener(this);
+    }
+
+    public ReadOnlyBooleanProperty dirtyProperty() {
+        return dirty.getReadOnlyProperty();
+    }
+
+    public boolean isDirty() {
+        return dirty.get();
+    }
+
+    /**
+     * Текущая ревизия; запоминается при снимке данных для сохранения
+     */
+    public long revision() {
+        return revision;
+    }
+
+    /**
+     * Данные ревизии revision записаны в файл
+     */
+    public void markSaved(long revision) {
+        // Более старое сохранение не должно отменять более новое
+        savedRevision = Math.max(savedRevision, revision);
+        dirty.set(this.revision != savedRevision);
+    }
+
+    /**
+     * Текущее состояние совпадает с файлом (после загрузки или создания новой книги)
+     */
+    public void markClean() {
+        markSaved(revision);
+    }
+
+    /**
+     * Сообщение об изменении полей контакта
+     */
+    public void updated() {
+        revision++;
+        dirty.set(true);
+        onChange.run();
+    }
+
+    @Override
+    public void onChanged(Change<? extends Person> change) {
+        while (change.next()) {
+            if (!change.wasPermutated()) {
+                updated();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,406 @@
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Нагрузочный тест локального HTTP-интерфейса ({@link ContactServer}):
+ * <pre>
+ * java -cp addressapp.jar:javafx-base.jar ContactApiLoadTest [параметры]
+ *
+ *   --url URL       адрес списка запущенного приложения (http://127.0.0.1:8765/contacts);
+ *                   без него сервер запускается в этом же процессе
+ *   --contacts N    число созданных контактов для своего сервера (по умолчанию 100000)
+ *   --file F        книга .addr для своего сервера вместо созданных контактов
+ *   -c N            число клиентов, каждый шлет следующий запрос после ответа на предыдущий (64)
+ *   --seconds S     длительность замера (10) после прогрева (--warmup, 2)
+ *   --writes P      доля изменений (PUT) в процентах (0)
+ * </pre>
+ * Чтения распределены так: половина — страницы списка со случайного места, треть —
+ * отдельные контакты, остальное — поиск по началу имени. Для каждого вида запросов
+ * выводятся запросы в секунду и перцентили задержки; ошибками считаются коды 5xx
+ * и ошибки соединения. Свой сервер держит модель в отдельном потоке, как приложение —
+ * в потоке JavaFX, так что замер включает передачу каждого запроса в поток модели.
+ */
+public final class ContactApiLoadTest {
+    private static final Pattern TOTAL = Pattern.compile("\"total\": (\\d+)");
+    private static final Pattern ITEM = Pattern.compile("\"id\": (\\d+), \"firstName\": \"([^\"\\\\]*)\"");
+
+    private enum Kind { LIST, GET, SEARCH, UPDATE }
+
+    /**
+     * Замеры одного клиента по видам запросов
+     */
+    private static final class Samples {
+        private final long[][] nanos = new long[Kind.values().length][1024];
+        private final int[] counts = new int[Kind.values().length];
+        private final int[] errors = new int[Kind.values().length];
+
+        void add(Kind kind, long duration, boolean error) {
+            int k = kind.ordinal();
+            if (counts[k] == nanos[k].length) {
+                nanos[k] = Arrays.copyOf(nanos[k], counts[k] * 2);
+            }
+            nanos[k][counts[k]++] = duration;
+            if (error) {
+                errors[k]++;
+            }
+        }
+    }
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final URI contacts;
+    private final int total;
+    private final int[] ids;
+    private final String[] names;
+    private final int writePercent;
+
+    private ContactApiLoadTest(URI contacts, int total, int[] ids, String[] names, int writePercent) {
+        this.contacts = contacts;
+        this.total = total;
+        this.ids = ids;
+        this.names = names;
+        this.writePercent = writePercent;
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * Выполнение теста; возвращает код возврата
+     */
+    public static int run(String[] args, PrintStream out, PrintStream err) throws Exception {
+        URI url = null;
+        Path file = null;
+        int contacts = 100_000;
+        int clients = 64;
+        int seconds = 10;
+        int warmup = 2;
+        int writes = 0;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--url" -> url = URI.create(value(args, ++i));
+                    case "--file" -> file = Path.of(value(args, ++i));
+                    case "--contacts" -> contacts = Integer.parseInt(value(args, ++i));
+                    case "-c" -> clients = Integer.parseInt(value(args, ++i));
+                    case "--seconds" -> seconds = Integer.parseInt(value(args, ++i));
+                    case "--warmup" -> warmup = Integer.parseInt(value(args, ++i));
+                    case "--writes" -> writes = Integer.parseInt(value(args, ++i));
+                    case "-h", "--help" -> {
+                        out.println(usage());
+                        return 0;
+                    }
+                    default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            if (clients < 1 || seconds < 1 || warmup < 0 || contacts < 1 || writes < 0 || writes > 100) {
+                throw new IllegalArgumentException("Invalid option value");
+            }
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println(usage());
+            return 2;
+        }
+
+        ExecutorService modelThread = null;
+        ContactServer server = null;
+        try {
+            if (url == null) {
+                modelThread = Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "contact-model");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                List<Person> persons = file != null
+                        ? AddressBookFormat.read(file, AddressBookFormat.Progress.NONE)
+                        : generate(contacts);
+                ContactServer.Model model = modelThread.submit(() -> new LocalModel(persons)).get();
+                ContactServer created = new ContactServer(model, modelThread);
+                modelThread.submit(() -> {
+                    created.start(0);
+                    return null;
+                }).get();
+                server = created;
+                url = created.uri();
+                out.printf("Self-hosted server %s with %,d contacts%n", url, persons.size());
+            }
+
+            ContactApiLoadTest test = sample(url, writes);
+            if (test == null) {
+                err.println("The address book at " + url + " is empty");
+                return 1;
+            }
+            out.printf("%d clients, %d s after %d s warm-up, %d%% writes%n", clients, seconds, warmup, writes);
+            test.load(clients, warmup);
+            long start = System.nanoTime();
+            List<Samples> samples = test.load(clients, seconds);
+            report(out, samples, System.nanoTime() - start);
+            return 0;
+        } catch (IOException e) {
+            err.println(e.getMessage());
+            return 1;
+        } finally {
+            if (server != null) {
+                ContactServer running = server;
+                modelThread.submit(running::stop).get();
+            }
+            if (modelThread != null) {
+                modelThread.shutdownNow();
+            }
+        }
+    }
+
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+        }
+        return args[index];
+    }
+
+    private static String usage() {
+        return """
+                Usage: ContactApiLoadTest [options]
+                  --url URL       contacts URL of a running app (default: start a server in this process)
+                  --contacts N    generated contacts for the in-process server (default 100000)
+                  --file F        .addr file for the in-process server instead of generated contacts
+                  -c N            concurrent clients (default 64)
+                  --seconds S     measured duration (default 10)
+                  --warmup S      warm-up duration (default 2)
+                  --writes P      percentage of PUT requests (default 0)""";
+    }
+
+    private static List<Person> generate(int count) {
+        String[] first = {"Anna", "Boris", "Clara", "Denis", "Elena", "Fedor", "Galina", "Igor", "Kira", "Leonid"};
+        String[] last = {"Ivanova", "Petrov", "Smirnova", "Kuznetsov", "Popova", "Sokolov", "Lebedeva", "Kozlov"};
+        String[] cities = {"Moscow", "Kazan", "Samara", "Omsk", "Tver", "Perm", "Tula", "Sochi"};
+        List<Person> persons = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            persons.add(new Person(first[i % first.length] + i, last[i % last.length],
+                    "Street " + i, cities[i % cities.length], Integer.toString(100000 + i % 900000),
+                    String.format("%02d.%02d.%d", 1 + i % 28, 1 + i % 12, 1950 + i % 60)));
+        }
+        return persons;
+    }
+
+    /**
+     * Число контактов, номера и имена первых из них — по ним строятся запросы; null, если книга пуста
+     */
+    private static ContactApiLoadTest sample(URI url, int writes) throws IOException, InterruptedException {
+        HttpClient client = HttpClient.newHttpClient();
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(url + "?limit=1000")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException(url + ": HTTP " + response.statusCode());
+        }
+        List<Integer> ids = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        Matcher matcher = ITEM.matcher(response.body());
+        while (matcher.find()) {
+            ids.add(Integer.parseInt(matcher.group(1)));
+            names.add(matcher.group(2));
+        }
+        Matcher total = TOTAL.matcher(response.body());
+        if (ids.isEmpty() || !total.find()) {
+            return null;
+        }
+        return new ContactApiLoadTest(url, Integer.parseInt(total.group(1)), ids.stream().mapToInt(Integer::intValue).toArray(),
+                names.toArray(String[]::new), writes);
+    }
+
+    /**
+     * Нагрузка от clients клиентов в течение seconds секунд
+     */
+    private List<Samples> load(int clients, int seconds) throws Exception {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        try {
+            List<Future<Samples>> futures = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                futures.add(executor.submit(() -> client(deadline)));
+            }
+            List<Samples> samples = new ArrayList<>();
+            for (Future<Samples> future : futures) {
+                samples.add(future.get());
+            }
+            return samples;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Samples client(long deadline) throws InterruptedException {
+        Samples samples = new Samples();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < deadline) {
+            Kind kind;
+            HttpRequest request;
+            int contact = random.nextInt(ids.length);
+            if (random.nextInt(100) < writePercent) {
+                kind = Kind.UPDATE;
+                String body = "{\"firstName\": \"" + names[contact] + "\", \"lastName\": \"Load\", "
+                        + "\"street\": \"Street " + random.nextInt(1_000_000) + "\", \"city\": \"Test\", "
+                        + "\"postalCode\": \"000000\", \"birthday\": null}";
+                request = HttpRequest.newBuilder(URI.create(contacts + "/" + ids[contact]))
+                        .PUT(HttpRequest.BodyPublishers.ofString(body))
+                        .header("Content-Type", "application/json").build();
+            } else {
+                int read = random.nextInt(6);
+                if (read < 3) {
+                    kind = Kind.LIST;
+                    request = HttpRequest.newBuilder(URI.create(contacts + "?offset=" + random.nextInt(total)
+                            + "&limit=50")).build();
+                } else if (read < 5) {
+                    kind = Kind.GET;
+                    request = HttpRequest.newBuilder(URI.create(contacts + "/" + ids[contact])).build();
+                } else {
+                    kind = Kind.SEARCH;
+                    String name = names[contact];
+                    request = HttpRequest.newBuilder(URI.create(contacts + "?limit=20&q="
+                            + URLEncoder.encode(name.substring(0, Math.min(4, name.length())),
+                            StandardCharsets.UTF_8))).build();
+                }
+            }
+            long start = System.nanoTime();
+            boolean error;
+            try {
+                error = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() >= 500;
+            } catch (IOException e) {
+                error = true;
+            }
+            samples.add(kind, System.nanoTime() - start, error);
+        }
+        return samples;
+    }
+
+    private static void report(PrintStream out, List<Samples> samples, long elapsedNanos) {
+        out.printf("%-8s %10s %10s %9s %9s %9s %9s %9s %7s%n",
+                "request", "count", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "errors");
+        long[] all = new long[0];
+        int allErrors = 0;
+        for (Kind kind : Kind.values()) {
+            int k = kind.ordinal();
+            long[] nanos = new long[0];
+            int errors = 0;
+            for (Samples client : samples) {
+                int from = nanos.length;
+                nanos = Arrays.copyOf(nanos, from + client.counts[k]);
+                System.arraycopy(client.nanos[k], 0, nanos, from, client.counts[k]);
+                errors += client.errors[k];
+            }
+            if (nanos.length == 0) {
+                continue;
+            }
+            int from = all.length;
+            all = Arrays.copyOf(all, from + nanos.length);
+            System.arraycopy(nanos, 0, all, from, nanos.length);
+            allErrors += errors;
+            row(out, kind.name().toLowerCase(Locale.ROOT), nanos, errors, elapsedNanos);
+        }
+        row(out, "total", all, allErrors, elapsedNanos);
+    }
+
+    private static void row(PrintStream out, String name, long[] nanos, int errors, long elapsedNanos) {
+        Arrays.sort(nanos);
+        out.printf("%-8s %,10d %,10.0f %9.2f %9.2f %9.2f %9.2f %9.2f %7d%n", name, nanos.length,
+                nanos.length * 1e9 / elapsedNanos,
+                percentile(nanos, 0.50), percentile(nanos, 0.90), percentile(nanos, 0.99),
+                percentile(nanos, 0.999), nanos.length == 0 ? 0 : nanos[nanos.length - 1] / 1e6, errors);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)] / 1e6;
+    }
+
+    /**
+     * Модель своего сервера: те же индексы, что в приложении, без интерфейса и журнала
+     */
+    private static final class LocalModel implements ContactServer.Model {
+        private final ObservableList<Person> persons = FXCollections.observableArrayList();
+        private final PersonIndex personIndex = new PersonIndex(persons);
+        private final ContactView contactView = new ContactView(persons);
+        private final ChangeTracker changes = new ChangeTracker(persons, () -> { });
+
+        LocalModel(List<Person> initial) {
+            persons.setAll(initial);
+        }
+
+        @Override
+        public ObservableList<Person> persons() {
+            return persons;
+        }
+
+        @Override
+        public long revision() {
+            return changes.revision();
+        }
+
+        @Override
+        public boolean isEditable() {
+            return true;
+        }
+
+        @Override
+        public List<Person> search(String[] query) {
+            return contactView.find(query);
+        }
+
+        @Override
+        public boolean add(Person person) {
+            if (personIndex.contains(person.key())) {
+                return false;
+            }
+            persons.add(person);
+            return true;
+        }
+
+        @Override
+        public boolean update(Person person, Person.Key values) {
+            if (!values.equals(person.key()) && personIndex.contains(values)) {
+                return false;
+            }
+            Person.Key before = person.key();
+            person.setFirstName(values.firstName());
+            person.setLastName(values.lastName());
+            person.setStreet(values.street());
+            person.setCity(values.city());
+            person.setPostalCode(values.postalCode());
+            person.setBirthday(values.birthday());
+            personIndex.updated(person, before);
+            contactView.updated(person, before);
+            changes.updated();
+            return true;
+        }
+
+        @Override
+        public void delete(Person person) {
+            Set<Person> remove = Collections.newSetFromMap(new IdentityHashMap<>());
+            remove.add(person);
+            persons.removeAll(remove);
+        }
+    }
+}
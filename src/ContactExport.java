@@ -0,0 +1,190 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Запись контактов в CSV или JSON.
+ * <p>
+ * Текст собирается в небольшом буфере символов и кодируется в UTF-8 прямо в буфер
+ * канала, поэтому расход памяти не зависит от числа контактов.
+ * Заголовок CSV совпадает с названиями колонок, которые понимает {@link ContactImport}.
+ */
+public final class ContactExport {
+    public enum Format { CSV, JSON }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String CSV_HEADER = "First Name,Last Name,Street,City,Postal Code,Birthday";
+    // Имена полей JSON; их же использует локальный HTTP-интерфейс (ContactServer)
+    static final String[] JSON_NAMES = {
+            "firstName", "lastName", "street", "city", "postalCode", "birthday"
+    };
+
+    private ContactExport() {
+    }
+
+    /**
+     * Определение формата по расширению файла
+     */
+    public static Format format(Path path) {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".json") ? Format.JSON : Format.CSV;
+    }
+
+    /**
+     * Буферизованная запись контактов в канал
+     */
+    public static final class RecordWriter {
+        private final FileChannel channel;
+        private final Format format;
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        private final StringBuilder text = new StringBuilder(BUFFER_SIZE);
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private long records;
+        private long written;
+
+        public RecordWriter(FileChannel channel, Format format) {
+            this.channel = channel;
+            this.format = format;
+            text.append(format == Format.CSV ? CSV_HEADER + "\r\n" : "[");
+        }
+
+        public long records() {
+            return records;
+        }
+
+        /**
+         * Число байтов, переданных в канал
+         */
+        public long position() {
+            return written;
+        }
+
+        public void write(Person.Key key) throws IOException {
+            String[] values = {key.firstName(), key.lastName(), key.street(),
+                    key.city(), key.postalCode(), key.birthday()};
+            if (format == Format.CSV) {
+                for (int i = 0; i < values.length; i++) {
+                    if (i > 0) {
+                        text.append(',');
+                    }
+                    appendCsv(values[i]);
+                }
+                text.append("\r\n");
+            } else {
+                text.append(records == 0 ? "\n  {" : ",\n  {");
+                for (int i = 0; i < values.length; i++) {
+                    if (i > 0) {
+                        text.append(", ");
+                    }
+                    appendJson(JSON_NAMES[i]);
+                    text.append(": ");
+                    appendJson(values[i]);
+                }
+                text.append('}');
+            }
+            records++;
+            if (text.length() >= BUFFER_SIZE) {
+                drain();
+            }
+        }
+
+        /**
+         * Завершение документа и запись остатка буфера
+         */
+        public void finish() throws IOException {
+            if (format == Format.JSON) {
+                text.append(records == 0 ? "]\n" : "\n]\n");
+            }
+            drain();
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void drain() throws IOException {
+            CharBuffer chars = CharBuffer.wrap(text);
+            while (true) {
+                CoderResult result = encoder.encode(chars, buffer, false);
+                if (result.isOverflow()) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        written += channel.write(buffer);
+                    }
+                    buffer.clear();
+                } else if (result.isUnderflow()) {
+                    break;
+                } else {
+                    result.throwException();
+                }
+            }
+            // Недокодированный остаток (половина суррогатной пары) переносим в начало
+            text.delete(0, chars.position());
+        }
+
+        private void appendCsv(String value) {
+            if (value == null) {
+                return;
+            }
+            boolean quote = false;
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                text.append(value);
+                return;
+            }
+            text.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    text.append('"');
+                }
+                text.append(c);
+            }
+            text.append('"');
+        }
+
+        private void appendJson(String value) {
+            ContactExport.appendJson(text, value);
+        }
+    }
+
+    /**
+     * Строка JSON в кавычках с экранированием; для null — литерал null
+     */
+    static void appendJson(StringBuilder text, String value) {
+        if (value == null) {
+            text.append("null");
+            return;
+        }
+        text.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> text.append("\\\"");
+                case '\\' -> text.append("\\\\");
+                case '\n' -> text.append("\\n");
+                case '\r' -> text.append("\\r");
+                case '\t' -> text.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        text.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        text.append(c);
+                    }
+                }
+            }
+        }
+        text.append('"');
+    }
+}
@@ -0,0 +1,356 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Разбор файлов CSV и vCard для импорта контактов.
+ * <p>
+ * Чтение разделено на два шага: {@link RecordReader} последовательно нарезает поток
+ * на текстовые записи (строку CSV с учетом переводов строк в кавычках или карточку
+ * BEGIN:VCARD ... END:VCARD), а {@link #parse} превращает пачку записей в контакты
+ * и может выполняться параллельно для разных пачек.
+ * <p>
+ * В CSV первая строка считается заголовком, если в ней есть известные названия колонок;
+ * иначе колонки идут в порядке firstName, lastName, street, city, postalCode, birthday.
+ * Разделитель (запятая, точка с запятой или табуляция) определяется по первой строке.
+ */
+public final class ContactImport {
+    public enum Kind { CSV, VCARD }
+
+    // Индексы полей контакта в массиве значений
+    private static final int FIRST_NAME = 0;
+    private static final int LAST_NAME = 1;
+    private static final int STREET = 2;
+    private static final int CITY = 3;
+    private static final int POSTAL_CODE = 4;
+    private static final int BIRTHDAY = 5;
+    private static final int FIELD_COUNT = 6;
+
+    private static final DateTimeFormatter BASIC_DATE = DateTimeFormatter.BASIC_ISO_DATE;
+
+    /**
+     * Результат разбора пачки записей
+     *
+     * @param errors     число записей, которые не удалось разобрать
+     * @param firstError описание первой ошибки в пачке или null
+     */
+    public record Chunk(List<Person> persons, int errors, String firstError) {
+    }
+
+    /**
+     * Соответствие колонок CSV полям контакта: columns[поле] = номер колонки или -1
+     *
+     * @param header первая запись файла — заголовок, а не данные
+     */
+    public record Columns(char delimiter, int[] columns, boolean header) {
+    }
+
+    private ContactImport() {
+    }
+
+    /**
+     * Определение формата по расширению файла
+     */
+    public static Kind kind(Path path) {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".vcf") || name.endsWith(".vcard") ? Kind.VCARD : Kind.CSV;
+    }
+
+    /**
+     * Определение разделителя и колонок по первой записи CSV
+     */
+    public static Columns columns(String record) {
+        char delimiter = ',';
+        int best = count(record, ',');
+        for (char candidate : new char[]{';', '\t'}) {
+            int count = count(record, candidate);
+            if (count > best) {
+                best = count;
+                delimiter = candidate;
+            }
+        }
+
+        List<String> names = new ArrayList<>();
+        splitCsv(record, delimiter, names);
+        int[] columns = {-1, -1, -1, -1, -1, -1};
+        boolean found = false;
+        for (int i = 0; i < names.size(); i++) {
+            int field = field(names.get(i));
+            if (field >= 0 && columns[field] < 0) {
+                columns[field] = i;
+                found = true;
+            }
+        }
+        return found ? new Columns(delimiter, columns, true)
+                : new Columns(delimiter, new int[]{0, 1, 2, 3, 4, 5}, false);
+    }
+
+    /**
+     * Разбор пачки записей
+     *
+     * @param first номер первой записи пачки в файле (для сообщений об ошибках)
+     */
+    public static Chunk parse(Kind kind, Columns columns, List<String> records, long first) {
+        List<Person> persons = new ArrayList<>(records.size());
+        List<String> values = new ArrayList<>(FIELD_COUNT);
+        String[] fields = new String[FIELD_COUNT];
+        int errors = 0;
+        String firstError = null;
+        for (int i = 0; i < records.size(); i++) {
+            try {
+                if (kind == Kind.VCARD) {
+                    parseVCard(records.get(i), fields);
+                } else {
+                    values.clear();
+                    if (!splitCsv(records.get(i), columns.delimiter(), values)) {
+                        throw new IllegalArgumentException("unterminated quoted field");
+                    }
+                    for (int field = 0; field < FIELD_COUNT; field++) {
+                        int column = columns.columns()[field];
+                        fields[field] = column >= 0 && column < values.size() ? values.get(column).strip() : "";
+                    }
+                }
+                if (fields[FIRST_NAME].isEmpty() && fields[LAST_NAME].isEmpty()) {
+                    throw new IllegalArgumentException("no name");
+                }
+                persons.add(new Person(fields[FIRST_NAME], fields[LAST_NAME], fields[STREET],
+                        fields[CITY], fields[POSTAL_CODE], fields[BIRTHDAY]));
+            } catch (IllegalArgumentException e) {
+                if (errors++ == 0) {
+                    firstError = "record " + (first + i + 1) + ": " + e.getMessage();
+                }
+            }
+        }
+        return new Chunk(persons, errors, firstError);
+    }
+
+    /**
+     * Последовательная нарезка потока на текстовые записи
+     */
+    public static final class RecordReader {
+        private final BufferedReader in;
+        private final Kind kind;
+        private boolean first = true;
+
+        public RecordReader(BufferedReader in, Kind kind) {
+            this.in = in;
+            this.kind = kind;
+        }
+
+        /**
+         * Следующая запись или null в конце потока
+         */
+        public String next() throws IOException {
+            return kind == Kind.VCARD ? nextVCard() : nextCsv();
+        }
+
+        private String readLine() throws IOException {
+            String line = in.readLine();
+            if (first && line != null) {
+                first = false;
+                // Отбрасываем метку порядка байтов
+                if (!line.isEmpty() && line.charAt(0) == '\uFEFF') {
+                    line = line.substring(1);
+                }
+            }
+            return line;
+        }
+
+        private String nextCsv() throws IOException {
+            String line;
+            do {
+                line = readLine();
+            } while (line != null && line.isBlank());
+            if (line == null || count(line, '"') % 2 == 0) {
+                return line;
+            }
+            // Открытая кавычка: поле продолжается на следующих строках
+            StringBuilder record = new StringBuilder(line);
+            int quotes = count(line, '"');
+            while (quotes % 2 != 0 && (line = readLine()) != null) {
+                record.append('\n').append(line);
+                quotes += count(line, '"');
+            }
+            return record.toString();
+        }
+
+        private String nextVCard() throws IOException {
+            String line;
+            do {
+                line = readLine();
+            } while (line != null && !line.strip().equalsIgnoreCase("BEGIN:VCARD"));
+            if (line == null) {
+                return null;
+            }
+            StringBuilder card = new StringBuilder();
+            while ((line = readLine()) != null && !line.strip().equalsIgnoreCase("END:VCARD")) {
+                card.append(line).append('\n');
+            }
+            return card.toString();
+        }
+    }
+
+    /**
+     * Разбор строки CSV; false, если кавычки не закрыты
+     */
+    private static boolean splitCsv(String record, char delimiter, List<String> values) {
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < record.length(); i++) {
+            char c = record.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    value.append(c);
+                } else if (i + 1 < record.length() && record.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == delimiter) {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+        return !quoted;
+    }
+
+    /**
+     * Разбор карточки vCard (строки между BEGIN и END)
+     */
+    private static void parseVCard(String card, String[] fields) {
+        Arrays.fill(fields, "");
+        String formattedName = "";
+        // Склеиваем перенесенные строки: продолжение начинается с пробела или табуляции
+        String[] lines = card.replace("\r", "").replace("\n ", "").replace("\n\t", "").split("\n");
+        for (String line : lines) {
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String name = line.substring(0, colon);
+            int params = name.indexOf(';');
+            if (params >= 0) {
+                name = name.substring(0, params);
+            }
+            // Отбрасываем группу вида "item1.ADR"
+            name = name.substring(name.lastIndexOf('.') + 1).toUpperCase(Locale.ROOT);
+            String value = line.substring(colon + 1);
+            switch (name) {
+                case "N" -> {
+                    List<String> parts = splitVCard(value);
+                    fields[LAST_NAME] = part(parts, 0);
+                    fields[FIRST_NAME] = part(parts, 1);
+                }
+                case "FN" -> formattedName = unescape(value).strip();
+                case "ADR" -> {
+                    // Почтовый ящик; доп. адрес; улица; город; регион; индекс; страна
+                    List<String> parts = splitVCard(value);
+                    fields[STREET] = part(parts, 2);
+                    fields[CITY] = part(parts, 3);
+                    fields[POSTAL_CODE] = part(parts, 5);
+                }
+                case "BDAY" -> fields[BIRTHDAY] = birthday(unescape(value).strip());
+                default -> {
+                }
+            }
+        }
+        if (fields[FIRST_NAME].isEmpty() && fields[LAST_NAME].isEmpty() && !formattedName.isEmpty()) {
+            // Нет структурированного имени — делим полное имя по последнему пробелу
+            int space = formattedName.lastIndexOf(' ');
+            fields[FIRST_NAME] = space < 0 ? formattedName : formattedName.substring(0, space);
+            fields[LAST_NAME] = space < 0 ? "" : formattedName.substring(space + 1);
+        }
+    }
+
+    /**
+     * Дата рождения vCard: базовый формат ISO (19850412) приводим к расширенному
+     */
+    private static String birthday(String value) {
+        if (value.length() == 8 && value.chars().allMatch(Character::isDigit)) {
+            try {
+                return LocalDate.parse(value, BASIC_DATE).toString();
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("invalid birthday " + value);
+            }
+        }
+        return value;
+    }
+
+    private static List<String> splitVCard(String value) {
+        List<String> parts = new ArrayList<>(7);
+        StringBuilder part = new StringBuilder();
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                part.append(c).append(value.charAt(++i));
+            } else if (c == ';') {
+                parts.add(unescape(part.toString()).strip());
+                part.setLength(0);
+            } else {
+                part.append(c);
+            }
+        }
+        parts.add(unescape(part.toString()).strip());
+        return parts;
+    }
+
+    private static String part(List<String> parts, int index) {
+        return index < parts.size() ? parts.get(index) : "";
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder result = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                result.append(next == 'n' || next == 'N' ? '\n' : next);
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Поле контакта по названию колонки CSV или -1
+     */
+    private static int field(String name) {
+        String key = name.strip().toLowerCase(Locale.ROOT).replaceAll("[\\s_-]", "");
+        return switch (key) {
+            case "firstname", "givenname", "имя" -> FIRST_NAME;
+            case "lastname", "familyname", "surname", "фамилия" -> LAST_NAME;
+            case "street", "address", "улица", "адрес" -> STREET;
+            case "city", "town", "город" -> CITY;
+            case "postalcode", "postcode", "zip", "zipcode", "индекс" -> POSTAL_CODE;
+            case "birthday", "birthdate", "dateofbirth", "bday", "деньрождения", "датарождения" -> BIRTHDAY;
+            default -> -1;
+        };
+    }
+
+    private static int count(String value, char c) {
+        int count = 0;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) == c) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,683 @@
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.Serial;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Локальный HTTP/JSON-интерфейс к контактам приложения для других программ на том же компьютере:
+ * <pre>
+ * GET    /contacts?offset=0&amp;limit=50   страница списка в порядке хранения
+ * GET    /contacts?q=текст&amp;offset=&amp;limit=  страница результатов поиска (как в строке поиска)
+ * GET    /contacts/{id}                  контакт
+ * POST   /contacts                       добавление; 201 и Location нового контакта
+ * PUT    /contacts/{id}                  замена всех полей
+ * DELETE /contacts/{id}                  удаление
+ * </pre>
+ * Контакт в JSON — объект с полями id, firstName, lastName, street, city, postalCode, birthday
+ * (те же имена, что при экспорте). Номер контакта назначается при первой выдаче и живет,
+ * пока контакт не удален из списка и сервер не перезапущен.
+ * <p>
+ * ETag списка — ревизия данных ({@link ChangeTracker#revision()}), контакта — хэш его JSON.
+ * GET с совпадающим If-None-Match получает 304 без тела, PUT и DELETE с несовпадающим
+ * If-Match — 412, дубликат при добавлении или изменении — 409.
+ * <p>
+ * Сервер слушает только адрес обратной петли, каждый запрос обрабатывается в своем потоке
+ * (виртуальном, если JVM их поддерживает). Модель живет в потоке JavaFX, поэтому всякое
+ * обращение к ней передается в executor модели одной задачей на запрос; JSON разбирается
+ * и формируется в потоке запроса. Если модель не ответила за {@value #MODEL_TIMEOUT_SECONDS} с,
+ * запрос получает 503.
+ */
+public class ContactServer {
+    private static final Logger LOGGER = Logger.getLogger(ContactServer.class.getName());
+
+    private static final String PATH = "/contacts";
+    private static final int DEFAULT_LIMIT = 50;
+    private static final int MAX_LIMIT = 1000;
+    private static final int MAX_BODY = 64 * 1024;
+    private static final long MODEL_TIMEOUT_SECONDS = 10;
+
+    static {
+        // Без TCP_NODELAY тело ответа уходит отдельным пакетом после подтверждения заголовков,
+        // и каждый запрос ждет отложенного подтверждения (около 40 мс). Настройка читается
+        // при первом создании HttpServer
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    /**
+     * Данные, которые отдает сервер. Методы вызываются только через executor модели
+     */
+    public interface Model {
+        ObservableList<Person> persons();
+
+        /**
+         * Ревизия, которая меняется при каждом изменении данных
+         */
+        long revision();
+
+        /**
+         * Можно ли сейчас изменять контакты
+         */
+        boolean isEditable();
+
+        /**
+         * Контакты, подходящие под разобранный запрос ({@link SearchIndex#parseQuery}), в порядке списка
+         */
+        List<Person> search(String[] query);
+
+        /**
+         * Добавление контакта; false, если такой уже есть
+         */
+        boolean add(Person person);
+
+        /**
+         * Изменение полей контакта; false, если новые значения совпадают с другим контактом
+         */
+        boolean update(Person person, Person.Key values);
+
+        void delete(Person person);
+    }
+
+    /**
+     * Ответ на запрос: код, заголовки ETag и Location (или null) и тело в JSON (или null)
+     */
+    private record Response(int status, String etag, String location, String body) {
+    }
+
+    /**
+     * Ответ с ошибкой, прерывающий обработку запроса
+     */
+    private static final class ApiException extends Exception {
+        @Serial
+        private static final long serialVersionUID = 1L;
+        private final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /**
+     * Страница контактов, снятая в потоке модели
+     */
+    private record Page(long revision, int total, int[] ids, Person.Key[] keys) {
+    }
+
+    private final Model model;
+    private final Executor modelExecutor;
+
+    // Различает номера контактов и ревизии разных запусков сервера в ETag
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    // Номера выданных контактов; используются только в потоке модели
+    private final Map<Person, Integer> ids = new IdentityHashMap<>();
+    private final Map<Integer, Person> byId = new HashMap<>();
+    private int nextId = 1;
+
+    // Номера удаленных контактов освобождаются
+    private final ListChangeListener<Person> forgetRemoved = change -> {
+        while (change.next()) {
+            if (!ids.isEmpty() && change.wasRemoved()) {
+                for (Person person : change.getRemoved()) {
+                    Integer id = ids.remove(person);
+                    if (id != null) {
+                        byId.remove(id);
+                    }
+                }
+            }
+        }
+    };
+
+    private HttpServer server;
+    private ExecutorService requestExecutor;
+
+    /**
+     * @param modelExecutor поток, в котором живет модель (в приложении — Platform::runLater)
+     */
+    public ContactServer(Model model, Executor modelExecutor) {
+        this.model = model;
+        this.modelExecutor = modelExecutor;
+    }
+
+    /**
+     * Запуск на адресе обратной петли; вызывается в потоке модели
+     *
+     * @param port порт или 0 для любого свободного
+     */
+    public void start(int port) throws IOException {
+        HttpServer created = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        created.createContext(PATH, this::handle);
+        requestExecutor = newRequestExecutor();
+        created.setExecutor(requestExecutor);
+        created.start();
+        server = created;
+        model.persons().addListener(forgetRemoved);
+    }
+
+    /**
+     * Остановка без ожидания запросов, которые уже обрабатываются: они ждут поток модели,
+     * из которого вызывается этот метод
+     */
+    public void stop() {
+        if (server == null) {
+            return;
+        }
+        model.persons().removeListener(forgetRemoved);
+        server.stop(0);
+        requestExecutor.shutdownNow();
+        server = null;
+        ids.clear();
+        byId.clear();
+    }
+
+    /**
+     * Адрес списка контактов, например http://127.0.0.1:8765/contacts
+     */
+    public URI uri() {
+        InetSocketAddress address = server.getAddress();
+        return URI.create("http://" + address.getAddress().getHostAddress() + ":" + address.getPort() + PATH);
+    }
+
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "contact-api-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        Metrics.Operation operation = Metrics.begin(Metrics.API_REQUEST);
+        Response response;
+        try {
+            response = route(exchange);
+        } catch (ApiException e) {
+            response = error(e.status, e.getMessage());
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "HTTP API request failed: " + exchange.getRequestURI(), e);
+            response = error(500, "Internal error");
+        }
+        try {
+            send(exchange, response);
+        } finally {
+            exchange.close();
+            operation.end(1, response.body() == null ? 0 : response.body().length());
+        }
+    }
+
+    private Response route(HttpExchange exchange) throws IOException, ApiException {
+        String path = exchange.getRequestURI().getPath();
+        String method = exchange.getRequestMethod();
+        Headers headers = exchange.getRequestHeaders();
+        if (path.equals(PATH) || path.equals(PATH + "/")) {
+            return switch (method) {
+                case "GET" -> list(parameters(exchange.getRequestURI().getRawQuery()), headers.getFirst("If-None-Match"));
+                case "POST" -> add(readBody(exchange));
+                default -> throw new ApiException(405, "Method not allowed: " + method);
+            };
+        }
+        if (!path.startsWith(PATH + "/")) {
+            throw new ApiException(404, "Not found: " + path);
+        }
+        int id;
+        try {
+            id = Integer.parseInt(path.substring(PATH.length() + 1));
+        } catch (NumberFormatException e) {
+            throw new ApiException(404, "Not found: " + path);
+        }
+        return switch (method) {
+            case "GET" -> get(id, headers.getFirst("If-None-Match"));
+            case "PUT" -> update(id, readBody(exchange), headers.getFirst("If-Match"));
+            case "DELETE" -> delete(id, headers.getFirst("If-Match"));
+            default -> throw new ApiException(405, "Method not allowed: " + method);
+        };
+    }
+
+    // Обработчики запросов
+
+    private Response list(Map<String, String> parameters, String ifNoneMatch) throws IOException, ApiException {
+        int offset = intParameter(parameters, "offset", 0);
+        int limit = Math.min(intParameter(parameters, "limit", DEFAULT_LIMIT), MAX_LIMIT);
+        String[] query = SearchIndex.parseQuery(parameters.getOrDefault("q", ""));
+        // Весь список не копируется: в потоке модели снимаются только номера и поля страницы
+        Page page = onModel(() -> {
+            List<Person> persons = query == null ? model.persons() : model.search(query);
+            int from = Math.min(offset, persons.size());
+            int to = Math.min(from + limit, persons.size());
+            int[] pageIds = new int[to - from];
+            Person.Key[] keys = new Person.Key[to - from];
+            for (int i = from; i < to; i++) {
+                Person person = persons.get(i);
+                pageIds[i - from] = idOf(person);
+                keys[i - from] = person.key();
+            }
+            return new Page(model.revision(), persons.size(), pageIds, keys);
+        });
+        String etag = '"' + epoch + "-" + page.revision() + '"';
+        if (etagMatches(ifNoneMatch, etag)) {
+            return new Response(304, etag, null, null);
+        }
+        StringBuilder json = new StringBuilder(64 + page.ids().length * 160);
+        json.append("{\"revision\": ").append(page.revision())
+                .append(", \"total\": ").append(page.total())
+                .append(", \"offset\": ").append(offset)
+                .append(", \"items\": [");
+        for (int i = 0; i < page.ids().length; i++) {
+            if (i > 0) {
+                json.append(", ");
+            }
+            appendContact(json, page.ids()[i], page.keys()[i]);
+        }
+        json.append("]}");
+        return new Response(200, etag, null, json.toString());
+    }
+
+    private Response get(int id, String ifNoneMatch) throws IOException, ApiException {
+        Person.Key key = onModel(() -> {
+            Person person = byId.get(id);
+            return person == null ? null : person.key();
+        });
+        if (key == null) {
+            throw new ApiException(404, "No contact " + id);
+        }
+        Response response = contact(200, id, key);
+        return etagMatches(ifNoneMatch, response.etag()) ? new Response(304, response.etag(), null, null) : response;
+    }
+
+    private Response add(Map<String, String> body) throws IOException, ApiException {
+        Person.Key values = values(body);
+        Person person = new Person(values.firstName(), values.lastName(), values.street(),
+                values.city(), values.postalCode(), values.birthday());
+        Integer id = onModel(() -> {
+            requireEditable();
+            return model.add(person) ? idOf(person) : null;
+        });
+        if (id == null) {
+            throw new ApiException(409, "This address already exists");
+        }
+        Response response = contact(201, id, values);
+        return new Response(201, response.etag(), PATH + "/" + id, response.body());
+    }
+
+    private Response update(int id, Map<String, String> body, String ifMatch) throws IOException, ApiException {
+        Person.Key values = values(body);
+        // Код ошибки из потока модели; сам ответ формируется уже здесь
+        int status = onModel(() -> {
+            Person person = byId.get(id);
+            if (person == null) {
+                return 404;
+            }
+            if (ifMatch != null && !etagMatches(ifMatch, contact(200, id, person.key()).etag())) {
+                return 412;
+            }
+            requireEditable();
+            return model.update(person, values) ? 200 : 409;
+        });
+        return switch (status) {
+            case 404 -> throw new ApiException(404, "No contact " + id);
+            case 412 -> throw new ApiException(412, "Contact " + id + " has changed");
+            case 409 -> throw new ApiException(409, "This address already exists");
+            default -> contact(200, id, values);
+        };
+    }
+
+    private Response delete(int id, String ifMatch) throws IOException, ApiException {
+        int status = onModel(() -> {
+            Person person = byId.get(id);
+            if (person == null) {
+                return 404;
+            }
+            if (ifMatch != null && !etagMatches(ifMatch, contact(200, id, person.key()).etag())) {
+                return 412;
+            }
+            requireEditable();
+            model.delete(person);
+            return 204;
+        });
+        return switch (status) {
+            case 404 -> throw new ApiException(404, "No contact " + id);
+            case 412 -> throw new ApiException(412, "Contact " + id + " has changed");
+            default -> new Response(204, null, null, null);
+        };
+    }
+
+    // Работа с моделью
+
+    /**
+     * Выполнение действия в потоке модели с ожиданием результата
+     */
+    private <T> T onModel(Callable<T> action) throws IOException, ApiException {
+        FutureTask<T> task = new FutureTask<>(action);
+        modelExecutor.execute(task);
+        try {
+            return task.get(MODEL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            // Если модель доберется до задачи позже, изменение не выполнится
+            task.cancel(false);
+            throw new ApiException(503, "Address book is busy");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the address book");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ApiException apiException) {
+                throw apiException;
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void requireEditable() throws ApiException {
+        if (!model.isEditable()) {
+            throw new ApiException(409, "The address book is open read-only");
+        }
+    }
+
+    private int idOf(Person person) {
+        Integer id = ids.get(person);
+        if (id == null) {
+            id = nextId++;
+            ids.put(person, id);
+            byId.put(id, person);
+        }
+        return id;
+    }
+
+    // JSON
+
+    private Response contact(int status, int id, Person.Key key) {
+        StringBuilder json = new StringBuilder(160);
+        appendContact(json, id, key);
+        String body = json.toString();
+        return new Response(status, '"' + epoch + "-" + Long.toHexString(hash(body)) + '"', null, body);
+    }
+
+    private static void appendContact(StringBuilder json, int id, Person.Key key) {
+        String[] values = {key.firstName(), key.lastName(), key.street(), key.city(), key.postalCode(), key.birthday()};
+        json.append("{\"id\": ").append(id);
+        for (int i = 0; i < values.length; i++) {
+            json.append(", ");
+            ContactExport.appendJson(json, ContactExport.JSON_NAMES[i]);
+            json.append(": ");
+            ContactExport.appendJson(json, values[i]);
+        }
+        json.append('}');
+    }
+
+    // FNV-1a, 64 бита: ETag меняется при любом изменении полей
+    private static long hash(String text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash = (hash ^ text.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Совпадает ли ETag с одним из перечисленных в If-Match или If-None-Match (или там "*")
+     */
+    private static boolean etagMatches(String header, String etag) {
+        if (header == null) {
+            return false;
+        }
+        for (String candidate : header.split(",")) {
+            String value = candidate.strip();
+            if (value.equals("*") || value.equals(etag) || value.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Response error(int status, String message) {
+        StringBuilder json = new StringBuilder("{\"error\": ");
+        ContactExport.appendJson(json, message);
+        return new Response(status, null, null, json.append('}').toString());
+    }
+
+    /**
+     * Поля контакта из тела запроса; обязательны все, кроме birthday
+     */
+    private static Person.Key values(Map<String, String> body) throws ApiException {
+        String[] values = new String[ContactExport.JSON_NAMES.length];
+        for (int i = 0; i < values.length; i++) {
+            String name = ContactExport.JSON_NAMES[i];
+            String value = body.get(name);
+            boolean optional = name.equals("birthday");
+            if (!optional && (value == null || value.isBlank())) {
+                throw new ApiException(400, "Missing field: " + name);
+            }
+            values[i] = value == null ? "" : value;
+        }
+        try {
+            Person.parseBirthday(values[5]);
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, "Birthday must be a date like 31.12.1990");
+        }
+        return new Person.Key(values[0], values[1], values[2], values[3], values[4],
+                Person.normalizeBirthday(values[5]));
+    }
+
+    /**
+     * Разбор тела запроса — объекта JSON со строковыми полями (или null)
+     */
+    private static Map<String, String> readBody(HttpExchange exchange) throws IOException, ApiException {
+        byte[] bytes;
+        try (InputStream in = exchange.getRequestBody()) {
+            bytes = in.readNBytes(MAX_BODY + 1);
+        }
+        if (bytes.length > MAX_BODY) {
+            throw new ApiException(413, "Request body is larger than " + MAX_BODY + " bytes");
+        }
+        return new JsonObjectParser(new String(bytes, StandardCharsets.UTF_8)).parse();
+    }
+
+    private static Map<String, String> parameters(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null) {
+            return parameters;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static int intParameter(Map<String, String> parameters, String name, int defaultValue) throws ApiException {
+        String value = parameters.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int number = Integer.parseInt(value);
+            if (number >= 0) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // ниже
+        }
+        throw new ApiException(400, "Invalid " + name + ": " + value);
+    }
+
+    private static void send(HttpExchange exchange, Response response) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        if (response.etag() != null) {
+            headers.set("ETag", response.etag());
+        }
+        if (response.location() != null) {
+            headers.set("Location", response.location());
+        }
+        if (response.body() == null) {
+            exchange.sendResponseHeaders(response.status(), -1);
+            return;
+        }
+        byte[] body = response.body().getBytes(StandardCharsets.UTF_8);
+        headers.set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(response.status(), body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Разбор плоского объекта JSON: значения — строки или null, вложенных объектов нет
+     */
+    private static final class JsonObjectParser {
+        private final String text;
+        private int position;
+
+        JsonObjectParser(String text) {
+            this.text = text;
+        }
+
+        Map<String, String> parse() throws ApiException {
+            Map<String, String> fields = new HashMap<>();
+            expect('{');
+            if (peek() == '}') {
+                position++;
+            } else {
+                do {
+                    String name = string();
+                    expect(':');
+                    String value;
+                    if (text.startsWith("null", skipSpaces())) {
+                        position += 4;
+                        value = null;
+                    } else {
+                        value = string();
+                    }
+                    if (fields.containsKey(name)) {
+                        throw new ApiException(400, "Duplicate field: " + name);
+                    }
+                    fields.put(name, value);
+                } while (next() == ',');
+                position--;
+                expect('}');
+            }
+            if (skipSpaces() != text.length()) {
+                throw malformed();
+            }
+            for (String name : fields.keySet()) {
+                if (!List.of(ContactExport.JSON_NAMES).contains(name) && !name.equals("id")) {
+                    throw new ApiException(400, "Unknown field: " + name);
+                }
+            }
+            return fields;
+        }
+
+        private String string() throws ApiException {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                char c = raw();
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c < 0x20) {
+                    throw malformed();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                char escaped = raw();
+                switch (escaped) {
+                    case '"', '\\', '/' -> value.append(escaped);
+                    case 'b' -> value.append('\b');
+                    case 'f' -> value.append('\f');
+                    case 'n' -> value.append('\n');
+                    case 'r' -> value.append('\r');
+                    case 't' -> value.append('\t');
+                    case 'u' -> {
+                        if (position + 4 > text.length()) {
+                            throw malformed();
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw malformed();
+                        }
+                        position += 4;
+                    }
+                    default -> throw malformed();
+                }
+            }
+        }
+
+        private void expect(char expected) throws ApiException {
+            if (next() != expected) {
+                throw malformed();
+            }
+        }
+
+        private char peek() throws ApiException {
+            skipSpaces();
+            if (position >= text.length()) {
+                throw malformed();
+            }
+            return text.charAt(position);
+        }
+
+        // Следующая лексема-символ; пробелы перед ней пропускаются
+        private char next() throws ApiException {
+            char c = peek();
+            position++;
+            return c;
+        }
+
+        // Следующий символ строки как есть
+        private char raw() throws ApiException {
+            if (position >= text.length()) {
+                throw malformed();
+            }
+            return text.charAt(position++);
+        }
+
+        private int skipSpaces() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+            return position;
+        }
+
+        private ApiException malformed() {
+            return new ApiException(400, "Malformed JSON at position " + position);
+        }
+    }
+}
@@ -0,0 +1,789 @@
+import javafx.application.Platform;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.collections.ObservableListBase;
+import java.text.Collator;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.IntBinaryOperator;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+/**
+ * Список контактов, который показывает таблица: отфильтрованный по поисковому
+ * запросу и, если задан, по дополнительному условию (группа из {@link GroupCounts}),
+ * и отсортированный по выбранным колонкам.
+ * <p>
+ * Каждому контакту выдается номер; для номера хранится ключ сортировки, вычисленный
+ * один раз (для строк — {@link java.text.CollationKey}). Порядок всех контактов хранится
+ * массивом номеров, поэтому смена запроса — один проход по этому массиву, а смена
+ * сортировки для больших списков выполняется параллельной сортировкой в фоновом потоке.
+ * Добавления и удаления отслеживаются через слушатель исходного списка,
+ * о редактировании контакта сообщается вызовом {@link #updated}.
+ */
+public class ContactView extends ObservableListBase<Person> {
+    private static final Logger LOGGER = Logger.getLogger(ContactView.class.getName());
+
+    // Начиная с этого размера сортировка выполняется в фоновом потоке
+    private static final int ASYNC_SORT_THRESHOLD = 20_000;
+
+    // Начиная с этого размера изменения применяются одним пересчетом, а не по одному
+    private static final int BULK_CHANGE_THRESHOLD = 1_000;
+
+    // Collator не потокобезопасен, поэтому у каждого потока свой
+    private static final ThreadLocal<Collator> COLLATOR = ThreadLocal.withInitial(Collator::getInstance);
+
+    /**
+     * Колонка сортировки: функция ключа и направление
+     */
+    public record SortColumn(Function<Person, Comparable<?>> key, boolean ascending) {
+    }
+
+    private final SearchIndex searchIndex = new SearchIndex();
+
+    // Номер контакта и обратное соответствие; номер удаленного контакта освобождается
+    // только при перенумерации (compact)
+    private final Map<Person, Integer> ids = new IdentityHashMap<>();
+    private Person[] byId = new Person[1024];
+    private Object[] keys = new Object[1024];
+    private int nextId;
+
+    // Порядок всех номеров (включая удаленные) по текущей сортировке; null — порядок добавления
+    private int[] order = null;
+    private int orderSize;
+
+    // Номера видимых контактов в порядке отображения
+    private int[] items = new int[1024];
+    private int size;
+
+    private String[] query = null;
+    private Predicate<Person> filter = null;
+    private List<SortColumn> sort = List.of();
+    private List<SortColumn> requestedSort = List.of();
+
+    // Счетчик структурных изменений, по нему отбрасываются устаревшие результаты фоновой сортировки
+    private long version;
+    private boolean sorting;
+
+    // Идет изменение группы контактов одним событием
+    private boolean updatingGroup;
+
+    public ContactView(ObservableList<Person> source) {
+        beginChange();
+        addPersons(source);
+        endChange();
+        source.addListener((ListChangeListener<Person>) this::sourceChanged);
+    }
+
+    @Override
+    public Person get(int index) {
+        Objects.checkIndex(index, size);
+        return byId[items[index]];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Задан ли поисковый запрос или условие
+     */
+    public boolean isSearching() {
+        return query != null || filter != null;
+    }
+
+    /**
+     * Установка поискового запроса
+     */
+    public void search(String text) {
+        query = SearchIndex.parseQuery(text);
+        rebuild();
+    }
+
+    /**
+     * Установка условия, которому должны удовлетворять видимые контакты, вместе с запросом;
+     * null — без условия
+     */
+    public void filter(Predicate<Person> filter) {
+        this.filter = filter;
+        rebuild();
+    }
+
+    /**
+     * Контакты, подходящие под запрос, в порядке добавления; запрос и сортировка таблицы
+     * не меняются
+     */
+    public List<Person> find(String[] query) {
+        BitSet matches = searchIndex.find(query);
+        List<Person> found = new ArrayList<>(matches.cardinality());
+        for (int id = matches.nextSetBit(0); id >= 0; id = matches.nextSetBit(id + 1)) {
+            if (byId[id] != null) {
+                found.add(byId[id]);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Установка сортировки; для больших списков результат появится после фоновой сортировки
+     */
+    public void sort(List<SortColumn> columns) {
+        if (columns.equals(requestedSort)) {
+            return;
+        }
+        requestedSort = List.copyOf(columns);
+        if (requestedSort.isEmpty()) {
+            sort = requestedSort;
+            order = null;
+            Arrays.fill(keys, null);
+            rebuild();
+        } else if (!sorting) {
+            startSort();
+        }
+    }
+
+    /**
+     * Ключ сортировки строкового поля с учетом правил языка
+     */
+    public static Function<Person, Comparable<?>> textKey(Function<Person, String> field) {
+        return person -> {
+            String value = field.apply(person);
+            return value == null ? null : COLLATOR.get().getCollationKey(value);
+        };
+    }
+
+    /**
+     * Обновление положения контакта после изменения его полей
+     *
+     * @param before значения полей до изменения
+     */
+    public void updated(Person person, Person.Key before) {
+        Integer boxed = ids.get(person);
+        if (boxed == null) {
+            return;
+        }
+        int id = boxed;
+        version++;
+        beginChange();
+
+        // Места контакта, пока ключ еще старый
+        int oldPos = indexOfItem(id);
+        int orderPos = order == null ? -1 : indexInOrder(id);
+
+        // Переиндексируем и переносим на новое место; сдвигается только участок между
+        // старым и новым местом, поэтому правка без смены порядка не зависит от размера списка
+        List<String> words = SearchIndex.words(person.key());
+        searchIndex.update(id, SearchIndex.words(before), words);
+        keys[id] = sort.isEmpty() ? null : keyOf(person, sort);
+        if (orderPos >= 0) {
+            move(order, orderSize, orderPos, (a, b) -> compare(keys, sort, a, b));
+        } else if (order != null) {
+            insertIntoOrder(id);
+        }
+        int newPos = -1;
+        boolean visible = isVisible(person, words);
+        if (oldPos >= 0 && visible) {
+            newPos = move(items, size, oldPos, this::compareIds);
+        } else if (oldPos >= 0) {
+            removeItem(oldPos);
+        } else if (visible) {
+            newPos = -indexOfItem(id) - 1;
+            insertItem(newPos, id);
+        }
+
+        // Строка, оставшаяся видимой, не удаляется и не добавляется заново: таблица
+        // перерисовывает только ее (или сдвинутый участок), а выделение остается на контакте
+        if (oldPos >= 0 && newPos >= 0) {
+            if (oldPos == newPos) {
+                nextUpdate(newPos);
+            } else if (!updatingGroup) {
+                nextMove(oldPos, newPos);
+            } else {
+                // Несколько перестановок в одном событии ListChangeBuilder складывать не умеет
+                nextRemove(oldPos, person);
+                nextAdd(newPos, newPos + 1);
+            }
+        } else if (oldPos >= 0) {
+            nextRemove(oldPos, person);
+        } else if (newPos >= 0) {
+            nextAdd(newPos, newPos + 1);
+        }
+        endChange();
+    }
+
+    // Перенос строки с from на to как перестановка участка между ними
+    private void nextMove(int from, int to) {
+        int low = Math.min(from, to);
+        int high = Math.max(from, to);
+        int[] permutation = new int[high - low + 1];
+        for (int i = low; i <= high; i++) {
+            permutation[i - low] = i == from ? to : from < to ? i - 1 : i + 1;
+        }
+        nextPermutation(low, high + 1, permutation);
+    }
+
+    /**
+     * Обновление положения группы контактов после изменения их полей одним событием
+     *
+     * @param before значения полей до изменения, в том же порядке
+     */
+    public void updated(List<Person> persons, List<Person.Key> before) {
+        if (persons.size() <= BULK_CHANGE_THRESHOLD) {
+            beginChange();
+            updatingGroup = true;
+            try {
+                for (int i = 0; i < persons.size(); i++) {
+                    updated(persons.get(i), before.get(i));
+                }
+            } finally {
+                updatingGroup = false;
+            }
+            endChange();
+            return;
+        }
+        version++;
+        BitSet changed = new BitSet(nextId);
+        for (int i = 0; i < persons.size(); i++) {
+            Person person = persons.get(i);
+            Integer id = ids.get(person);
+            if (id == null) {
+                continue;
+            }
+            searchIndex.update(id, SearchIndex.words(before.get(i)), SearchIndex.words(person.key()));
+            if (!sort.isEmpty()) {
+                keys[id] = keyOf(person, sort);
+            }
+            changed.set(id);
+        }
+        if (order != null) {
+            // Измененные убираем из порядка и вливаем заново по новым ключам
+            int kept = 0;
+            for (int i = 0; i < orderSize; i++) {
+                if (!changed.get(order[i])) {
+                    order[kept++] = order[i];
+                }
+            }
+            orderSize = kept;
+            mergeIntoOrder(changed.stream().toArray());
+        }
+        rebuild();
+    }
+
+    // Виден ли контакт при текущих запросе и условии; words — слова его полей
+    private boolean isVisible(Person person, List<String> words) {
+        return (query == null || SearchIndex.matches(words, query)) && (filter == null || filter.test(person));
+    }
+
+    private void sourceChanged(ListChangeListener.Change<? extends Person> change) {
+        beginChange();
+        // Групповые изменения приходят множеством мелких участков; применяем их одной пачкой.
+        // Положение в исходном списке не важно, поэтому сначала удаляем, потом добавляем
+        List<Person> removed = new ArrayList<>();
+        List<Person> added = new ArrayList<>();
+        while (change.next()) {
+            if (change.wasPermutated() || change.wasUpdated()) {
+                continue;
+            }
+            if (change.getRemovedSize() > 0 && change.getRemovedSize() == ids.size()) {
+                // Замена всего списка (setAll, clear) — проще начать заново
+                reset();
+            } else {
+                removed.addAll(change.getRemoved());
+            }
+            added.addAll(change.getAddedSubList());
+        }
+        if (!removed.isEmpty()) {
+            removePersons(removed);
+        }
+        if (!added.isEmpty()) {
+            addPersons(added);
+        }
+        endChange();
+        compactIfNeeded();
+        if (!requestedSort.isEmpty() && sort.isEmpty() && !sorting) {
+            startSort();
+        }
+    }
+
+    private void reset() {
+        if (size > 0) {
+            nextRemove(0, visibleSnapshot());
+        }
+        ids.clear();
+        searchIndex.clear();
+        byId = new Person[1024];
+        keys = new Object[1024];
+        nextId = 0;
+        order = sort.isEmpty() ? null : new int[1024];
+        orderSize = 0;
+        items = new int[1024];
+        size = 0;
+        version++;
+    }
+
+    private void addPersons(List<? extends Person> added) {
+        version++;
+        if (order != null && added.size() >= ASYNC_SORT_THRESHOLD) {
+            // Большую пачку показываем в порядке добавления и сортируем все заново в фоне
+            sort = List.of();
+            order = null;
+            Arrays.fill(keys, null);
+            rebuild();
+        }
+        int[] newIds = new int[added.size()];
+        BitSet visible = new BitSet(added.size());
+        for (int i = 0; i < newIds.length; i++) {
+            Person person = added.get(i);
+            int id = nextId++;
+            if (id == byId.length) {
+                byId = Arrays.copyOf(byId, id * 2);
+                keys = Arrays.copyOf(keys, id * 2);
+            }
+            byId[id] = person;
+            ids.put(person, id);
+            List<String> words = SearchIndex.words(person.key());
+            searchIndex.add(id, words);
+            if (!sort.isEmpty()) {
+                keys[id] = keyOf(person, sort);
+            }
+            newIds[i] = id;
+            visible.set(i, isVisible(person, words));
+        }
+
+        if (order == null) {
+            // Без сортировки новые номера — самые большие, они встают в конец
+            int from = size;
+            for (int i = 0; i < newIds.length; i++) {
+                if (visible.get(i)) {
+                    insertItem(size, newIds[i]);
+                }
+            }
+            if (size > from) {
+                nextAdd(from, size);
+            }
+        } else if (newIds.length <= BULK_CHANGE_THRESHOLD) {
+            for (int i = 0; i < newIds.length; i++) {
+                insertIntoOrder(newIds[i]);
+                if (visible.get(i)) {
+                    int pos = -indexOfItem(newIds[i]) - 1;
+                    insertItem(pos, newIds[i]);
+                    nextAdd(pos, pos + 1);
+                }
+            }
+        } else {
+            mergeIntoOrder(newIds);
+            rebuild();
+        }
+    }
+
+    /**
+     * Сортировка номеров и слияние их с общим порядком за один проход
+     */
+    private void mergeIntoOrder(int[] newIds) {
+        Integer[] sorted = IntStream.of(newIds).boxed().toArray(Integer[]::new);
+        Arrays.parallelSort(sorted, (a, b) -> compare(keys, sort, a, b));
+        int[] merged = new int[Math.max(orderSize + sorted.length, 1024)];
+        int i = 0, j = 0, k = 0;
+        while (i < orderSize || j < sorted.length) {
+            if (j == sorted.length || (i < orderSize && compare(keys, sort, order[i], sorted[j]) < 0)) {
+                merged[k++] = order[i++];
+            } else {
+                merged[k++] = sorted[j++];
+            }
+        }
+        order = merged;
+        orderSize = k;
+    }
+
+    private void removePersons(List<? extends Person> removed) {
+        version++;
+        if (removed.size() <= BULK_CHANGE_THRESHOLD) {
+            for (Person person : removed) {
+                Integer id = ids.remove(person);
+                if (id == null) {
+                    continue;
+                }
+                int pos = indexOfItem(id);
+                if (pos >= 0) {
+                    removeItem(pos);
+                    nextRemove(pos, person);
+                }
+                byId[id] = null;
+            }
+            return;
+        }
+        List<Person> before = visibleSnapshot();
+        for (Person person : removed) {
+            Integer id = ids.remove(person);
+            if (id != null) {
+                byId[id] = null;
+            }
+        }
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (byId[items[i]] != null) {
+                items[count++] = items[i];
+            }
+        }
+        size = count;
+        nextReplace(0, size, before);
+    }
+
+    /**
+     * Пересчет видимых контактов по текущим запросу и порядку.
+     * Если набор видимых контактов не изменился, сообщаем о перестановке
+     */
+    private void rebuild() {
+        BitSet matches = query == null ? null : searchIndex.find(query);
+        int[] rebuilt = new int[Math.max(size, 1024)];
+        int count = 0;
+        int limit = order == null ? nextId : orderSize;
+        for (int i = 0; i < limit; i++) {
+            int id = order == null ? i : order[i];
+            if (byId[id] != null && (matches == null || matches.get(id)) && (filter == null || filter.test(byId[id]))) {
+                if (count == rebuilt.length) {
+                    rebuilt = Arrays.copyOf(rebuilt, count * 2);
+                }
+                rebuilt[count++] = id;
+            }
+        }
+
+        beginChange();
+        if (count == size && sameIds(rebuilt, count)) {
+            if (count > 0) {
+                int[] newPos = new int[nextId];
+                for (int i = 0; i < count; i++) {
+                    newPos[rebuilt[i]] = i;
+                }
+                int[] permutation = new int[count];
+                for (int i = 0; i < count; i++) {
+                    permutation[i] = newPos[items[i]];
+                }
+                items = rebuilt;
+                nextPermutation(0, count, permutation);
+            }
+        } else {
+            List<Person> before = visibleSnapshot();
+            items = rebuilt;
+            size = count;
+            nextReplace(0, size, before);
+        }
+        endChange();
+    }
+
+    private boolean sameIds(int[] rebuilt, int count) {
+        BitSet current = new BitSet(nextId);
+        for (int i = 0; i < size; i++) {
+            current.set(items[i]);
+        }
+        for (int i = 0; i < count; i++) {
+            if (!current.get(rebuilt[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Сортировка всех контактов по запрошенным колонкам.
+     * Большие списки сортируются в фоновом потоке по снимку; если за это время
+     * список изменился, сортировка повторяется
+     */
+    private void startSort() {
+        List<SortColumn> columns = requestedSort;
+        boolean sameKeys = sameKeyFunctions(columns, sort);
+        Person[] snapshot = Arrays.copyOf(byId, nextId);
+        Object[] cachedKeys = sameKeys ? Arrays.copyOf(keys, nextId) : new Object[nextId];
+        // Значения полей контактов без ключа снимаем здесь: в фоне сами контакты читать нельзя,
+        // поток JavaFX создает в них свойства, когда ячейки и карточка привязываются к полям
+        Person.Key[] values = new Person.Key[nextId];
+        for (int id = 0; id < nextId; id++) {
+            if (snapshot[id] != null && cachedKeys[id] == null) {
+                values[id] = snapshot[id].key();
+            }
+        }
+        long startVersion = version;
+
+        if (ids.size() < ASYNC_SORT_THRESHOLD) {
+            applySort(columns, computeOrder(snapshot, values, cachedKeys, columns));
+            return;
+        }
+        sorting = true;
+        CompletableFuture.supplyAsync(() -> computeOrder(snapshot, values, cachedKeys, columns))
+                .whenComplete((sortedIds, error) -> Platform.runLater(() -> {
+                    sorting = false;
+                    if (error != null) {
+                        LOGGER.log(Level.SEVERE, "Could not sort contacts", error);
+                        if (columns.equals(requestedSort)) {
+                            // Остается прежний порядок; повторный запрос этой сортировки начнет ее заново
+                            requestedSort = sort;
+                            return;
+                        }
+                    } else if (version == startVersion && columns.equals(requestedSort)) {
+                        applySort(columns, sortedIds);
+                        return;
+                    }
+                    // Пока шла сортировка, изменились данные или порядок — сортируем заново
+                    if (!requestedSort.isEmpty()) {
+                        startSort();
+                    }
+                }));
+    }
+
+    private void applySort(List<SortColumn> columns, SortResult result) {
+        sort = columns;
+        keys = Arrays.copyOf(result.keys, byId.length);
+        order = Arrays.copyOf(result.order, Math.max(result.order.length, 1024));
+        orderSize = result.order.length;
+        version++;
+        rebuild();
+    }
+
+    private record SortResult(Object[] keys, int[] order) {
+    }
+
+    /**
+     * @param persons снимок контактов по номерам; сами контакты здесь не читаются
+     * @param values  значения полей контактов, для которых ключа еще нет
+     */
+    private static SortResult computeOrder(Person[] persons, Person.Key[] values, Object[] keys,
+                                           List<SortColumn> columns) {
+        // Ключи вычисляются параллельно по отдельным копиям, которые видит только этот поток
+        IntStream.range(0, persons.length).parallel().forEach(id -> {
+            Person.Key value = values[id];
+            if (value != null) {
+                keys[id] = keyOf(new Person(value.firstName(), value.lastName(), value.street(),
+                        value.city(), value.postalCode(), value.birthday()), columns);
+            }
+        });
+        Integer[] live = IntStream.range(0, persons.length)
+                .filter(id -> persons[id] != null)
+                .boxed()
+                .toArray(Integer[]::new);
+        Arrays.parallelSort(live, (a, b) -> compare(keys, columns, a, b));
+        return new SortResult(keys, Arrays.stream(live).mapToInt(Integer::intValue).toArray());
+    }
+
+    private static boolean sameKeyFunctions(List<SortColumn> a, List<SortColumn> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i).key() != b.get(i).key()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Ключ контакта: одно значение для одной колонки, массив — для нескольких
+     */
+    private static Object keyOf(Person person, List<SortColumn> columns) {
+        if (columns.size() == 1) {
+            return columns.get(0).key().apply(person);
+        }
+        Object[] parts = new Object[columns.size()];
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = columns.get(i).key().apply(person);
+        }
+        return parts;
+    }
+
+    /**
+     * Сравнение контактов по ключам; при равенстве — по номеру, чтобы порядок был полным
+     */
+    @SuppressWarnings("unchecked")
+    private static int compare(Object[] keys, List<SortColumn> columns, int a, int b) {
+        for (int i = 0; i < columns.size(); i++) {
+            Object ka = columns.size() == 1 ? keys[a] : ((Object[]) keys[a])[i];
+            Object kb = columns.size() == 1 ? keys[b] : ((Object[]) keys[b])[i];
+            int result;
+            if (ka == null || kb == null) {
+                // Пустые значения всегда в конце
+                result = ka == kb ? 0 : ka == null ? 1 : -1;
+            } else {
+                result = ((Comparable<Object>) ka).compareTo(kb);
+                if (!columns.get(i).ascending()) {
+                    result = -result;
+                }
+            }
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(a, b);
+    }
+
+    private int compareIds(int a, int b) {
+        return order == null ? Integer.compare(a, b) : compare(keys, sort, a, b);
+    }
+
+    /**
+     * Позиция номера среди видимых или (-(точка вставки) - 1), если его там нет
+     */
+    private int indexOfItem(int id) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareIds(items[mid], id);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void insertItem(int pos, int id) {
+        if (size == items.length) {
+            items = Arrays.copyOf(items, size * 2);
+        }
+        System.arraycopy(items, pos, items, pos + 1, size - pos);
+        items[pos] = id;
+        size++;
+    }
+
+    private void removeItem(int pos) {
+        System.arraycopy(items, pos + 1, items, pos, size - pos - 1);
+        size--;
+    }
+
+    /**
+     * Перенос элемента с места from на место по его новому ключу в упорядоченном массиве;
+     * возвращает новое место
+     */
+    private static int move(int[] array, int length, int from, IntBinaryOperator comparator) {
+        int id = array[from];
+        int to = from;
+        if (from > 0 && comparator.applyAsInt(array[from - 1], id) > 0) {
+            // Влево: первый из предыдущих, который больше
+            int low = 0;
+            int high = from - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (comparator.applyAsInt(array[mid], id) > 0) {
+                    high = mid - 1;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            to = low;
+            System.arraycopy(array, to, array, to + 1, from - to);
+        } else if (from < length - 1 && comparator.applyAsInt(array[from + 1], id) < 0) {
+            // Вправо: последний из следующих, который меньше
+            int low = from + 1;
+            int high = length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (comparator.applyAsInt(array[mid], id) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            to = high;
+            System.arraycopy(array, from + 1, array, from, to - from);
+        }
+        array[to] = id;
+        return to;
+    }
+
+    /**
+     * Место номера в общем порядке или -1
+     */
+    private int indexInOrder(int id) {
+        int low = 0;
+        int high = orderSize - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(keys, sort, order[mid], id);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private void insertIntoOrder(int id) {
+        int low = 0;
+        int high = orderSize - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (compare(keys, sort, order[mid], id) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (orderSize == order.length) {
+            order = Arrays.copyOf(order, orderSize * 2);
+        }
+        System.arraycopy(order, low, order, low + 1, orderSize - low);
+        order[low] = id;
+        orderSize++;
+    }
+
+    private List<Person> visibleSnapshot() {
+        List<Person> snapshot = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            snapshot.add(byId[items[i]]);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Перенумерация контактов, когда удаленных номеров становится больше, чем живых.
+     * Порядок номеров сохраняется, поэтому видимый список не меняется
+     */
+    private void compactIfNeeded() {
+        int dead = nextId - ids.size();
+        if (nextId < 1024 || dead < ids.size()) {
+            return;
+        }
+        int[] oldToNew = new int[nextId];
+        Person[] newById = new Person[Math.max(ids.size() * 2, 1024)];
+        Object[] newKeys = new Object[newById.length];
+        int count = 0;
+        for (int id = 0; id < nextId; id++) {
+            if (byId[id] != null) {
+                oldToNew[id] = count;
+                newById[count] = byId[id];
+                newKeys[count] = keys[id];
+                ids.put(byId[id], count);
+                count++;
+            } else {
+                oldToNew[id] = -1;
+            }
+        }
+        searchIndex.remap(oldToNew);
+        for (int i = 0; i < size; i++) {
+            items[i] = oldToNew[items[i]];
+        }
+        if (order != null) {
+            int live = 0;
+            for (int i = 0; i < orderSize; i++) {
+                if (oldToNew[order[i]] >= 0) {
+                    order[live++] = oldToNew[order[i]];
+                }
+            }
+            orderSize = live;
+        }
+        byId = newById;
+        keys = newKeys;
+        nextId = count;
+        version++;
+    }
+}
@@ -0,0 +1,31 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Событие Java Flight Recorder для операций с данными (открытие, сохранение, импорт,
+ * поиск и т.д.). Длительность записывается самим событием.
+ * <p>
+ * Запись включается параметром JVM, например
+ * {@code -XX:StartFlightRecording:filename=address-app.jfr}; без записи событие почти ничего не стоит.
+ */
+@Name("addressapp.DataOperation")
+@Label("Data Operation")
+@Category("Address App")
+@Description("Operation on the address book data")
+@StackTrace(false)
+public class DataOperationEvent extends Event {
+    @Label("Operation")
+    public String operation;
+
+    @Label("Records")
+    public long records;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+}
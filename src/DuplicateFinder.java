@@ -0,0 +1,368 @@
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Поиск похожих контактов (нечетких дубликатов) во всей книге.
+ * <p>
+ * Контакты делятся на блоки по индексу и городу; сравниваются только контакты одного блока.
+ * Внутри блока используется метод сортированного окна: контакты сортируются по имени
+ * и отдельно по улице, каждый сравнивается с {@link #WINDOW} соседями в каждом порядке.
+ * Пара считается похожей, если взвешенное сходство Джаро — Винклера полей имени, улицы
+ * и даты рождения не меньше порога. Похожие пары объединяются в группы.
+ * <p>
+ * Блоки обрабатываются параллельно в пуле ForkJoin. Работает со снимком значений полей,
+ * поэтому может выполняться в любом потоке.
+ */
+public final class DuplicateFinder {
+    public static final double DEFAULT_THRESHOLD = 0.92;
+
+    // Сколько соседей в отсортированном блоке сравнивается с каждым контактом
+    private static final int WINDOW = 8;
+
+    // Блоков на одну подзадачу ForkJoin
+    private static final int BLOCKS_PER_TASK = 64;
+
+    // Веса полей в общей оценке сходства
+    private static final double LAST_NAME_WEIGHT = 0.35;
+    private static final double FIRST_NAME_WEIGHT = 0.25;
+    private static final double STREET_WEIGHT = 0.30;
+    private static final double BIRTHDAY_WEIGHT = 0.10;
+
+    /**
+     * Группа похожих контактов
+     *
+     * @param members номера контактов в снимке, по возрастанию
+     * @param score   наименьшее сходство среди пар, объединивших группу
+     */
+    public record Cluster(int[] members, double score) {
+    }
+
+    private DuplicateFinder() {
+    }
+
+    /**
+     * Поиск групп похожих контактов
+     *
+     * @param keys     снимок значений полей контактов
+     * @param progress получает число обработанных блоков и общее число блоков
+     */
+    public static List<Cluster> find(List<Person.Key> keys, double threshold, ForkJoinPool pool,
+                                     Progress progress) {
+        // Нормализованные поля: без регистра, только буквы и цифры
+        int n = keys.size();
+        String[] lastNames = new String[n];
+        String[] firstNames = new String[n];
+        String[] streets = new String[n];
+        String[] birthdays = new String[n];
+        Map<String, List<Integer>> blockMap = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            Person.Key key = keys.get(i);
+            lastNames[i] = normalize(key.lastName());
+            firstNames[i] = normalize(key.firstName());
+            streets[i] = normalize(key.street());
+            birthdays[i] = normalize(key.birthday());
+            String block = normalize(key.postalCode()) + '\u0000' + normalize(key.city());
+            blockMap.computeIfAbsent(block, b -> new ArrayList<>(2)).add(i);
+        }
+        int[][] blocks = blockMap.values().stream()
+                .filter(block -> block.size() > 1)
+                .map(block -> block.stream().mapToInt(Integer::intValue).toArray())
+                .toArray(int[][]::new);
+        blockMap.clear();
+
+        Fields fields = new Fields(lastNames, firstNames, streets, birthdays, threshold);
+        AtomicInteger done = new AtomicInteger();
+        IntConsumer finished = count -> progress.update(done.addAndGet(count), blocks.length);
+        PairList pairs = pool.invoke(new BlockTask(blocks, 0, blocks.length, fields, finished));
+        return clusters(n, pairs);
+    }
+
+    /**
+     * Получатель сведений о прогрессе; вызывается из рабочих потоков
+     */
+    @FunctionalInterface
+    public interface Progress {
+        void update(int blocksDone, int blocksTotal);
+    }
+
+    private record Fields(String[] lastNames, String[] firstNames, String[] streets, String[] birthdays,
+                          double threshold) {
+    }
+
+    /**
+     * Подзадача ForkJoin: диапазон блоков делится пополам, пока он больше {@link #BLOCKS_PER_TASK}
+     */
+    private static final class BlockTask extends RecursiveTask<PairList> {
+        // Задачи ForkJoin сериализуемы, но эти никогда не сериализуются
+        @Serial
+        private static final long serialVersionUID = 1L;
+        private final int[][] blocks;
+        private final int from;
+        private final int to;
+        private final transient Fields fields;
+        private final transient IntConsumer finished;
+
+        BlockTask(int[][] blocks, int from, int to, Fields fields, IntConsumer finished) {
+            this.blocks = blocks;
+            this.from = from;
+            this.to = to;
+            this.fields = fields;
+            this.finished = finished;
+        }
+
+        @Override
+        protected PairList compute() {
+            if (to - from > BLOCKS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                BlockTask left = new BlockTask(blocks, from, middle, fields, finished);
+                left.fork();
+                PairList right = new BlockTask(blocks, middle, to, fields, finished).compute();
+                return left.join().append(right);
+            }
+            PairList pairs = new PairList();
+            for (int b = from; b < to; b++) {
+                compareBlock(blocks[b], fields, pairs);
+            }
+            finished.accept(to - from);
+            return pairs;
+        }
+    }
+
+    private static void compareBlock(int[] block, Fields fields, PairList pairs) {
+        if (block.length <= WINDOW + 1) {
+            // Маленький блок — сравниваем все пары
+            for (int i = 0; i < block.length; i++) {
+                for (int j = i + 1; j < block.length; j++) {
+                    compare(block[i], block[j], fields, pairs);
+                }
+            }
+            return;
+        }
+        Integer[] order = Arrays.stream(block).boxed().toArray(Integer[]::new);
+        Arrays.sort(order, Comparator.<Integer, String>comparing(i -> fields.lastNames()[i])
+                .thenComparing(i -> fields.firstNames()[i]));
+        compareWindow(order, fields, pairs);
+        Arrays.sort(order, Comparator.comparing(i -> fields.streets()[i]));
+        compareWindow(order, fields, pairs);
+    }
+
+    private static void compareWindow(Integer[] order, Fields fields, PairList pairs) {
+        for (int i = 0; i < order.length; i++) {
+            for (int j = i + 1; j < Math.min(order.length, i + 1 + WINDOW); j++) {
+                compare(order[i], order[j], fields, pairs);
+            }
+        }
+    }
+
+    private static void compare(int a, int b, Fields fields, PairList pairs) {
+        double score = score(a, b, fields);
+        if (score >= fields.threshold()) {
+            pairs.add(Math.min(a, b), Math.max(a, b), score);
+        }
+    }
+
+    private static double score(int a, int b, Fields f) {
+        double score = LAST_NAME_WEIGHT * jaroWinkler(f.lastNames()[a], f.lastNames()[b]);
+        // Ранний выход: даже при полном совпадении остальных полей порог недостижим
+        if (score + (1 - LAST_NAME_WEIGHT) < f.threshold()) {
+            return 0;
+        }
+        score += FIRST_NAME_WEIGHT * jaroWinkler(f.firstNames()[a], f.firstNames()[b]);
+        if (score + STREET_WEIGHT + BIRTHDAY_WEIGHT < f.threshold()) {
+            return 0;
+        }
+        score += STREET_WEIGHT * jaroWinkler(f.streets()[a], f.streets()[b]);
+        score += BIRTHDAY_WEIGHT * (f.birthdays()[a].equals(f.birthdays()[b]) ? 1 : 0);
+        return score;
+    }
+
+    /**
+     * Сходство Джаро — Винклера (1 — строки совпадают, 0 — ничего общего)
+     */
+    static double jaroWinkler(String s, String t) {
+        if (s.equals(t)) {
+            return 1;
+        }
+        if (s.isEmpty() || t.isEmpty()) {
+            return 0;
+        }
+        if (s.length() > Long.SIZE || t.length() > Long.SIZE) {
+            return jaroWinklerLong(s, t);
+        }
+        // Совпавшие позиции отмечаем битами, без выделения памяти
+        int range = Math.max(0, Math.max(s.length(), t.length()) / 2 - 1);
+        long sMatched = 0;
+        long tMatched = 0;
+        int matches = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            int end = Math.min(t.length(), i + range + 1);
+            for (int j = Math.max(0, i - range); j < end; j++) {
+                if ((tMatched & 1L << j) == 0 && c == t.charAt(j)) {
+                    sMatched |= 1L << i;
+                    tMatched |= 1L << j;
+                    matches++;
+                    break;
+                }
+            }
+        }
+        if (matches == 0) {
+            return 0;
+        }
+        int transpositions = 0;
+        for (int i = 0, j = 0; i < s.length(); i++) {
+            if ((sMatched & 1L << i) != 0) {
+                while ((tMatched & 1L << j) == 0) {
+                    j++;
+                }
+                if (s.charAt(i) != t.charAt(j)) {
+                    transpositions++;
+                }
+                j++;
+            }
+        }
+        return winkler(s, t, matches, transpositions);
+    }
+
+    private static double jaroWinklerLong(String s, String t) {
+        int range = Math.max(0, Math.max(s.length(), t.length()) / 2 - 1);
+        boolean[] sMatched = new boolean[s.length()];
+        boolean[] tMatched = new boolean[t.length()];
+        int matches = 0;
+        for (int i = 0; i < s.length(); i++) {
+            int end = Math.min(t.length(), i + range + 1);
+            for (int j = Math.max(0, i - range); j < end; j++) {
+                if (!tMatched[j] && s.charAt(i) == t.charAt(j)) {
+                    sMatched[i] = true;
+                    tMatched[j] = true;
+                    matches++;
+                    break;
+                }
+            }
+        }
+        if (matches == 0) {
+            return 0;
+        }
+        int transpositions = 0;
+        for (int i = 0, j = 0; i < s.length(); i++) {
+            if (sMatched[i]) {
+                while (!tMatched[j]) {
+                    j++;
+                }
+                if (s.charAt(i) != t.charAt(j)) {
+                    transpositions++;
+                }
+                j++;
+            }
+        }
+        return winkler(s, t, matches, transpositions);
+    }
+
+    private static double winkler(String s, String t, int matches, int transpositions) {
+        double m = matches;
+        double jaro = (m / s.length() + m / t.length() + (m - transpositions / 2.0) / m) / 3;
+        int prefix = 0;
+        while (prefix < Math.min(4, Math.min(s.length(), t.length())) && s.charAt(prefix) == t.charAt(prefix)) {
+            prefix++;
+        }
+        return jaro + prefix * 0.1 * (1 - jaro);
+    }
+
+    private static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder result = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                result.append(Character.toLowerCase(c));
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Объединение похожих пар в группы (система непересекающихся множеств)
+     */
+    private static List<Cluster> clusters(int n, PairList pairs) {
+        int[] parent = new int[n];
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+        }
+        for (int p = 0; p < pairs.size; p++) {
+            int a = root(parent, pairs.first[p]);
+            int b = root(parent, pairs.second[p]);
+            if (a != b) {
+                parent[Math.max(a, b)] = Math.min(a, b);
+            }
+        }
+
+        Map<Integer, List<Integer>> groups = new HashMap<>();
+        Map<Integer, Double> scores = new HashMap<>();
+        for (int p = 0; p < pairs.size; p++) {
+            int root = root(parent, pairs.first[p]);
+            scores.merge(root, pairs.scores[p], Math::min);
+        }
+        for (int root : scores.keySet()) {
+            groups.put(root, new ArrayList<>());
+        }
+        for (int i = 0; i < n; i++) {
+            List<Integer> group = groups.get(root(parent, i));
+            if (group != null) {
+                group.add(i);
+            }
+        }
+        List<Cluster> clusters = new ArrayList<>(groups.size());
+        groups.forEach((root, members) -> clusters.add(new Cluster(
+                members.stream().mapToInt(Integer::intValue).toArray(), scores.get(root))));
+        clusters.sort(Comparator.comparingInt(cluster -> cluster.members()[0]));
+        return clusters;
+    }
+
+    private static int root(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * Растущий список пар номеров с оценками
+     */
+    private static final class PairList {
+        int[] first = new int[16];
+        int[] second = new int[16];
+        double[] scores = new double[16];
+        int size;
+
+        void add(int a, int b, double score) {
+            if (size == first.length) {
+                first = Arrays.copyOf(first, size * 2);
+                second = Arrays.copyOf(second, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            first[size] = a;
+            second[size] = b;
+            scores[size] = score;
+            size++;
+        }
+
+        PairList append(PairList other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.first[i], other.second[i], other.scores[i]);
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+import javafx.concurrent.Task;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Фоновый поиск похожих контактов во всей книге.
+ * Снимок контактов и значений их полей делается в потоке JavaFX при создании задачи;
+ * сравнение блоков выполняется параллельно в общем пуле ForkJoin.
+ */
+public class DuplicateSearchTask extends Task<List<DuplicateFinder.Cluster>> {
+    private final List<Person> persons;
+    private final List<Person.Key> keys;
+
+    /**
+     * Создается в потоке JavaFX
+     */
+    public DuplicateSearchTask(List<Person> persons) {
+        this.persons = List.copyOf(persons);
+        this.keys = new ArrayList<>(this.persons.size());
+        for (Person person : this.persons) {
+            keys.add(person.key());
+        }
+        updateTitle("Finding duplicates");
+    }
+
+    /**
+     * Контакты снимка; номера в {@link DuplicateFinder.Cluster#members()} указывают на них
+     */
+    public List<Person> getPersons() {
+        return persons;
+    }
+
+    /**
+     * Значения полей контактов на момент снимка
+     */
+    public List<Person.Key> getKeys() {
+        return keys;
+    }
+
+    @Override
+    protected List<DuplicateFinder.Cluster> call() {
+        long start = System.nanoTime();
+        List<DuplicateFinder.Cluster> clusters = DuplicateFinder.find(keys, DuplicateFinder.DEFAULT_THRESHOLD,
+                ForkJoinPool.commonPool(), (done, total) -> {
+                    if (isCancelled()) {
+                        throw new CancellationException();
+                    }
+                    updateProgress(done, total);
+                    updateMessage(String.format("Finding duplicates: %,d of %,d blocks", done, total));
+                });
+        updateMessage(String.format("Found %,d groups of similar contacts among %,d in %.1f s",
+                clusters.size(), keys.size(), (System.nanoTime() - start) / 1e9));
+        return clusters;
+    }
+}
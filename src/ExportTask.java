@@ -0,0 +1,133 @@
+import javafx.application.Platform;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Фоновый экспорт текущего представления (с учетом поиска и сортировки) в CSV или JSON.
+ * <p>
+ * Полную копию списка не делаем: значения полей забираются из потока JavaFX
+ * страницами по {@link #PAGE_SIZE} контактов и сразу пишутся в канал,
+ * поэтому расход памяти не зависит от размера книги.
+ * Если представление изменилось во время экспорта, экспорт прерывается с ошибкой,
+ * чтобы в файл не попала смесь старого и нового состояния.
+ * Пишет во временный файл и атомарно заменяет им целевой.
+ */
+public class ExportTask extends Task<Long> {
+    private static final int PAGE_SIZE = 5_000;
+
+    private final File file;
+    private final ObservableList<Person> view;
+    private final int total;
+
+    // Используется только в потоке JavaFX
+    private boolean changed;
+    private final ListChangeListener<Person> changeListener = change -> changed = true;
+
+    /**
+     * Создается в потоке JavaFX
+     *
+     * @param view экспортируемое представление
+     */
+    public ExportTask(File file, ObservableList<Person> view) {
+        this.file = file;
+        this.view = view;
+        this.total = view.size();
+        view.addListener(changeListener);
+        updateTitle("Exporting " + file.getName());
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    protected Long call() throws Exception {
+        Metrics.Operation operation = Metrics.begin(Metrics.EXPORT);
+        Path target = file.toPath().toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+        try {
+            long size;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ContactExport.RecordWriter writer = new ContactExport.RecordWriter(
+                        channel, ContactExport.format(target));
+                for (int from = 0; from < total; from += PAGE_SIZE) {
+                    if (isCancelled()) {
+                        throw new InterruptedIOException("Export cancelled");
+                    }
+                    for (Person.Key key : page(from, Math.min(from + PAGE_SIZE, total))) {
+                        writer.write(key);
+                    }
+                    updateProgress(writer.records(), total);
+                    updateMessage(String.format("Exporting: %,d of %,d records, %,d KB",
+                            writer.records(), total, writer.position() / 1024));
+                }
+                writer.finish();
+                size = writer.position();
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            operation.end(total, size);
+            updateProgress(1, 1);
+            updateMessage(String.format("Exported %,d records (%,d KB)", (long) total, size / 1024));
+            return (long) total;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Слушатель снимается при любом завершении, в том числе при отмене до запуска call();
+    // эти методы вызываются в потоке JavaFX
+
+    @Override
+    protected void succeeded() {
+        view.removeListener(changeListener);
+    }
+
+    @Override
+    protected void failed() {
+        view.removeListener(changeListener);
+    }
+
+    @Override
+    protected void cancelled() {
+        view.removeListener(changeListener);
+    }
+
+    /**
+     * Значения полей контактов [from, to) представления; читаются в потоке JavaFX
+     */
+    private List<Person.Key> page(int from, int to) throws IOException, InterruptedException {
+        FutureTask<List<Person.Key>> page = new FutureTask<>(() -> {
+            if (changed) {
+                throw new IOException("Contacts changed during export, please export again");
+            }
+            List<Person.Key> keys = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                keys.add(view.get(i).key());
+            }
+            return keys;
+        });
+        Platform.runLater(page);
+        try {
+            return page.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+}
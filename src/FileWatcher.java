@@ -0,0 +1,163 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Serial;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Наблюдение за открытой адресной книгой: замечает, что файл или его журнал
+ * изменила другая программа.
+ * <p>
+ * Помнит состояние файла ({@link SessionCache#state}), с которым совпадают данные в памяти
+ * без учета несохраненных изменений. Собственные сохранения сообщают новое состояние через
+ * {@link #markSynced} под блокировкой {@link AddressBookLock}, поэтому их события
+ * не считаются внешними. Перед записью {@link #checkUnchanged} проверяет, что файл
+ * не изменили с тех пор, — иначе сохранение молча затерло бы чужие изменения.
+ * <p>
+ * События {@link WatchService} приходят на весь каталог и пачками (замена файла — это
+ * создание, запись и переименование), поэтому об изменении сообщается после паузы
+ * в {@value #QUIET_MILLIS} мс без новых событий и только если состояние файла
+ * действительно отличается от известного.
+ */
+public class FileWatcher implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(FileWatcher.class.getName());
+
+    private static final long QUIET_MILLIS = 250;
+
+    /**
+     * Файл изменили извне после того, как его прочитали или записали здесь
+     */
+    public static class ChangedOnDiskException extends IOException {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        public ChangedOnDiskException(Path file) {
+            super(file.getFileName() + " was changed by another program");
+        }
+    }
+
+    private final Path file;
+    private final Path journal;
+    private final WatchService service;
+    private final Runnable onChange;
+    private volatile String knownState;
+
+    /**
+     * @param state    состояние файла, с которым совпадают данные в памяти
+     * @param onChange вызывается из потока наблюдения, когда файл изменился извне
+     */
+    public FileWatcher(Path file, String state, Runnable onChange) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.journal = AddressBookJournal.journalPath(this.file);
+        this.knownState = state;
+        this.onChange = onChange;
+        service = this.file.getFileSystem().newWatchService();
+        try {
+            this.file.getParent().register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            service.close();
+            throw e;
+        }
+        Thread thread = new Thread(this::run, "address-app-watch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Наблюдается ли этот файл
+     */
+    public boolean watches(Path path) {
+        return file.equals(path.toAbsolutePath());
+    }
+
+    /**
+     * Текущее состояние файла; null, если файла нет
+     */
+    public String state() throws IOException {
+        try {
+            return SessionCache.state(file);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Данные в памяти (без несохраненных изменений) совпадают с файлом в этом состоянии
+     */
+    public void markSynced(String state) {
+        knownState = state;
+    }
+
+    /**
+     * Изменился ли файл с тех пор, как его прочитали или записали здесь
+     */
+    public boolean isChanged() {
+        try {
+            return !Objects.equals(state(), knownState);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not check " + file, e);
+            return false;
+        }
+    }
+
+    /**
+     * Проверка перед записью; вызывается под исключительной блокировкой файла
+     *
+     * @throws ChangedOnDiskException если файл изменили извне
+     */
+    public void checkUnchanged() throws IOException {
+        if (!Objects.equals(state(), knownState)) {
+            throw new ChangedOnDiskException(file);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Поток наблюдения завершается, получив ClosedWatchServiceException
+        service.close();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                boolean relevant = collect(service.take());
+                // Дожидаемся конца пачки событий
+                WatchKey next;
+                while ((next = service.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    relevant |= collect(next);
+                }
+                if (relevant && isChanged()) {
+                    onChange.run();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Наблюдение закрыто
+        }
+    }
+
+    // Касаются ли события самого файла или его журнала
+    private boolean collect(WatchKey key) {
+        boolean relevant = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // События потеряны — состояние проверим целиком
+                relevant = true;
+            } else if (event.context() instanceof Path name
+                    && (name.equals(file.getFileName()) || name.equals(journal.getFileName()))) {
+                relevant = true;
+            }
+        }
+        key.reset();
+        return relevant;
+    }
+}
@@ -0,0 +1,242 @@
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Число контактов в каждой группе: по городу или по началу почтового индекса.
+ * <p>
+ * Счетчики хранятся в хэш-таблице по названию группы и меняются на единицу при каждом
+ * добавлении, удалении или изменении контакта, поэтому изменение стоит O(1) при любом
+ * размере книги. Список групп для панели упорядочен по названию; он меняется, только
+ * когда группа появляется или пустеет. Добавления и удаления отслеживаются через
+ * слушатель списка, о редактировании контакта сообщается вызовом {@link #updated}.
+ */
+public class GroupCounts implements ListChangeListener<Person> {
+    // Начиная с этого числа появившихся и опустевших групп список строится заново
+    private static final int BULK_CHANGE_THRESHOLD = 64;
+
+    // Длина начала почтового индекса: район доставки
+    private static final int POSTAL_PREFIX_LENGTH = 3;
+
+    /**
+     * Признак, по которому контакты делятся на группы; у пустого значения своя группа ""
+     */
+    public enum Grouping {
+        CITY("City") {
+            @Override
+            String of(String city, String postalCode) {
+                return city == null ? "" : city.strip();
+            }
+        },
+        POSTAL_PREFIX("Postal Code Prefix") {
+            @Override
+            String of(String city, String postalCode) {
+                if (postalCode == null) {
+                    return "";
+                }
+                String value = postalCode.strip().toUpperCase(Locale.ROOT);
+                return value.length() <= POSTAL_PREFIX_LENGTH ? value : value.substring(0, POSTAL_PREFIX_LENGTH);
+            }
+        };
+
+        private final String label;
+
+        Grouping(String label) {
+            this.label = label;
+        }
+
+        abstract String of(String city, String postalCode);
+
+        public String of(Person person) {
+            return of(person.getCity(), person.getPostalCode());
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    /**
+     * Группа и число контактов в ней; число меняется на месте, без замены элемента списка
+     */
+    public static final class Group {
+        private final String name;
+        private final ReadOnlyIntegerWrapper count = new ReadOnlyIntegerWrapper(this, "count");
+        // Показана ли группа в списке
+        private boolean listed;
+
+        private Group(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getCount() {
+            return count.get();
+        }
+
+        public ReadOnlyIntegerProperty countProperty() {
+            return count.getReadOnlyProperty();
+        }
+    }
+
+    private final Grouping grouping;
+    private final Map<String, Group> byName = new HashMap<>();
+    private int total;
+    private final ObservableList<Group> groups = FXCollections.observableArrayList();
+    private final ObservableList<Group> readOnlyGroups = FXCollections.unmodifiableObservableList(groups);
+
+    private final Collator collator = Collator.getInstance();
+    private final Comparator<Group> order = (a, b) -> {
+        int result = collator.compare(a.name, b.name);
+        return result != 0 ? result : a.name.compareTo(b.name);
+    };
+
+    // Группы, которые появились или опустели за текущее изменение; опустевшая группа
+    // остается в таблице до конца изменения, чтобы контакт мог в нее вернуться
+    private final List<Group> created = new ArrayList<>();
+    private final List<Group> emptied = new ArrayList<>();
+
+    public GroupCounts(ObservableList<Person> persons, Grouping grouping) {
+        this.grouping = grouping;
+        for (Person person : persons) {
+            increment(grouping.of(person));
+        }
+        publish();
+        persons.addListener(this);
+    }
+
+    public Grouping grouping() {
+        return grouping;
+    }
+
+    /**
+     * Непустые группы по названию
+     */
+    public ObservableList<Group> groups() {
+        return readOnlyGroups;
+    }
+
+    /**
+     * Условие для {@link ContactView#filter}: контакт входит в группу
+     */
+    public Predicate<Person> filter(Group group) {
+        String name = group.getName();
+        return person -> grouping.of(person).equals(name);
+    }
+
+    /**
+     * Перенос контактов между группами после изменения их полей
+     *
+     * @param before значения полей до изменения, в том же порядке
+     */
+    public void updated(List<Person> persons, List<Person.Key> before) {
+        for (int i = 0; i < persons.size(); i++) {
+            Person.Key key = before.get(i);
+            String from = grouping.of(key.city(), key.postalCode());
+            String to = grouping.of(persons.get(i));
+            if (!from.equals(to)) {
+                decrement(from);
+                increment(to);
+            }
+        }
+        publish();
+    }
+
+    @Override
+    public void onChanged(Change<? extends Person> change) {
+        while (change.next()) {
+            if (change.wasPermutated() || change.wasUpdated()) {
+                continue;
+            }
+            if (change.getRemovedSize() > 0 && change.getRemovedSize() == total) {
+                // Замена всего списка (setAll, clear) — счет начинается заново
+                reset();
+            } else {
+                for (Person person : change.getRemoved()) {
+                    decrement(grouping.of(person));
+                }
+            }
+            for (Person person : change.getAddedSubList()) {
+                increment(grouping.of(person));
+            }
+        }
+        publish();
+    }
+
+    private void increment(String name) {
+        Group group = byName.get(name);
+        if (group == null) {
+            group = new Group(name);
+            byName.put(name, group);
+            created.add(group);
+        }
+        group.count.set(group.count.get() + 1);
+        total++;
+    }
+
+    private void decrement(String name) {
+        Group group = byName.get(name);
+        if (group == null) {
+            return;
+        }
+        group.count.set(group.count.get() - 1);
+        total--;
+        if (group.count.get() == 0) {
+            emptied.add(group);
+        }
+    }
+
+    private void reset() {
+        for (Group group : byName.values()) {
+            group.count.set(0);
+            emptied.add(group);
+        }
+        total = 0;
+    }
+
+    /**
+     * Перенос появившихся и опустевших групп в список для панели
+     */
+    private void publish() {
+        boolean bulk = created.size() + emptied.size() > BULK_CHANGE_THRESHOLD;
+        for (Group group : emptied) {
+            if (group.count.get() == 0 && byName.get(group.name) == group) {
+                byName.remove(group.name);
+                if (group.listed && !bulk) {
+                    groups.remove(Collections.binarySearch(groups, group, order));
+                }
+                group.listed = false;
+            }
+        }
+        if (bulk) {
+            List<Group> sorted = new ArrayList<>(byName.values());
+            sorted.sort(order);
+            sorted.forEach(group -> group.listed = true);
+            groups.setAll(sorted);
+        } else {
+            for (Group group : created) {
+                if (group.count.get() > 0 && !group.listed) {
+                    groups.add(-Collections.binarySearch(groups, group, order) - 1, group);
+                    group.listed = true;
+                }
+            }
+        }
+        created.clear();
+        emptied.clear();
+    }
+}
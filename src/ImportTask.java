@@ -0,0 +1,220 @@
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import javafx.collections.ObservableList;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InterruptedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Logger;
+
+/**
+ * Фоновый импорт контактов из CSV или vCard.
+ * <p>
+ * Файл читается потоком и нарезается на пачки записей, пачки разбираются параллельно
+ * в общем пуле ForkJoin. Готовые контакты (в порядке файла) передаются в поток JavaFX
+ * крупными порциями: каждая порция — одно изменение списка, а не по событию на контакт.
+ * Дубликаты (по тем же шести полям, что и в {@link Person#equals}) отбрасываются
+ * в потоке JavaFX — и среди уже имеющихся контактов, и внутри импортируемого файла.
+ * <p>
+ * При отмене уже добавленные порции остаются в списке.
+ */
+public class ImportTask extends Task<ImportTask.Stats> {
+    private static final Logger LOGGER = Logger.getLogger(ImportTask.class.getName());
+
+    // Записей в пачке для разбора в одном потоке
+    private static final int CHUNK_SIZE = 5_000;
+
+    // Контактов в одной порции для добавления в список
+    private static final int BATCH_SIZE = 100_000;
+
+    // Сколько пачек может разбираться одновременно (ограничивает расход памяти)
+    private static final int MAX_PENDING_CHUNKS = 2 * ForkJoinPool.getCommonPoolParallelism() + 1;
+
+    // Сколько порций может ждать своей очереди в потоке JavaFX
+    private static final int MAX_PENDING_BATCHES = 2;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Итоги разбора файла
+     *
+     * @param records    число прочитанных записей
+     * @param errors     число записей, которые не удалось разобрать
+     * @param firstError описание первой ошибки или null
+     * @param nanos      время импорта
+     */
+    public record Stats(long records, long errors, String firstError, long nanos) {
+        public double recordsPerSecond() {
+            return nanos == 0 ? 0 : records * 1e9 / nanos;
+        }
+    }
+
+    private final File file;
+    private final ObservableList<Person> target;
+    private final PersonIndex index;
+    private final UndoHistory history;
+    private final Semaphore batchPermits = new Semaphore(MAX_PENDING_BATCHES);
+
+    // Состояние разбора, используется только фоновым потоком
+    private final Deque<CompletableFuture<ContactImport.Chunk>> pending = new ArrayDeque<>();
+    private List<Person> batch = new ArrayList<>();
+    private long errors;
+    private String firstError;
+
+    // Изменяются только в потоке JavaFX
+    private long added;
+    private long duplicates;
+
+    /**
+     * @param target  список, в который добавляются контакты
+     * @param index   индекс дубликатов для этого списка
+     * @param history история изменений списка; порции записываются в шаг импорта
+     *                ({@link UndoHistory#beginBatches}), открытый вызывающим
+     */
+    public ImportTask(File file, ObservableList<Person> target, PersonIndex index, UndoHistory history) {
+        this.file = file;
+        this.target = target;
+        this.index = index;
+        this.history = history;
+        updateTitle("Importing " + file.getName());
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Итоговое сообщение; вызывается в потоке JavaFX после завершения
+     */
+    public String summary() {
+        Stats stats = getValue();
+        if (stats == null) {
+            return String.format("Imported %,d contacts before the import was stopped", added);
+        }
+        return String.format("Imported %,d of %,d records (%,d duplicates, %,d errors) in %.1f s, %,.0f records/s",
+                added, stats.records(), duplicates, stats.errors(), stats.nanos() / 1e9, stats.recordsPerSecond());
+    }
+
+    @Override
+    protected Stats call() throws Exception {
+        Metrics.Operation operation = Metrics.begin(Metrics.IMPORT);
+        long start = System.nanoTime();
+        ContactImport.Kind kind = ContactImport.kind(file.toPath());
+        long total = file.length();
+        long records = 0;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+             BufferedReader in = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder()
+                     .onMalformedInput(CodingErrorAction.REPLACE)
+                     .onUnmappableCharacter(CodingErrorAction.REPLACE), -1), BUFFER_SIZE)) {
+            ContactImport.RecordReader reader = new ContactImport.RecordReader(in, kind);
+            ContactImport.Columns columns = null;
+            List<String> chunk = new ArrayList<>(CHUNK_SIZE);
+            String record;
+            while ((record = reader.next()) != null) {
+                if (kind == ContactImport.Kind.CSV && columns == null) {
+                    columns = ContactImport.columns(record);
+                    if (columns.header()) {
+                        continue;
+                    }
+                }
+                chunk.add(record);
+                if (chunk.size() == CHUNK_SIZE) {
+                    if (isCancelled()) {
+                        throw new InterruptedIOException("Import cancelled");
+                    }
+                    submit(kind, columns, chunk, records);
+                    records += chunk.size();
+                    chunk = new ArrayList<>(CHUNK_SIZE);
+                    collect(MAX_PENDING_CHUNKS - 1);
+                    updateProgress(channel.position(), total);
+                    updateMessage(String.format("Importing: %,d records, %,d KB",
+                            records, channel.position() / 1024));
+                }
+            }
+            if (!chunk.isEmpty()) {
+                submit(kind, columns, chunk, records);
+                records += chunk.size();
+            }
+            collect(0);
+            if (!batch.isEmpty()) {
+                publish(batch);
+            }
+        }
+
+        if (firstError != null) {
+            LOGGER.warning("Skipped " + errors + " invalid records in " + file + ", first at " + firstError);
+        }
+        operation.end(records, total);
+        updateProgress(total, total);
+        return new Stats(records, errors, firstError, System.nanoTime() - start);
+    }
+
+    /**
+     * Разбор пачки записей в общем пуле
+     */
+    private void submit(ContactImport.Kind kind, ContactImport.Columns columns, List<String> chunk, long first) {
+        pending.add(CompletableFuture.supplyAsync(
+                () -> ContactImport.parse(kind, columns, chunk, first), ForkJoinPool.commonPool()));
+    }
+
+    /**
+     * Прием разобранных пачек по порядку, пока в работе не останется не больше limit пачек
+     */
+    private void collect(int limit) throws InterruptedException {
+        while (pending.size() > limit) {
+            ContactImport.Chunk parsed = pending.poll().join();
+            errors += parsed.errors();
+            if (firstError == null) {
+                firstError = parsed.firstError();
+            }
+            batch.addAll(parsed.persons());
+            if (batch.size() >= BATCH_SIZE) {
+                publish(batch);
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+    }
+
+    /**
+     * Передача порции контактов в поток JavaFX
+     */
+    private void publish(List<Person> persons) throws InterruptedException {
+        // Не даем очереди порций расти, если поток JavaFX не успевает
+        batchPermits.acquire();
+        Platform.runLater(() -> {
+            try {
+                if (isCancelled()) {
+                    return;
+                }
+                Set<Person.Key> keys = new HashSet<>(persons.size() * 2);
+                List<Person> accepted = new ArrayList<>(persons.size());
+                for (Person person : persons) {
+                    Person.Key key = person.key();
+                    // Порции добавляются по очереди, поэтому индекс уже знает о предыдущих
+                    if (!index.contains(key) && keys.add(key)) {
+                        accepted.add(person);
+                    }
+                }
+                duplicates += persons.size() - accepted.size();
+                added += accepted.size();
+                history.batch(() -> target.addAll(accepted));
+            } finally {
+                batchPermits.release();
+            }
+        });
+    }
+}
@@ -0,0 +1,42 @@
+import javafx.collections.ObservableList;
+
+/**
+ * Хранилище в памяти: список контактов приложения и его представление
+ * с поиском и сортировкой ({@link ContactView})
+ */
+public class InMemoryRepository implements AddressBookRepository {
+    private final ObservableList<Person> persons;
+    private final ContactView view;
+
+    public InMemoryRepository(ObservableList<Person> persons, ContactView view) {
+        this.persons = persons;
+        this.view = view;
+    }
+
+    @Override
+    public ObservableList<Person> view() {
+        return view;
+    }
+
+    @Override
+    public int size() {
+        return persons.size();
+    }
+
+    @Override
+    public Person get(int index) {
+        return persons.get(index);
+    }
+
+    @Override
+    public boolean isEditable() {
+        return true;
+    }
+
+    /**
+     * Список живет вместе с приложением, закрывать нечего
+     */
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,54 @@
+import javafx.concurrent.Task;
+import java.io.File;
+import java.util.List;
+
+/**
+ * Фоновое инкрементальное сохранение: дописывание изменений в журнал файла.
+ * Возвращает размер журнала после записи. Как и {@link SaveTask}, пишет под блокировкой
+ * и ничего не дописывает, если файл изменили извне.
+ */
+public class JournalSaveTask extends Task<Long> {
+    private final File file;
+    private final List<AddressBookJournal.Entry> entries;
+    private final FileWatcher watcher;
+
+    /**
+     * @param watcher наблюдение за этим файлом или null
+     */
+    public JournalSaveTask(File file, List<AddressBookJournal.Entry> entries, FileWatcher watcher) {
+        this.file = file;
+        this.entries = entries;
+        this.watcher = watcher;
+        updateTitle("Saving " + file.getName());
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public List<AddressBookJournal.Entry> getEntries() {
+        return entries;
+    }
+
+    @Override
+    protected Long call() throws Exception {
+        Metrics.Operation operation = Metrics.begin(Metrics.JOURNAL_SAVE);
+        long size;
+        AddressBookLock lock = AddressBookLock.exclusive(file.toPath());
+        try {
+            if (watcher != null) {
+                watcher.checkUnchanged();
+            }
+            size = AddressBookJournal.append(file.toPath(), entries);
+            if (watcher != null) {
+                watcher.markSynced(SessionCache.state(file.toPath()));
+            }
+        } finally {
+            lock.close();
+        }
+        operation.end(entries.size(), size);
+        updateProgress(1, 1);
+        updateMessage(String.format("Saved %,d changes (journal %,d KB)", entries.size(), size / 1024));
+        return size;
+    }
+}
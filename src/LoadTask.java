@@ -0,0 +1,121 @@
+import javafx.concurrent.Task;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Фоновая загрузка адресной книги из файла.
+ * Сообщает о прогрессе (записи и байты) и поддерживает отмену.
+ * Если для файла в его текущем состоянии есть снимок в {@link SessionCache},
+ * читается снимок. Файл читается под разделяемой блокировкой {@link AddressBookLock}.
+ */
+public class LoadTask extends Task<List<Person>> {
+    private static final Logger LOGGER = Logger.getLogger(LoadTask.class.getName());
+
+    private final File file;
+
+    // Состояние файла перед чтением и нужно ли записать для него снимок
+    private volatile String sourceState;
+    private volatile boolean slowSource;
+    // Значения прочитанных контактов для снимка; снимаются до того, как список
+    // попадет в поток JavaFX и контакты можно будет редактировать
+    private volatile List<Person.Key> snapshotKeys;
+
+    private volatile boolean compressed;
+    // Записи из поврежденных блоков сжатого файла, которые не удалось прочитать
+    private volatile long lostRecords;
+
+    public LoadTask(File file) {
+        this.file = file;
+        updateTitle("Opening " + file.getName());
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public String getSourceState() {
+        return sourceState;
+    }
+
+    /**
+     * Файл прочитан не из снимка и его чтение требовало лишней работы
+     * (старый формат или журнал) — стоит записать снимок
+     */
+    public boolean needsSnapshot() {
+        return slowSource;
+    }
+
+    /**
+     * Содержимое файла для записи снимка ({@link SessionCache#storing}), если он нужен
+     */
+    public List<Person.Key> getSnapshotKeys() {
+        return snapshotKeys;
+    }
+
+    /**
+     * Файл записан сжатым контейнером
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public long getLostRecords() {
+        return lostRecords;
+    }
+
+    @Override
+    protected List<Person> call() throws Exception {
+        // Пока файл читается, другой экземпляр приложения не заменит снимок и не допишет журнал
+        AddressBookLock lock = AddressBookLock.shared(file.toPath());
+        try {
+            return read();
+        } finally {
+            lock.close();
+        }
+    }
+
+    private List<Person> read() throws IOException {
+        Metrics.Operation operation = Metrics.begin(Metrics.OPEN);
+        sourceState = SessionCache.state(file.toPath());
+        compressed = AddressBookFormat.isCompressed(file.toPath());
+        Path snapshot = SessionCache.snapshotFor(sourceState);
+        Path path = snapshot != null ? snapshot : file.toPath();
+        long total = path.toFile().length();
+        List<Person> persons = AddressBookFormat.read(path, (records, bytes) -> {
+            if (isCancelled()) {
+                throw new InterruptedIOException("Loading cancelled");
+            }
+            updateProgress(bytes, total);
+            updateMessage(String.format("Loading: %,d records, %,d KB", records, bytes / 1024));
+        }, (records, cause) -> {
+            // Поврежденный блок сжатого файла не мешает прочитать остальные
+            LOGGER.log(Level.WARNING, "Skipped damaged block of " + file, cause);
+            lostRecords += records;
+        });
+        if (snapshot != null) {
+            operation.end(persons.size(), total);
+            updateProgress(total, total);
+            updateMessage(String.format("Loaded %,d records from cached snapshot (%,d KB)",
+                    persons.size(), total / 1024));
+            return persons;
+        }
+        // Применяем изменения, дописанные в журнал после снимка
+        int replayed = AddressBookJournal.replay(file.toPath(), persons);
+        slowSource = lostRecords == 0 && (replayed > 0 || AddressBookFormat.isLegacy(file.toPath()));
+        if (slowSource) {
+            snapshotKeys = Person.keys(persons);
+        }
+        operation.end(persons.size(), total);
+        updateProgress(total, total);
+        updateMessage(replayed == 0
+                ? String.format("Loaded %,d records (%,d KB)", persons.size(), total / 1024)
+                : String.format("Loaded %,d records (%,d KB, %,d journal entries)",
+                persons.size(), total / 1024, replayed));
+        return persons;
+    }
+}
@@ -0,0 +1,121 @@
+import javafx.concurrent.Task;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Фоновая загрузка нескольких адресных книг с объединением в один список.
+ * <p>
+ * Файлы читаются параллельно в общем пуле ForkJoin (вместе с журналами изменений).
+ * Одинаковые контакты определяются по equals/hashCode {@link Person} и остаются в одном
+ * экземпляре; в {@link Person#getSources()} у контакта отмечаются все файлы, где он был
+ * (бит с номером файла в списке), чтобы при сохранении записать его в каждый из них.
+ * Контакт, встречающийся в одном файле несколько раз, тоже остается один.
+ */
+public class MergedLoadTask extends Task<List<Person>> {
+    /**
+     * Столько файлов помещается в маску источников
+     */
+    public static final int MAX_FILES = Integer.SIZE;
+
+    private final List<File> files;
+    private int duplicates;
+
+    public MergedLoadTask(List<File> files) {
+        if (files.size() > MAX_FILES) {
+            throw new IllegalArgumentException("Cannot merge more than " + MAX_FILES + " files");
+        }
+        this.files = List.copyOf(files);
+        updateTitle("Opening " + files.size() + " files");
+    }
+
+    public List<File> getFiles() {
+        return files;
+    }
+
+    @Override
+    protected List<Person> call() throws Exception {
+        Metrics.Operation operation = Metrics.begin(Metrics.OPEN);
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        long totalBytes = total;
+        AtomicLong[] read = new AtomicLong[files.size()];
+        List<CompletableFuture<List<Person>>> loads = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            File file = files.get(i);
+            AtomicLong bytesRead = read[i] = new AtomicLong();
+            loads.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    AddressBookLock lock = AddressBookLock.shared(file.toPath());
+                    try {
+                        List<Person> persons = AddressBookFormat.read(file.toPath(), (records, bytes) -> {
+                            if (isCancelled()) {
+                                throw new InterruptedIOException("Loading cancelled");
+                            }
+                            bytesRead.set(bytes);
+                            long sum = 0;
+                            for (AtomicLong counter : read) {
+                                sum += counter == null ? 0 : counter.get();
+                            }
+                            updateProgress(sum, totalBytes);
+                            updateMessage(String.format("Loading %d files: %,d KB", files.size(), sum / 1024));
+                        });
+                        AddressBookJournal.replay(file.toPath(), persons);
+                        return persons;
+                    } finally {
+                        lock.close();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, ForkJoinPool.commonPool()));
+        }
+
+        // Объединяем в порядке файлов, чтобы результат не зависел от того, какой прочитан раньше
+        Map<Person, Person> unique = new HashMap<>();
+        List<Person> merged = new ArrayList<>();
+        long records = 0;
+        for (int i = 0; i < loads.size(); i++) {
+            List<Person> persons = join(loads.get(i), files.get(i));
+            records += persons.size();
+            int bit = 1 << i;
+            for (Person person : persons) {
+                Person kept = unique.putIfAbsent(person, person);
+                if (kept == null) {
+                    person.setSources(bit);
+                    merged.add(person);
+                } else {
+                    kept.setSources(kept.getSources() | bit);
+                    duplicates++;
+                }
+            }
+        }
+        operation.end(records, totalBytes);
+        updateProgress(totalBytes, totalBytes);
+        updateMessage(String.format("Loaded %,d records from %d files (%,d duplicates merged)",
+                merged.size(), files.size(), duplicates));
+        return merged;
+    }
+
+    private static List<Person> join(CompletableFuture<List<Person>> load, File file) throws IOException {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw new IOException(file.getName() + ": " + io.getCause().getMessage(), io.getCause());
+            }
+            throw e;
+        }
+    }
+}
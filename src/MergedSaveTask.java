@@ -0,0 +1,139 @@
+import javafx.concurrent.Task;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Фоновое сохранение объединенных книг обратно в их файлы.
+ * <p>
+ * Каждый контакт пишется во все файлы из своей маски источников
+ * ({@link Person#getSources()}), контакт без источников — в первый файл.
+ * Переписываются только файлы из маски измененных; файлы пишутся параллельно,
+ * каждый — через временный файл с атомарной заменой.
+ */
+public class MergedSaveTask extends Task<Void> {
+    private final List<File> files;
+    // Значения контактов каждого файла; для файлов вне маски измененных — пустые списки
+    private final List<List<Person.Key>> byFile;
+    private final int changed;
+
+    /**
+     * Создается в потоке JavaFX: здесь контакты раскладываются по файлам и снимаются
+     * значения их полей, в фоне пишется только этот снимок
+     *
+     * @param changed маска файлов, которые нужно переписать
+     */
+    public MergedSaveTask(List<File> files, List<Person> persons, int changed) {
+        this.files = List.copyOf(files);
+        this.changed = changed;
+        // Раскладываем контакты по файлам за один проход
+        byFile = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            byFile.add(new ArrayList<>());
+        }
+        for (Person person : persons) {
+            int sources = sourcesOf(person) & changed;
+            if (sources == 0) {
+                continue;
+            }
+            Person.Key key = person.key();
+            while (sources != 0) {
+                byFile.get(Integer.numberOfTrailingZeros(sources)).add(key);
+                sources &= sources - 1;
+            }
+        }
+        updateTitle("Saving " + Integer.bitCount(changed) + " files");
+    }
+
+    /**
+     * Маска файлов источника для сохранения: контакт без источников принадлежит первому файлу
+     */
+    public static int sourcesOf(Person person) {
+        return person.getSources() == 0 ? 1 : person.getSources();
+    }
+
+    @Override
+    protected Void call() throws Exception {
+        Metrics.Operation operation = Metrics.begin(Metrics.SAVE);
+        long total = 0;
+        for (int i = 0; i < files.size(); i++) {
+            if ((changed & 1 << i) != 0) {
+                total += byFile.get(i).size();
+            }
+        }
+        long totalRecords = total;
+        AtomicLong written = new AtomicLong();
+        AtomicLong size = new AtomicLong();
+        List<CompletableFuture<Void>> saves = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            if ((changed & 1 << i) == 0) {
+                continue;
+            }
+            File file = files.get(i);
+            List<Person.Key> contents = byFile.get(i);
+            saves.add(CompletableFuture.runAsync(() -> {
+                try {
+                    size.addAndGet(save(file, contents, written, totalRecords));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, ForkJoinPool.commonPool()));
+        }
+        try {
+            CompletableFuture.allOf(saves.toArray(CompletableFuture<?>[]::new)).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw e;
+        }
+        operation.end(totalRecords, size.get());
+        updateProgress(1, 1);
+        updateMessage(String.format("Saved %,d records to %d files (%,d KB)",
+                totalRecords, saves.size(), size.get() / 1024));
+        return null;
+    }
+
+    private long save(File file, List<Person.Key> contents, AtomicLong written, long totalRecords) throws IOException {
+        Path target = file.toPath().toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+        try {
+            long[] reported = {0};
+            // Файл сохраняет свой формат: сжатый остается сжатым
+            boolean compressed = Files.exists(target) && AddressBookFormat.isCompressed(target);
+            AddressBookFormat.write(temp, contents, (records, bytes) -> {
+                if (isCancelled()) {
+                    throw new InterruptedIOException("Saving cancelled");
+                }
+                long done = written.addAndGet(records - reported[0]);
+                reported[0] = records;
+                updateProgress(done, totalRecords);
+                updateMessage(String.format("Saving: %,d of %,d records", done, totalRecords));
+            }, compressed);
+            long size = Files.size(temp);
+            AddressBookLock lock = AddressBookLock.exclusive(target);
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                // Полный снимок уже содержит все изменения из журнала
+                AddressBookJournal.delete(target);
+            } finally {
+                lock.close();
+            }
+            return size;
+        } catch (IOException e) {
+            throw new IOException(file.getName() + ": " + e.getMessage(), e);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Замеры длительности операций с данными.
+ * Каждая операция записывается событием JFR ({@link DataOperationEvent}) и попадает
+ * в кольцевой буфер последних замеров, по которому окно Diagnostics считает p50/p99.
+ * Операции могут выполняться в любом потоке.
+ */
+public final class Metrics {
+    public static final String OPEN = "Open";
+    public static final String SAVE = "Save";
+    public static final String JOURNAL_SAVE = "Journal Save";
+    public static final String IMPORT = "Import";
+    public static final String EXPORT = "Export";
+    public static final String SEARCH = "Search";
+    public static final String DUPLICATE_CHECK = "Duplicate Check";
+    public static final String EDIT = "Edit";
+    public static final String RELOAD = "Reload";
+    public static final String PAGE_LOAD = "Page Load";
+    public static final String API_REQUEST = "API Request";
+    public static final String STARTUP_FIRST_FRAME = "Startup: First Frame";
+    public static final String STARTUP_TABLE_POPULATED = "Startup: Table Populated";
+
+    // Сколько последних замеров хранится для каждой операции
+    private static final int WINDOW = 1024;
+
+    private static final Map<String, Samples> SAMPLES = new ConcurrentHashMap<>();
+
+    /**
+     * Сводка по последним замерам операции
+     *
+     * @param count всего замеров с запуска приложения
+     */
+    public record Summary(String operation, long count, double p50Millis, double p99Millis,
+                          double maxMillis, long lastRecords, long lastBytes) {
+    }
+
+    /**
+     * Выполняющаяся операция; завершается вызовом {@link #end}
+     */
+    public static final class Operation {
+        private final String name;
+        private final DataOperationEvent event = new DataOperationEvent();
+        private final long start = System.nanoTime();
+
+        private Operation(String name) {
+            this.name = name;
+            event.begin();
+        }
+
+        /**
+         * Завершение операции
+         *
+         * @param records число обработанных записей
+         * @param bytes   число прочитанных или записанных байтов (0, если не применимо)
+         */
+        public void end(long records, long bytes) {
+            long nanos = System.nanoTime() - start;
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = name;
+                event.records = records;
+                event.bytes = bytes;
+                event.commit();
+            }
+            record(name, nanos, records, bytes);
+        }
+    }
+
+    private Metrics() {
+    }
+
+    public static Operation begin(String name) {
+        return new Operation(name);
+    }
+
+    /**
+     * Замер, начало которого было раньше, чем его можно было открыть через {@link #begin}
+     * (например, время от запуска JVM); событие JFR для него не записывается
+     */
+    public static void record(String name, long nanos, long records, long bytes) {
+        SAMPLES.computeIfAbsent(name, key -> new Samples()).add(nanos, records, bytes);
+    }
+
+    /**
+     * Сводки по всем операциям, которые уже выполнялись
+     */
+    public static List<Summary> summaries() {
+        List<Summary> summaries = new ArrayList<>();
+        SAMPLES.forEach((name, samples) -> summaries.add(samples.summary(name)));
+        summaries.sort((a, b) -> a.operation().compareTo(b.operation()));
+        return summaries;
+    }
+
+    /**
+     * Кольцевой буфер длительностей операции
+     */
+    private static final class Samples {
+        private final long[] nanos = new long[WINDOW];
+        private long count;
+        private long lastRecords;
+        private long lastBytes;
+
+        synchronized void add(long duration, long records, long bytes) {
+            nanos[(int) (count++ % WINDOW)] = duration;
+            lastRecords = records;
+            lastBytes = bytes;
+        }
+
+        synchronized Summary summary(String name) {
+            long[] sorted = Arrays.copyOf(nanos, (int) Math.min(count, WINDOW));
+            Arrays.sort(sorted);
+            return new Summary(name, count, percentile(sorted, 0.50), percentile(sorted, 0.99),
+                    sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6, lastRecords, lastBytes);
+        }
+
+        private static double percentile(long[] sorted, double p) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            // Метод ближайшего ранга
+            int rank = (int) Math.ceil(p * sorted.length);
+            return sorted[Math.max(rank - 1, 0)] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,309 @@
+import javafx.collections.ObservableList;
+import javafx.collections.ObservableListBase;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Хранилище только для чтения поверх файла .addr, отображенного в память.
+ * <p>
+ * При открытии читаются только заголовок и словарь, поэтому первая строка таблицы
+ * появляется сразу при любом размере книги. Записи читаются страницами по
+ * {@value #PAGE_SIZE}: смещения начала страниц (индекс) заполняются по мере обращения —
+ * чтобы найти страницу, записи до нее пропускаются без создания объектов, — а
+ * прочитанные страницы хранятся в LRU-кэше из {@value #MAX_CACHED_PAGES} страниц.
+ * В куче остаются словарь, индекс (8 байт на страницу, около 300 КБ на 10 млн контактов)
+ * и кэш; сам файл отображается в память сегментами по 1 ГБ вне кучи.
+ * <p>
+ * Методы вызываются из потока JavaFX. Поврежденный файл обнаруживается при чтении
+ * страницы и сообщается через {@link UncheckedIOException}.
+ */
+public class PagedFileRepository implements AddressBookRepository {
+    private static final int PAGE_SIZE = 256;
+    private static final int MAX_CACHED_PAGES = 64;
+
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    private final Path path;
+    private final MappedByteBuffer[] segments;
+    private final long length;
+    private final short version;
+    private final int count;
+    private final String[] dictionary;
+
+    // Смещения начала страниц; известны для первых indexedPages страниц
+    private final long[] pageOffsets;
+    private int indexedPages;
+
+    private final Map<Integer, Person[]> cache = new LinkedHashMap<>(MAX_CACHED_PAGES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Person[]> eldest) {
+            return size() > MAX_CACHED_PAGES;
+        }
+    };
+
+    private final PagedView view = new PagedView();
+    private boolean closed;
+
+    private PagedFileRepository(Path path, MappedByteBuffer[] segments, long length) throws IOException {
+        this.path = path;
+        this.segments = segments;
+        this.length = length;
+
+        Cursor in = new Cursor(0);
+        if (length >= Short.BYTES && in.readShort() == AddressBookFormat.JAVA_SERIALIZATION_MAGIC) {
+            throw new StreamCorruptedException("Files in the old format cannot be browsed; open and save it first");
+        }
+        in.position = 0;
+        if (in.readInt() != AddressBookFormat.MAGIC) {
+            throw new StreamCorruptedException("Not an address book file");
+        }
+        version = in.readShort();
+        if (version == AddressBookFormat.VERSION_BLOCKS) {
+            throw new StreamCorruptedException("Compressed files cannot be browsed; save it without compression first");
+        }
+        if (version != AddressBookFormat.VERSION && version != AddressBookFormat.VERSION_TEXT_BIRTHDAY) {
+            throw new StreamCorruptedException("Unsupported address book version: " + version);
+        }
+        in.readShort(); // флаги
+        count = in.readInt();
+        if (count < 0) {
+            throw new StreamCorruptedException("Invalid record count: " + count);
+        }
+        dictionary = new String[in.readVarInt()];
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = in.readString();
+        }
+        pageOffsets = new long[Math.max(1, (count + PAGE_SIZE - 1) / PAGE_SIZE)];
+        pageOffsets[0] = in.position;
+        indexedPages = 1;
+    }
+
+    /**
+     * Открытие файла: отображение в память и чтение заголовка со словарем
+     */
+    public static PagedFileRepository open(Path path) throws IOException {
+        Metrics.Operation operation = Metrics.begin(Metrics.OPEN);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // Отображение остается действительным и после закрытия канала
+            long length = channel.size();
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((length + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = (long) i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_MASK + 1, length - start));
+            }
+            PagedFileRepository repository = new PagedFileRepository(path, segments, length);
+            operation.end(repository.count, length);
+            return repository;
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public ObservableList<Person> view() {
+        return view;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public Person get(int index) {
+        Objects.checkIndex(index, count);
+        if (closed) {
+            throw new IllegalStateException("Repository is closed");
+        }
+        int page = index / PAGE_SIZE;
+        Person[] persons = cache.get(page);
+        if (persons == null) {
+            try {
+                persons = readPage(page);
+            } catch (IOException e) {
+                throw new UncheckedIOException(path.getFileName() + ": " + e.getMessage(), e);
+            }
+            cache.put(page, persons);
+        }
+        return persons[index % PAGE_SIZE];
+    }
+
+    @Override
+    public boolean isEditable() {
+        return false;
+    }
+
+    /**
+     * Отображенная память освобождается, когда сборщик мусора соберет буферы
+     */
+    @Override
+    public void close() {
+        closed = true;
+        cache.clear();
+    }
+
+    private Person[] readPage(int page) throws IOException {
+        Metrics.Operation operation = Metrics.begin(Metrics.PAGE_LOAD);
+        Cursor in = new Cursor(offset(page));
+        long start = in.position;
+        Person[] persons = new Person[Math.min(PAGE_SIZE, count - page * PAGE_SIZE)];
+        for (int i = 0; i < persons.length; i++) {
+            persons[i] = readPerson(in);
+        }
+        // Конец страницы — начало следующей, индекс продлевается бесплатно
+        if (page + 1 == indexedPages && indexedPages < pageOffsets.length) {
+            pageOffsets[indexedPages++] = in.position;
+        }
+        operation.end(persons.length, in.position - start);
+        return persons;
+    }
+
+    // Смещение начала страницы; недостающие смещения находятся пропуском записей
+    private long offset(int page) throws IOException {
+        if (page >= indexedPages) {
+            Cursor in = new Cursor(pageOffsets[indexedPages - 1]);
+            while (indexedPages <= page) {
+                for (int i = 0; i < PAGE_SIZE; i++) {
+                    skipPerson(in);
+                }
+                pageOffsets[indexedPages++] = in.position;
+            }
+        }
+        return pageOffsets[page];
+    }
+
+    private Person readPerson(Cursor in) throws IOException {
+        String firstName = in.readString();
+        String lastName = in.readString();
+        String street = in.readString();
+        String city = dictionaryEntry(in.readVarInt());
+        String postalCode = dictionaryEntry(in.readVarInt());
+        if (version == AddressBookFormat.VERSION_TEXT_BIRTHDAY) {
+            return new Person(firstName, lastName, street, city, postalCode, in.readString());
+        }
+        int birthday = in.readVarInt();
+        if (birthday == 1) {
+            return new Person(firstName, lastName, street, city, postalCode, in.readString());
+        }
+        return new Person(firstName, lastName, street, city, postalCode, AddressBookFormat.epochDay(birthday));
+    }
+
+    private void skipPerson(Cursor in) throws IOException {
+        in.skipString();
+        in.skipString();
+        in.skipString();
+        in.readVarInt();
+        in.readVarInt();
+        if (version == AddressBookFormat.VERSION_TEXT_BIRTHDAY || in.readVarInt() == 1) {
+            in.skipString();
+        }
+    }
+
+    private String dictionaryEntry(int index) throws IOException {
+        if (index < 0 || index >= dictionary.length) {
+            throw new StreamCorruptedException("Invalid dictionary index: " + index);
+        }
+        return dictionary[index];
+    }
+
+    /**
+     * Чтение примитивов из отображенного файла с позиции position;
+     * формат значений тот же, что у {@link AddressBookFormat.ChannelReader}
+     */
+    private final class Cursor {
+        private long position;
+
+        Cursor(long position) {
+            this.position = position;
+        }
+
+        private void require(long bytes) throws IOException {
+            if (bytes < 0 || position + bytes > length) {
+                throw new EOFException();
+            }
+        }
+
+        byte readByte() throws IOException {
+            require(1);
+            byte b = segments[(int) (position >>> SEGMENT_SHIFT)].get((int) (position & SEGMENT_MASK));
+            position++;
+            return b;
+        }
+
+        int readInt() throws IOException {
+            return (readByte() & 0xFF) << 24 | (readByte() & 0xFF) << 16 | (readByte() & 0xFF) << 8 | readByte() & 0xFF;
+        }
+
+        short readShort() throws IOException {
+            return (short) ((readByte() & 0xFF) << 8 | readByte() & 0xFF);
+        }
+
+        int readVarInt() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                byte b = readByte();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new StreamCorruptedException("Malformed varint");
+        }
+
+        String readString() throws IOException {
+            int size = readVarInt() - 1;
+            if (size < 0) {
+                return null;
+            }
+            require(size);
+            byte[] bytes = new byte[size];
+            // Строка может пересекать границу сегментов
+            int copied = 0;
+            while (copied < size) {
+                MappedByteBuffer segment = segments[(int) (position >>> SEGMENT_SHIFT)];
+                int offset = (int) (position & SEGMENT_MASK);
+                int chunk = Math.min(size - copied, segment.limit() - offset);
+                segment.get(offset, bytes, copied, chunk);
+                copied += chunk;
+                position += chunk;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        void skipString() throws IOException {
+            int size = readVarInt() - 1;
+            if (size > 0) {
+                require(size);
+                position += size;
+            }
+        }
+    }
+
+    /**
+     * Список для таблицы: строки читаются из хранилища при запросе, изменений не бывает
+     */
+    private final class PagedView extends ObservableListBase<Person> {
+        @Override
+        public Person get(int index) {
+            return PagedFileRepository.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+    }
+}
@@ -1,26 +1,85 @@
+import javafx.beans.InvalidationListener;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 import java.io.*;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.Year;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Person implements Serializable {
     @Serial
     private static final long serialVersionUID = 1L;
 
-    private transient StringProperty firstName;
-    private transient StringProperty lastName;
-    private transient StringProperty street;
-    private transient StringProperty city;
-    private transient StringProperty postalCode;
-    private transient StringProperty birthday;
+    // Общий словарь для часто повторяющихся значений (city, postalCode)
+    private static final int MAX_SHARED_VALUES = 100_000;
+    private static final Map<String, String> SHARED_VALUES = new ConcurrentHashMap<>();
+
+    /**
+     * Дата рождения не указана или не распознана
+     */
+    public static final int NO_BIRTHDAY = Integer.MIN_VALUE;
+
+    // Результат разбора текста, который не является датой
+    private static final int INVALID_BIRTHDAY = Integer.MAX_VALUE;
+
+    // Сбрасывает кэшированный хэш-код, если свойство изменили в обход сеттера
+    private static final InvalidationListener RESET_HASH = observable ->
+            ((Person) ((StringProperty) observable).getBean()).hash = 0;
+
+    // Пересчитывает день рождения, если свойство изменили в обход сеттера
+    private static final InvalidationListener PARSE_BIRTHDAY = observable -> {
+        StringProperty property = (StringProperty) observable;
+        int day = epochDay(property.get());
+        ((Person) property.getBean()).birthday = day == INVALID_BIRTHDAY ? NO_BIRTHDAY : day;
+    };
+
+    // Значение поля хранится строкой; StringProperty создается только при первом
+    // обращении к xxxProperty() (привязка ячейки таблицы или панели деталей)
+    // и дальше хранит значение сам
+    private transient Object firstName;
+    private transient Object lastName;
+    private transient Object street;
+    private transient Object city;
+    private transient Object postalCode;
+
+    // Дата рождения хранится номером дня от 1970-01-01 (NO_BIRTHDAY — нет даты).
+    // birthdayText — null, неразобранный текст из старого файла или StringProperty
+    private transient int birthday = NO_BIRTHDAY;
+    private transient Object birthdayText;
+
+    // Кэшированный хэш-код, сбрасывается сеттерами полей
+    private transient int hash;
+
+    // Файлы, из которых загружен контакт, при объединении нескольких книг (бит на файл);
+    // 0 — контакт принадлежит основному файлу. Занимает место выравнивания объекта
+    private transient int sources;
 
     public Person(String firstName, String lastName, String street,
                   String city, String postalCode, String birthday) {
-        this.firstName = new SimpleStringProperty(firstName);
-        this.lastName = new SimpleStringProperty(lastName);
-        this.street = new SimpleStringProperty(street);
-        this.city = new SimpleStringProperty(city);
-        this.postalCode = new SimpleStringProperty(postalCode);
-        this.birthday = new SimpleStringProperty(birthday);
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.street = street;
+        this.city = share(city);
+        this.postalCode = share(postalCode);
+        assignBirthday(birthday);
+    }
+
+    /**
+     * @param birthday номер дня даты рождения от 1970-01-01 или {@link #NO_BIRTHDAY}
+     */
+    public Person(String firstName, String lastName, String street,
+                  String city, String postalCode, int birthday) {
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.street = street;
+        this.city = share(city);
+        this.postalCode = share(postalCode);
+        this.birthday = birthday;
     }
 
     // Сериализация
@@ -39,105 +98,300 @@ public class Person implements Serializable {
     @Serial
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
         in.defaultReadObject();
-        firstName = new SimpleStringProperty((String) in.readObject());
-        lastName = new SimpleStringProperty((String) in.readObject());
-        street = new SimpleStringProperty((String) in.readObject());
-        city = new SimpleStringProperty((String) in.readObject());
-        postalCode = new SimpleStringProperty((String) in.readObject());
-        birthday = new SimpleStringProperty((String) in.readObject());
+        firstName = in.readObject();
+        lastName = in.readObject();
+        street = in.readObject();
+        city = share((String) in.readObject());
+        postalCode = share((String) in.readObject());
+        birthday = NO_BIRTHDAY;
+        assignBirthday((String) in.readObject());
     }
 
     // Геттеры и сеттеры
     public String getFirstName() {
-        return firstNameProperty().get();
+        return value(firstName);
     }
 
     public void setFirstName(String firstName) {
-        firstNameProperty().set(firstName);
+        if (this.firstName instanceof StringProperty property) {
+            property.set(firstName);
+        } else {
+            this.firstName = firstName;
+        }
+        hash = 0;
     }
 
     public StringProperty firstNameProperty() {
-        if (firstName == null) {
-            firstName = new SimpleStringProperty();
+        if (!(firstName instanceof StringProperty)) {
+            firstName = property("firstName", firstName);
         }
-        return firstName;
+        return (StringProperty) firstName;
     }
 
     public String getLastName() {
-        return lastNameProperty().get();
+        return value(lastName);
     }
 
     public void setLastName(String lastName) {
-        lastNameProperty().set(lastName);
+        if (this.lastName instanceof StringProperty property) {
+            property.set(lastName);
+        } else {
+            this.lastName = lastName;
+        }
+        hash = 0;
     }
 
     public StringProperty lastNameProperty() {
-        if (lastName == null) {
-            lastName = new SimpleStringProperty();
+        if (!(lastName instanceof StringProperty)) {
+            lastName = property("lastName", lastName);
         }
-        return lastName;
+        return (StringProperty) lastName;
     }
 
     public String getStreet() {
-        return streetProperty().get();
+        return value(street);
     }
 
     public void setStreet(String street) {
-        streetProperty().set(street);
+        if (this.street instanceof StringProperty property) {
+            property.set(street);
+        } else {
+            this.street = street;
+        }
+        hash = 0;
     }
 
     public StringProperty streetProperty() {
-        if (street == null) {
-            street = new SimpleStringProperty();
+        if (!(street instanceof StringProperty)) {
+            street = property("street", street);
         }
-        return street;
+        return (StringProperty) street;
     }
 
     public String getCity() {
-        return cityProperty().get();
+        return value(city);
     }
 
     public void setCity(String city) {
-        cityProperty().set(city);
+        if (this.city instanceof StringProperty property) {
+            property.set(share(city));
+        } else {
+            this.city = share(city);
+        }
+        hash = 0;
     }
 
     public StringProperty cityProperty() {
-        if (city == null) {
-            city = new SimpleStringProperty();
+        if (!(city instanceof StringProperty)) {
+            city = property("city", city);
         }
-        return city;
+        return (StringProperty) city;
     }
 
     public String getPostalCode() {
-        return postalCodeProperty().get();
+        return value(postalCode);
     }
 
     public void setPostalCode(String postalCode) {
-        postalCodeProperty().set(postalCode);
+        if (this.postalCode instanceof StringProperty property) {
+            property.set(share(postalCode));
+        } else {
+            this.postalCode = share(postalCode);
+        }
+        hash = 0;
     }
 
     public StringProperty postalCodeProperty() {
-        if (postalCode == null) {
-            postalCode = new SimpleStringProperty();
+        if (!(postalCode instanceof StringProperty)) {
+            postalCode = property("postalCode", postalCode);
         }
-        return postalCode;
+        return (StringProperty) postalCode;
     }
 
+    /**
+     * Дата рождения в виде дд.мм.гггг, пустая строка, если даты нет,
+     * или исходный текст, если его не удалось разобрать при загрузке
+     */
     public String getBirthday() {
-        return birthdayProperty().get();
+        if (birthdayText instanceof StringProperty property) {
+            return property.get();
+        }
+        return birthdayText != null ? (String) birthdayText : formatBirthday(birthday);
     }
 
+    /**
+     * Текст, который не удалось разобрать как дату, сохраняется как есть
+     */
     public void setBirthday(String birthday) {
-        birthdayProperty().set(birthday);
+        if (birthdayText instanceof StringProperty property) {
+            property.set(normalizeBirthday(birthday));
+        } else {
+            this.birthday = NO_BIRTHDAY;
+            birthdayText = null;
+            assignBirthday(birthday);
+        }
+        hash = 0;
     }
 
     public StringProperty birthdayProperty() {
-        if (birthday == null) {
-            birthday = new SimpleStringProperty();
+        if (!(birthdayText instanceof StringProperty)) {
+            StringProperty property = property("birthday", getBirthday());
+            property.addListener(PARSE_BIRTHDAY);
+            birthdayText = property;
         }
+        return (StringProperty) birthdayText;
+    }
+
+    /**
+     * Номер дня даты рождения от 1970-01-01 или {@link #NO_BIRTHDAY}
+     */
+    public int getBirthdayEpochDay() {
         return birthday;
     }
 
+    /**
+     * Дата рождения или null, если ее нет
+     */
+    public LocalDate getBirthdayDate() {
+        return birthday == NO_BIRTHDAY ? null : LocalDate.ofEpochDay(birthday);
+    }
+
+    private void assignBirthday(String text) {
+        int day = epochDay(text);
+        if (day == INVALID_BIRTHDAY) {
+            birthdayText = text;
+        } else {
+            birthday = day;
+        }
+    }
+
+    /**
+     * Разбор даты рождения в форматах д.м.гггг, д/м/гггг и гггг-мм-дд
+     *
+     * @return дата или null для пустого текста
+     * @throws IllegalArgumentException если текст не является датой
+     */
+    public static LocalDate parseBirthday(String text) {
+        int day = epochDay(text);
+        if (day == INVALID_BIRTHDAY) {
+            throw new IllegalArgumentException("Not a date: " + text);
+        }
+        return day == NO_BIRTHDAY ? null : LocalDate.ofEpochDay(day);
+    }
+
+    /**
+     * Приведение даты рождения к виду дд.мм.гггг; нераспознанный текст возвращается как есть
+     */
+    public static String normalizeBirthday(String text) {
+        int day = epochDay(text);
+        return day == INVALID_BIRTHDAY ? text : formatBirthday(day);
+    }
+
+    // Разбирает дату без DateTimeFormatter: при загрузке старых файлов и импорте
+    // через этот метод проходит каждая запись
+    private static int epochDay(String text) {
+        if (text == null || text.isBlank()) {
+            return NO_BIRTHDAY;
+        }
+        String value = text.strip();
+        int[] parts = new int[3];
+        int[] digits = new int[3];
+        char separator = 0;
+        int part = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (++digits[part] > 4) {
+                    return INVALID_BIRTHDAY;
+                }
+                parts[part] = parts[part] * 10 + (c - '0');
+            } else if ((c == '.' || c == '/' || c == '-') && (separator == 0 || c == separator)
+                    && digits[part] > 0 && part < 2) {
+                separator = c;
+                part++;
+            } else {
+                return INVALID_BIRTHDAY;
+            }
+        }
+        if (part != 2 || digits[2] == 0) {
+            return INVALID_BIRTHDAY;
+        }
+        int year, month, day;
+        if (separator == '-') {
+            if (digits[0] != 4 || digits[1] != 2 || digits[2] != 2) {
+                return INVALID_BIRTHDAY;
+            }
+            year = parts[0];
+            month = parts[1];
+            day = parts[2];
+        } else {
+            if (digits[0] > 2 || digits[1] > 2 || digits[2] != 4) {
+                return INVALID_BIRTHDAY;
+            }
+            day = parts[0];
+            month = parts[1];
+            year = parts[2];
+        }
+        if (month < 1 || month > 12 || day < 1 || day > Month.of(month).length(Year.isLeap(year))) {
+            return INVALID_BIRTHDAY;
+        }
+        return (int) LocalDate.of(year, month, day).toEpochDay();
+    }
+
+    private static String formatBirthday(int epochDay) {
+        if (epochDay == NO_BIRTHDAY) {
+            return "";
+        }
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        int day = date.getDayOfMonth();
+        int month = date.getMonthValue();
+        int year = date.getYear();
+        return new String(new char[]{
+                (char) ('0' + day / 10), (char) ('0' + day % 10), '.',
+                (char) ('0' + month / 10), (char) ('0' + month % 10), '.',
+                (char) ('0' + year / 1000), (char) ('0' + year / 100 % 10),
+                (char) ('0' + year / 10 % 10), (char) ('0' + year % 10)});
+    }
+
+    private static String value(Object field) {
+        return field instanceof StringProperty property ? property.get() : (String) field;
+    }
+
+    private StringProperty property(String name, Object value) {
+        StringProperty property = new SimpleStringProperty(this, name, (String) value);
+        property.addListener(RESET_HASH);
+        return property;
+    }
+
+    /**
+     * Битовая маска файлов-источников, см. {@link MergedLoadTask}; не входит в equals
+     */
+    public int getSources() {
+        return sources;
+    }
+
+    public void setSources(int sources) {
+        this.sources = sources;
+    }
+
+    /**
+     * Общий экземпляр строки для часто повторяющихся значений
+     */
+    static String share(String value) {
+        if (value == null) {
+            return null;
+        }
+        String shared = SHARED_VALUES.get(value);
+        if (shared != null) {
+            return shared;
+        }
+        if (SHARED_VALUES.size() >= MAX_SHARED_VALUES) {
+            return value;
+        }
+        shared = SHARED_VALUES.putIfAbsent(value, value);
+        return shared != null ? shared : value;
+    }
+
     @Override
     public String toString() {
         return getFirstName() + " " + getLastName();
@@ -149,22 +403,71 @@ public class Person implements Serializable {
         if (o == null || getClass() != o.getClass()) return false;
 
         Person person = (Person) o;
-        return getFirstName().equals(person.getFirstName()) &&
-                getLastName().equals(person.getLastName()) &&
-                getStreet().equals(person.getStreet()) &&
-                getCity().equals(person.getCity()) &&
-                getPostalCode().equals(person.getPostalCode()) &&
-                getBirthday().equals(person.getBirthday());
+        return Objects.equals(getFirstName(), person.getFirstName()) &&
+                Objects.equals(getLastName(), person.getLastName()) &&
+                Objects.equals(getStreet(), person.getStreet()) &&
+                Objects.equals(getCity(), person.getCity()) &&
+                Objects.equals(getPostalCode(), person.getPostalCode()) &&
+                sameBirthday(person);
     }
 
     @Override
     public int hashCode() {
-        int result = getFirstName().hashCode();
-        result = 31 * result + getLastName().hashCode();
-        result = 31 * result + getStreet().hashCode();
-        result = 31 * result + getCity().hashCode();
-        result = 31 * result + getPostalCode().hashCode();
-        result = 31 * result + getBirthday().hashCode();
+        int result = hash;
+        if (result == 0) {
+            result = Objects.hashCode(getFirstName());
+            result = 31 * result + Objects.hashCode(getLastName());
+            result = 31 * result + Objects.hashCode(getStreet());
+            result = 31 * result + Objects.hashCode(getCity());
+            result = 31 * result + Objects.hashCode(getPostalCode());
+            result = 31 * result + (birthday != NO_BIRTHDAY ? Integer.hashCode(birthday)
+                    : Objects.hashCode(getBirthday()));
+            hash = result;
+        }
         return result;
     }
+
+    // Даты сравниваем числами, текст — только если даты нет
+    private boolean sameBirthday(Person person) {
+        if (birthday != person.birthday) {
+            return false;
+        }
+        return birthday != NO_BIRTHDAY || Objects.equals(getBirthday(), person.getBirthday());
+    }
+
+    /**
+     * Снимок текущих значений полей, по которым определяется идентичность контакта
+     */
+    public Key key() {
+        return new Key(getFirstName(), getLastName(), getStreet(), getCity(), getPostalCode(), getBirthday());
+    }
+
+    /**
+     * Снимки значений полей контактов, в том же порядке.
+     * Делаются в потоке JavaFX для фоновых операций, которым нельзя читать сами контакты.
+     */
+    public static List<Key> keys(List<Person> persons) {
+        Key[] keys = new Key[persons.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = persons.get(i).key();
+        }
+        return Arrays.asList(keys);
+    }
+
+    /**
+     * Неизменяемый набор из шести полей контакта.
+     * Используется как ключ в индексах, которые должны переживать редактирование контакта.
+     */
+    public record Key(String firstName, String lastName, String street,
+                      String city, String postalCode, String birthday) {
+
+        /**
+         * Номер дня даты рождения от 1970-01-01 или {@link #NO_BIRTHDAY}, если даты нет
+         * или текст не является датой
+         */
+        public int birthdayEpochDay() {
+            int day = epochDay(birthday);
+            return day == INVALID_BIRTHDAY ? NO_BIRTHDAY : day;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,77 @@
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Хэш-индекс контактов по шести полям для проверки дубликатов за O(1).
+ * Добавления и удаления отслеживаются через слушатель списка,
+ * о редактировании контакта сообщается вызовом {@link #updated}.
+ * Для каждого набора значений хранится количество контактов,
+ * так как в загруженных файлах могут встречаться повторы.
+ */
+public class PersonIndex implements ListChangeListener<Person> {
+    private final Map<Person.Key, Integer> counts = new HashMap<>();
+    private int size;
+
+    public PersonIndex(ObservableList<Person> persons) {
+        persons.forEach(this::add);
+        persons.addListener(this);
+    }
+
+    /**
+     * Есть ли в списке контакт с такими значениями полей
+     */
+    public boolean contains(Person.Key key) {
+        return counts.containsKey(key);
+    }
+
+    /**
+     * Переиндексация контакта после изменения его полей
+     *
+     * @param before значения полей до изменения
+     */
+    public void updated(Person person, Person.Key before) {
+        remove(before);
+        add(person);
+    }
+
+    @Override
+    public void onChanged(Change<? extends Person> change) {
+        while (change.next()) {
+            if (change.wasPermutated() || change.wasUpdated()) {
+                continue;
+            }
+            if (change.getRemovedSize() == size) {
+                // Замена всего списка (setAll, clear) — проще начать заново
+                counts.clear();
+                size = 0;
+            } else {
+                for (Person person : change.getRemoved()) {
+                    remove(person.key());
+                }
+            }
+            for (Person person : change.getAddedSubList()) {
+                add(person);
+            }
+        }
+    }
+
+    private void add(Person person) {
+        counts.merge(person.key(), 1, Integer::sum);
+        size++;
+    }
+
+    private void remove(Person.Key key) {
+        Integer count = counts.get(key);
+        if (count == null) {
+            return;
+        }
+        if (count == 1) {
+            counts.remove(key);
+        } else {
+            counts.put(key, count - 1);
+        }
+        size--;
+    }
+}
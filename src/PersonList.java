@@ -0,0 +1,250 @@
+import javafx.collections.ListChangeListener;
+import javafx.collections.ModifiableObservableListBase;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Наблюдаемый список контактов с групповыми операциями за один проход.
+ * <p>
+ * Стандартный список из {@code FXCollections.observableArrayList()} удаляет разрозненные
+ * элементы отдельными сдвигами массива на каждый непрерывный участок, поэтому удаление
+ * 100 000 выделенных строк из миллиона занимает десятки секунд. Здесь {@link #removeAll}
+ * и {@link #retainAll} уплотняют массив за один проход, а все изменения группового
+ * вызова приходят слушателям одним событием.
+ * <p>
+ * Изменение списка можно сохранить как {@link Patch} и применить вновь или отменить
+ * через {@link #apply} — тоже за один проход и одним событием.
+ */
+public class PersonList extends ModifiableObservableListBase<Person> {
+    private final ArrayList<Person> persons = new ArrayList<>();
+
+    @Override
+    public Person get(int index) {
+        return persons.get(index);
+    }
+
+    @Override
+    public int size() {
+        return persons.size();
+    }
+
+    @Override
+    protected void doAdd(int index, Person element) {
+        persons.add(index, element);
+    }
+
+    @Override
+    protected Person doSet(int index, Person element) {
+        return persons.set(index, element);
+    }
+
+    @Override
+    protected Person doRemove(int index) {
+        return persons.remove(index);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Person> c) {
+        return addAll(persons.size(), c);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends Person> c) {
+        if (c.isEmpty()) {
+            return false;
+        }
+        beginChange();
+        persons.addAll(index, c);
+        nextAdd(index, index + c.size());
+        endChange();
+        return true;
+    }
+
+    @Override
+    public boolean setAll(Collection<? extends Person> col) {
+        beginChange();
+        List<Person> removed = new ArrayList<>(persons);
+        persons.clear();
+        persons.addAll(col);
+        nextReplace(0, persons.size(), removed);
+        endChange();
+        return true;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        if (fromIndex == toIndex) {
+            return;
+        }
+        beginChange();
+        List<Person> range = persons.subList(fromIndex, toIndex);
+        nextRemove(fromIndex, new ArrayList<>(range));
+        range.clear();
+        endChange();
+    }
+
+    /**
+     * Удаление за один проход; для удаления по идентичности передавайте
+     * множество на основе {@link java.util.IdentityHashMap}
+     */
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        return batchRemove(c, true);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        return batchRemove(c, false);
+    }
+
+    private boolean batchRemove(Collection<?> c, boolean contained) {
+        if (persons.isEmpty() || c.isEmpty() && contained) {
+            return false;
+        }
+        Person[] all = persons.toArray(new Person[0]);
+        int kept = 0;
+        int i = 0;
+        beginChange();
+        while (i < all.length) {
+            if (c.contains(all[i]) != contained) {
+                all[kept++] = all[i++];
+                continue;
+            }
+            // Непрерывный участок удаляемых; позиция — в списке после предыдущих удалений
+            int start = i;
+            while (i < all.length && c.contains(all[i]) == contained) {
+                i++;
+            }
+            nextRemove(kept, Arrays.asList(Arrays.copyOfRange(all, start, i)));
+        }
+        boolean changed = kept < all.length;
+        if (changed) {
+            persons.clear();
+            persons.addAll(Arrays.asList(all).subList(0, kept));
+        }
+        endChange();
+        return changed;
+    }
+
+    /**
+     * Применение изменения за один проход
+     *
+     * @throws IllegalStateException если список не совпадает с тем, к которому относится изменение
+     */
+    public void apply(Patch patch) {
+        Person[] current = persons.toArray(new Person[0]);
+        Person[] result = new Person[current.length + patch.added.length - patch.removed.length];
+        int src = 0, dst = 0, removed = 0, added = 0;
+        for (int i = 0; i < patch.positions.length; i++) {
+            int unchanged = patch.positions[i] - dst;
+            if (unchanged < 0 || src + unchanged + patch.removedCounts[i] > current.length) {
+                throw new IllegalStateException("Contacts do not match the change");
+            }
+            System.arraycopy(current, src, result, dst, unchanged);
+            src += unchanged;
+            dst += unchanged;
+            for (int k = 0; k < patch.removedCounts[i]; k++) {
+                if (current[src++] != patch.removed[removed++]) {
+                    throw new IllegalStateException("Contacts do not match the change");
+                }
+            }
+            System.arraycopy(patch.added, added, result, dst, patch.addedCounts[i]);
+            dst += patch.addedCounts[i];
+            added += patch.addedCounts[i];
+        }
+        if (current.length - src != result.length - dst) {
+            throw new IllegalStateException("Contacts do not match the change");
+        }
+        System.arraycopy(current, src, result, dst, current.length - src);
+
+        beginChange();
+        persons.clear();
+        persons.addAll(Arrays.asList(result));
+        removed = 0;
+        for (int i = 0; i < patch.positions.length; i++) {
+            int from = patch.positions[i];
+            int to = from + patch.addedCounts[i];
+            List<Person> part = Arrays.asList(
+                    Arrays.copyOfRange(patch.removed, removed, removed + patch.removedCounts[i]));
+            removed += patch.removedCounts[i];
+            if (part.isEmpty()) {
+                nextAdd(from, to);
+            } else if (from == to) {
+                nextRemove(from, part);
+            } else {
+                nextReplace(from, to, part);
+            }
+        }
+        endChange();
+    }
+
+    /**
+     * Изменение списка в компактном виде. На позиции {@code positions[i]} итогового списка
+     * {@code removedCounts[i]} элементов заменены {@code addedCounts[i]} элементами;
+     * удаленные и добавленные элементы всех участков лежат подряд в {@code removed} и {@code added}.
+     * Хранятся только ссылки на контакты, копий нет.
+     */
+    public record Patch(int[] positions, int[] removedCounts, Person[] removed,
+                        int[] addedCounts, Person[] added) {
+
+        /**
+         * Снимок события изменения списка; перестановки и обновления элементов не учитываются
+         */
+        public static Patch of(ListChangeListener.Change<? extends Person> change) {
+            int parts = 0, removedSize = 0, addedSize = 0;
+            while (change.next()) {
+                if (!change.wasPermutated() && !change.wasUpdated()) {
+                    parts++;
+                    removedSize += change.getRemovedSize();
+                    addedSize += change.getAddedSize();
+                }
+            }
+            change.reset();
+            Patch patch = new Patch(new int[parts], new int[parts], new Person[removedSize],
+                    new int[parts], new Person[addedSize]);
+            int i = 0, removed = 0, added = 0;
+            while (change.next()) {
+                if (change.wasPermutated() || change.wasUpdated()) {
+                    continue;
+                }
+                patch.positions[i] = change.getFrom();
+                patch.removedCounts[i] = change.getRemovedSize();
+                patch.addedCounts[i] = change.getAddedSize();
+                for (Person person : change.getRemoved()) {
+                    patch.removed[removed++] = person;
+                }
+                for (Person person : change.getAddedSubList()) {
+                    patch.added[added++] = person;
+                }
+                i++;
+            }
+            return patch;
+        }
+
+        /**
+         * Обратное изменение: возвращает список в состояние до этого изменения
+         */
+        public Patch inverse() {
+            int[] inversePositions = new int[positions.length];
+            int shift = 0;
+            for (int i = 0; i < positions.length; i++) {
+                inversePositions[i] = positions[i] - shift;
+                shift += addedCounts[i] - removedCounts[i];
+            }
+            return new Patch(inversePositions, addedCounts, added, removedCounts, removed);
+        }
+
+        public boolean isEmpty() {
+            return positions.length == 0;
+        }
+
+        /**
+         * Число затронутых контактов
+         */
+        public int size() {
+            return removed.length + added.length;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+import java.io.File;
+import java.util.List;
+
+/**
+ * Фоновое перечитывание открытого файла, который изменила другая программа.
+ * Файл читается так же, как при открытии, затем вычисляется разница с книгой
+ * в памяти ({@link AddressBookDiff}); применяется она в потоке JavaFX.
+ */
+public class ReloadTask extends LoadTask {
+    private final List<Person> current;
+    private final List<Person.Key> currentKeys;
+    private final List<AddressBookJournal.Entry> unsaved;
+    private final long revision;
+
+    private volatile AddressBookDiff diff;
+
+    /**
+     * @param current     снимок списка контактов, сделанный в потоке JavaFX
+     * @param currentKeys значения полей контактов на момент снимка
+     * @param unsaved     несохраненные изменения, которые нужно сохранить поверх файла
+     * @param revision    ревизия данных на момент снимка ({@link ChangeTracker#revision})
+     */
+    public ReloadTask(File file, List<Person> current, List<Person.Key> currentKeys,
+                      List<AddressBookJournal.Entry> unsaved, long revision) {
+        super(file);
+        this.current = current;
+        this.currentKeys = currentKeys;
+        this.unsaved = unsaved;
+        this.revision = revision;
+        updateTitle("Reloading " + file.getName());
+    }
+
+    public long getRevision() {
+        return revision;
+    }
+
+    public AddressBookDiff getDiff() {
+        return diff;
+    }
+
+    @Override
+    protected List<Person> call() throws Exception {
+        List<Person> persons = super.call();
+        updateMessage(String.format("Comparing %,d records with the open book", persons.size()));
+        diff = AddressBookDiff.compute(current, currentKeys, unsaved, persons);
+        return persons;
+    }
+}
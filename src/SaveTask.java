@@ -0,0 +1,85 @@
+import javafx.concurrent.Task;
+import java.io.File;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * Фоновое сохранение адресной книги в файл.
+ * Пишет во временный файл и атомарно заменяет им исходный,
+ * поэтому отмена или ошибка не портят уже сохраненные данные.
+ * Замена идет под блокировкой {@link AddressBookLock}; если файл изменили извне
+ * после того, как его прочитали здесь, он не заменяется.
+ */
+public class SaveTask extends Task<Void> {
+    private final File file;
+    private final List<Person.Key> persons;
+    private final boolean compressed;
+    private final FileWatcher watcher;
+
+    // Состояние файла сразу после записи
+    private volatile String savedState;
+
+    /**
+     * Создается в потоке JavaFX: здесь снимаются значения полей контактов,
+     * в фоне пишется только этот снимок
+     *
+     * @param compressed записать сжатым контейнером
+     * @param watcher    наблюдение за этим файлом или null
+     */
+    public SaveTask(File file, List<Person> persons, boolean compressed, FileWatcher watcher) {
+        this.file = file;
+        this.persons = Person.keys(persons);
+        this.compressed = compressed;
+        this.watcher = watcher;
+        updateTitle("Saving " + file.getName());
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public String getSavedState() {
+        return savedState;
+    }
+
+    @Override
+    protected Void call() throws Exception {
+        Metrics.Operation operation = Metrics.begin(Metrics.SAVE);
+        Path target = file.toPath().toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+        try {
+            AddressBookFormat.write(temp, persons, (records, bytes) -> {
+                if (isCancelled()) {
+                    throw new InterruptedIOException("Saving cancelled");
+                }
+                updateProgress(records, persons.size());
+                updateMessage(String.format("Saving: %,d records, %,d KB", records, bytes / 1024));
+            }, compressed);
+            long size = Files.size(temp);
+            AddressBookLock lock = AddressBookLock.exclusive(target);
+            try {
+                if (watcher != null) {
+                    watcher.checkUnchanged();
+                }
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                // Полный снимок уже содержит все изменения из журнала
+                AddressBookJournal.delete(target);
+                savedState = SessionCache.state(target);
+                if (watcher != null) {
+                    watcher.markSynced(savedState);
+                }
+            } finally {
+                lock.close();
+            }
+            operation.end(persons.size(), size);
+            updateProgress(1, 1);
+            updateMessage(String.format("Saved %,d records (%,d KB)", persons.size(), size / 1024));
+            return null;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
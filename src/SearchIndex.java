@@ -0,0 +1,206 @@
+import java.util.*;
+
+/**
+ * Префиксный индекс слов для поиска контактов по мере ввода.
+ * Значения полей firstName, lastName, street, city и postalCode разбиваются на слова,
+ * для каждого слова хранится список номеров контактов. Запрос из нескольких слов находит
+ * контакты, у которых для каждого слова запроса есть слово, начинающееся с него.
+ * <p>
+ * Номера контактов назначает вызывающий код. Номера удаленных контактов могут
+ * оставаться в списках до вызова {@link #remap}, их отбрасывает вызывающий код.
+ */
+public class SearchIndex {
+    // Слово -> номера контактов (по возрастанию), для точного поиска и для поиска по префиксу
+    private final Map<String, IntList> postings = new HashMap<>();
+    private final NavigableMap<String, IntList> sortedWords = new TreeMap<>();
+
+    /**
+     * Добавление номера контакта в списки его слов
+     */
+    public void add(int id, List<String> words) {
+        for (String word : words) {
+            IntList list = postings.get(word);
+            if (list == null) {
+                list = new IntList();
+                postings.put(word, list);
+                sortedWords.put(word, list);
+            }
+            list.add(id);
+        }
+    }
+
+    /**
+     * Удаление номера контакта из списков его слов
+     */
+    public void remove(int id, List<String> words) {
+        for (String word : words) {
+            IntList list = postings.get(word);
+            if (list != null && list.remove(id) && list.size == 0) {
+                postings.remove(word);
+                sortedWords.remove(word);
+            }
+        }
+    }
+
+    /**
+     * Переиндексация контакта после изменения: трогаем только слова, которых стало или не стало.
+     * Списки частых слов бывают длиной в миллион номеров, и лишнее удаление с добавлением
+     * сдвигает их целиком
+     */
+    public void update(int id, List<String> before, List<String> after) {
+        for (String word : before) {
+            if (!after.contains(word)) {
+                remove(id, List.of(word));
+            }
+        }
+        for (String word : after) {
+            if (!before.contains(word)) {
+                add(id, List.of(word));
+            }
+        }
+    }
+
+    /**
+     * Поиск: для каждого слова запроса объединяем списки всех слов
+     * с этим префиксом, результаты по словам пересекаем
+     */
+    public BitSet find(String[] query) {
+        BitSet result = null;
+        for (String word : query) {
+            BitSet bits = new BitSet();
+            for (IntList list : sortedWords.subMap(word, word + Character.MAX_VALUE).values()) {
+                for (int i = 0; i < list.size; i++) {
+                    bits.set(list.data[i]);
+                }
+            }
+            if (result == null) {
+                result = bits;
+            } else {
+                result.and(bits);
+            }
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return result == null ? new BitSet() : result;
+    }
+
+    /**
+     * Перенумерация контактов; номера, для которых oldToNew содержит -1, удаляются.
+     * Новые номера должны сохранять порядок старых.
+     */
+    public void remap(int[] oldToNew) {
+        Iterator<IntList> lists = postings.values().iterator();
+        while (lists.hasNext()) {
+            IntList list = lists.next();
+            int count = 0;
+            for (int i = 0; i < list.size; i++) {
+                int id = list.data[i] < oldToNew.length ? oldToNew[list.data[i]] : -1;
+                if (id >= 0) {
+                    list.data[count++] = id;
+                }
+            }
+            list.size = count;
+            if (count == 0) {
+                lists.remove();
+            }
+        }
+        sortedWords.values().removeIf(list -> list.size == 0);
+    }
+
+    public void clear() {
+        postings.clear();
+        sortedWords.clear();
+    }
+
+    /**
+     * Разбор строки запроса; null, если в ней нет ни одного слова
+     */
+    public static String[] parseQuery(String text) {
+        List<String> words = new ArrayList<>();
+        tokenize(text, words);
+        return words.isEmpty() ? null : words.toArray(String[]::new);
+    }
+
+    /**
+     * Проверка набора слов контакта на соответствие запросу без обращения к индексу
+     */
+    public static boolean matches(List<String> words, String[] query) {
+        for (String word : query) {
+            boolean found = false;
+            for (String candidate : words) {
+                if (candidate.startsWith(word)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Слова из индексируемых полей контакта
+     */
+    public static List<String> words(Person.Key key) {
+        List<String> words = new ArrayList<>(8);
+        tokenize(key.firstName(), words);
+        tokenize(key.lastName(), words);
+        tokenize(key.street(), words);
+        tokenize(key.city(), words);
+        tokenize(key.postalCode(), words);
+        return words;
+    }
+
+    private static void tokenize(String value, List<String> words) {
+        if (value == null) {
+            return;
+        }
+        String lower = value.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean letter = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                words.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+    }
+
+    /**
+     * Упорядоченный по возрастанию растущий массив номеров контактов
+     */
+    private static final class IntList {
+        int[] data = new int[2];
+        int size;
+
+        void add(int value) {
+            int pos = Arrays.binarySearch(data, 0, size, value);
+            if (pos >= 0) {
+                return;
+            }
+            pos = -pos - 1;
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            // Новые номера обычно больше всех имеющихся, и сдвигать ничего не нужно
+            System.arraycopy(data, pos, data, pos + 1, size - pos);
+            data[pos] = value;
+            size++;
+        }
+
+        boolean remove(int value) {
+            int pos = Arrays.binarySearch(data, 0, size, value);
+            if (pos < 0) {
+                return false;
+            }
+            System.arraycopy(data, pos + 1, data, pos, size - pos - 1);
+            size--;
+            return true;
+        }
+    }
+}
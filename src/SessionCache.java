@@ -0,0 +1,120 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.prefs.Preferences;
+
+/**
+ * Последний открытый файл и кэш его снимка для быстрого восстановления при запуске.
+ * <p>
+ * Файл .addr читается быстро сам по себе, поэтому снимок записывается, только если загрузка
+ * файла требует лишней работы: чтения старого формата (сериализация Java) или применения
+ * журнала изменений. Итоговый список сохраняется в ~/.addressapp/cache/session.addr,
+ * а в настройках запоминаются размер и время изменения файла и его журнала на момент
+ * загрузки; снимок используется, только пока они совпадают с текущими.
+ */
+public final class SessionCache {
+    private static final Logger LOGGER = Logger.getLogger(SessionCache.class.getName());
+
+    private static final Preferences PREFERENCES = Preferences.userRoot().node("addressapp");
+    private static final String LAST_FILE = "lastFile";
+    private static final String RESTORE = "restoreLastFile";
+    private static final String SNAPSHOT_STATE = "snapshotState";
+
+    private static final Path SNAPSHOT = Path.of(System.getProperty("user.home"), ".addressapp", "cache", "session.addr");
+
+    private SessionCache() {
+    }
+
+    /**
+     * Файл, открытый в прошлом сеансе, или null
+     */
+    public static File lastFile() {
+        String path = PREFERENCES.get(LAST_FILE, null);
+        return path == null ? null : new File(path);
+    }
+
+    public static void remember(File file) {
+        PREFERENCES.put(LAST_FILE, file.getAbsolutePath());
+    }
+
+    /**
+     * Восстанавливать нечего: новая книга, объединение нескольких или просмотр большого файла
+     */
+    public static void forget() {
+        PREFERENCES.remove(LAST_FILE);
+    }
+
+    public static boolean isRestoreEnabled() {
+        return PREFERENCES.getBoolean(RESTORE, true);
+    }
+
+    public static void setRestoreEnabled(boolean enabled) {
+        PREFERENCES.putBoolean(RESTORE, enabled);
+    }
+
+    /**
+     * Состояние файла и его журнала: путь, размеры и время изменения
+     */
+    public static String state(Path source) throws IOException {
+        Path absolute = source.toAbsolutePath();
+        BasicFileAttributes file = Files.readAttributes(absolute, BasicFileAttributes.class);
+        StringBuilder state = new StringBuilder(absolute.toString())
+                .append('|').append(file.size())
+                .append('|').append(file.lastModifiedTime().toMillis());
+        Path journal = AddressBookJournal.journalPath(absolute);
+        if (Files.exists(journal)) {
+            BasicFileAttributes attributes = Files.readAttributes(journal, BasicFileAttributes.class);
+            state.append('|').append(attributes.size())
+                    .append('|').append(attributes.lastModifiedTime().toMillis());
+        }
+        return state.toString();
+    }
+
+    /**
+     * Снимок, записанный для файла в этом состоянии, или null
+     */
+    public static Path snapshotFor(String state) {
+        return state.equals(PREFERENCES.get(SNAPSHOT_STATE, null)) && Files.isRegularFile(SNAPSHOT)
+                ? SNAPSHOT : null;
+    }
+
+    /**
+     * Запись снимка загруженного списка
+     *
+     * @param state   состояние файла перед загрузкой ({@link #state})
+     * @param persons значения контактов, прочитанных из файла ({@link LoadTask#getSnapshotKeys})
+     */
+    public static void store(String state, List<Person.Key> persons) throws IOException {
+        // Пока снимок перезаписывается, старое состояние недействительно
+        PREFERENCES.remove(SNAPSHOT_STATE);
+        Files.createDirectories(SNAPSHOT.getParent());
+        Path temp = Files.createTempFile(SNAPSHOT.getParent(), "session", ".tmp");
+        try {
+            AddressBookFormat.write(temp, persons, AddressBookFormat.Progress.NONE);
+            Files.move(temp, SNAPSHOT, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        PREFERENCES.put(SNAPSHOT_STATE, state);
+    }
+
+    /**
+     * Запуск записи снимка с записью ошибок в журнал приложения
+     */
+    public static Runnable storing(String state, List<Person.Key> persons) {
+        return () -> {
+            try {
+                store(state, persons);
+                LOGGER.info("Cached session snapshot of " + persons.size() + " records");
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not cache session snapshot", e);
+            }
+        };
+    }
+}